@@ -258,6 +258,7 @@ public class ExifEditActivity extends ActivityWithAutoCloseDialogs implements Co
                 edTagsInclude               ,
                 edLatitude                  ,
                 edLongitude                 );
+        mHistory.setCompletion(HistoryEditText.COMPLETION_KEY_TAGS, HistoryEditText.TAG_DELIMITERS, edTagsInclude);
 
         new HashTagEditWatcher(this, edTitle);
         new HashTagEditWatcher(this, edDescription);
@@ -461,6 +461,7 @@ public class GalleryFilterActivity extends ActivityWithAutoCloseDialogs
                     mAny             ,
                     mTagsInclude     ,
                     mTagsExclude);
+            mHistory.setCompletion(HistoryEditText.COMPLETION_KEY_TAGS, HistoryEditText.TAG_DELIMITERS, mTagsInclude, mTagsExclude);
         }
 
         protected void showVisibility(VISIBILITY visibility) {
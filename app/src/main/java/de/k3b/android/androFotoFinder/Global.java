@@ -27,6 +27,7 @@ import android.view.Menu;
 import java.io.File;
 import java.util.Locale;
 
+import de.k3b.android.util.BitmapPool;
 import de.k3b.android.util.MenuUtils;
 
 /**
@@ -64,6 +65,13 @@ public class Global {
      * (memoryefficient, fast, but low-quality). -1: default to screenresolution */
     public static int imageDetailThumbnailIfBiggerThan = -1;
 
+    /** true: images bigger than imageDetailThumbnailIfBiggerThan are zoomed via full res tiles
+     * instead of reloading the whole image on first zoom */
+    public static boolean imageDetailTiled = true;
+
+    /** number of images that are decoded in advance while swiping in image detail view. 0: no prefetch */
+    public static int imageDetailPrefetchCount = 2;
+
     /** where thumbnails are strored. defaults to /extDir/DCIM/.thumbCache */
     public static File thumbCacheRoot = null;
 
@@ -108,6 +116,16 @@ public class Global {
     public static final boolean geoNoEdit = true;
     public static final boolean saveXmpAsHumanReadable = true;
 
+    /** number of background threads that read and write jpg/xmp in parallel when updating tags of many photos.
+     * 1 means sequential processing */
+    public static int tagUpdateThreadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** max number of parallel jpg/xmp writes to the same storage device (internal memory, sd-card) */
+    public static int tagUpdateMaxWritesPerDevice = 2;
+
+    /** number of processed photos that are committed to the media database together */
+    public static int tagUpdateDbBatchSize = 25;
+
     public static class Media {
         /** Support extra parameters true: experimental. Not fully implemented yet. */
         public static final boolean enableIptcMediaScanner = true;
@@ -121,6 +139,21 @@ public class Global {
     public static boolean initialImageDetailResolutionHigh = false; // false: MediaStore.Images.Thumbnails.MINI_KIND; true: FULL_SCREEN_KIND;
     public static boolean mapsForgeEnabled = false;
 
+    /** true: unfiltered map markers are loaded from the precomputed GeoClusterSql pyramid */
+    public static boolean mapUseGeoClusterPyramid = true;
+
+    /** true: big gallery results are loaded page by page via KeysetPagedCursor */
+    public static boolean galleryUseKeysetPaging = true;
+
+    /** true: counting filtered photos uses the in memory MediaCatalog instead of the database */
+    public static boolean galleryUseMediaCatalog = false;
+
+    /** true: gallery thumbnails are loaded from the jpg thumbnail embedded in exif if available */
+    public static boolean galleryUseExifThumbnail = true;
+
+    /** max size of the packed thumbnail store in Global.thumbCacheRoot */
+    public static int thumbStoreMaxSizeGB = 1;
+
     /** map with blue selection markers: how much to area to increase */
     public static final double mapMultiselectionBoxIncreaseByProcent = 100.0;
     /** map with blue selection markers: minimum size of zoom box in degrees */
@@ -129,8 +162,9 @@ public class Global {
     public static void debugMemory(String modul, String message) {
         if (Global.debugEnabledMemory) {
             Runtime r = Runtime.getRuntime();
-            String formattedMessage = String.format(Locale.US, "memory : (total/free/avail) = (%3$dK/%4$dK/%5$dK)\t- %1$s.%2$s",
-                    modul, message, r.totalMemory()/1024, r.freeMemory()/1024, r.maxMemory()/1024);
+            String formattedMessage = String.format(Locale.US, "memory : (total/free/avail) = (%3$dK/%4$dK/%5$dK)\t- %1$s.%2$s\t%6$s",
+                    modul, message, r.totalMemory()/1024, r.freeMemory()/1024, r.maxMemory()/1024,
+                    BitmapPool.getInstance());
 
             Log.d(Global.LOG_CONTEXT, formattedMessage);
         }
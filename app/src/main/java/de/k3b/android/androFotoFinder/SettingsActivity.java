@@ -42,12 +42,14 @@ import java.io.File;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.android.androFotoFinder.imagedetail.HugeImageLoader;
+import de.k3b.android.util.BitmapPool;
 import de.k3b.android.util.MediaScanner;
 import de.k3b.android.util.MediaScannerExifInterface;
 import de.k3b.android.util.MediaScannerImageMetaReader;
 import de.k3b.android.widget.AboutDialogPreference;
 import de.k3b.android.widget.ActivityWithCallContext;
 import de.k3b.android.widget.LocalizedActivity;
+import de.k3b.io.Metrics;
 import de.k3b.tagDB.TagRepository;
 import io.github.lonamiwebs.stringlate.utilities.Api;
 import uk.co.senab.photoview.PhotoViewAttacher;
@@ -119,6 +121,13 @@ public class SettingsActivity extends PreferenceActivity {
                 return false; // donot close
             }
         });
+        findPreference("debugShowMetrics").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+            @Override
+            public boolean onPreferenceClick(Preference preference) {
+                onDebugShowMetrics();
+                return false; // donot close
+            }
+        });
         findPreference("translate").setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
             @Override
             public boolean onPreferenceClick(Preference preference) {
@@ -421,9 +430,18 @@ public class SettingsActivity extends PreferenceActivity {
 
     private void onDebugSaveLogCat() {
         Log.e(Global.LOG_CONTEXT, "SettingsActivity-SaveLogCat(): " + ActivityWithCallContext.readCallContext(getIntent()));
+        Log.i(Global.LOG_CONTEXT, "SettingsActivity-Metrics:\n" + Metrics.getInstance() + BitmapPool.getInstance());
         ((AndroFotoFinderApp) getApplication()).saveToFile();
     }
 
+    private void onDebugShowMetrics() {
+        final AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.settings_debug_metrics_title);
+        builder.setMessage(Metrics.getInstance().getSnapshot("\n") + BitmapPool.getInstance())
+                .setPositiveButton(android.R.string.ok, null);
+        builder.create().show();
+    }
+
     private void onTranslate() {
         if (!Api.isInstalled(this)) {
             // either ask or catch ActivityNotFoundException
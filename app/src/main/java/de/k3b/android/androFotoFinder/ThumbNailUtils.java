@@ -21,6 +21,9 @@ package de.k3b.android.androFotoFinder;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.util.Log;
 import android.widget.ImageView;
 
 import com.nostra13.universalimageloader.cache.disc.impl.UnlimitedDiskCache;
@@ -29,13 +32,29 @@ import com.nostra13.universalimageloader.cache.disc.naming.Md5FileNameGenerator;
 import com.nostra13.universalimageloader.core.DisplayImageOptions;
 import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.core.ImageLoaderConfiguration;
+import com.nostra13.universalimageloader.core.assist.ImageSize;
 import com.nostra13.universalimageloader.core.assist.QueueProcessingType;
+import com.nostra13.universalimageloader.core.decode.BaseImageDecoder;
+import com.nostra13.universalimageloader.core.decode.ImageDecodingInfo;
 import com.nostra13.universalimageloader.core.display.SimpleBitmapDisplayer;
+import com.nostra13.universalimageloader.core.download.BaseImageDownloader;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import de.k3b.android.androFotoFinder.imagedetail.HugeImageLoader;
 import de.k3b.android.androFotoFinder.queries.FotoSql;
+import de.k3b.android.util.BitmapPool;
+import de.k3b.io.FileUtils;
+import de.k3b.io.PackedThumbnailStore;
+import de.k3b.media.ExifInterface;
+import de.k3b.media.MediaUtil;
 
 /**
  * Service facade hiding com.nostra13.universalimageloader
@@ -49,12 +68,42 @@ public class ThumbNailUtils {
     public static final int MAX_FILE_COUNT = 1024;
     public static boolean DEBUG = false;
 
+    /** max width/height of thumbnails that are not embedded in exif */
+    private static final int THUMBNAIL_SIZE = 256;
+    private static final int THUMBNAIL_JPG_QUALITY = 85;
+    private static final long ONE_GB = 1024L * 1024 * 1024;
+
+    /**
+     * extraForDownloader of gallery thumbnail requests. Only these may be served with a small thumbnail.
+     * Other file uris (i.e. the image detail view) get the image itself.
+     */
+    private static final Object THUMBNAIL_REQUEST = "ThumbNailUtils.THUMBNAIL_REQUEST";
+
+    /** thumbnails of local files. null if it cannot be opened: then the image loader disk cache is used */
+    private static volatile PackedThumbnailStore sThumbnailStore = null;
+
+    /** fills sThumbnailStore in the background */
+    private static final ExecutorService sPrewarmExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread result = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ThumbNailPrewarm");
+            return result;
+        }
+    });
+
     public static void init(Context context, File previousCacheRoot) {
 
         // if chache dir has just changed (in SettingsActivity) clear old cache.
         if ((previousCacheRoot != null) && (!previousCacheRoot.equals(Global.thumbCacheRoot))) {
             ImageLoader.getInstance().clearDiskCache();
         }
+        openThumbnailStore();
 
         // This configuration tuning is custom. You can tune every option, you may tune some of them,
         // or you can create default configuration by
@@ -68,6 +117,10 @@ public class ThumbNailUtils {
         config.diskCacheSize(MAX_CACHE_SIZE_50MB); // 50 MiB
         config.diskCacheFileCount(MAX_FILE_COUNT);
         config.tasksProcessingOrder(QueueProcessingType.LIFO);
+        config.imageDownloader(new ExifThumbnailDownloader(context));
+
+        // decode into bitmaps that the detail view does not display any more
+        config.imageDecoder(new PoolingImageDecoder());
 
         // config.diskCache(new LimitedAgeDiskCache(Global.thumbCacheRoot, 60 * 60 * 24)); // lifetime 1 day
         // config.diskCache(new UnlimitedDiskCache(Global.thumbCacheRoot));
@@ -88,20 +141,197 @@ public class ThumbNailUtils {
         ImageLoader.getInstance().init(config.build());
     }
 
-    private static DisplayImageOptions createThumbnailOptions() {
+    private static void openThumbnailStore() {
+        synchronized (ThumbNailUtils.class) {
+            PackedThumbnailStore newStore = null;
+            try {
+                newStore = new PackedThumbnailStore(new File(Global.thumbCacheRoot, "packed"),
+                        Global.thumbStoreMaxSizeGB * ONE_GB);
+            } catch (IOException ex) {
+                Log.e(LOG_TAG, "cannot open thumbnail store in " + Global.thumbCacheRoot, ex);
+            }
+
+            // swap first: close() waits for running reads and later reads of the old store find nothing
+            PackedThumbnailStore oldStore = sThumbnailStore;
+            sThumbnailStore = newStore;
+            FileUtils.close(oldStore, "ThumbNailUtils.sThumbnailStore");
+        }
+
+        // remove thumbnails of deleted images and garbage of replaced thumbnails
+        sPrewarmExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PackedThumbnailStore store = sThumbnailStore;
+                try {
+                    if (store != null) {
+                        store.removeDeletedImages();
+                        store.compact(0.5);
+                    }
+                } catch (IOException ex) {
+                    Log.e(LOG_TAG, "cannot compact " + store, ex);
+                }
+            }
+        });
+    }
+
+    /** creates the missing thumbnails of newly scanned image files in the background */
+    public static void prewarm(final String... fullPaths) {
+        if ((sThumbnailStore != null) && (fullPaths != null) && (fullPaths.length > 0)) {
+            sPrewarmExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (String fullPath : fullPaths) {
+                        if ((fullPath != null) && MediaUtil.isImage(fullPath, MediaUtil.IMG_TYPE_ALL)) {
+                            getThumbnail(fullPath);
+                        }
+                    }
+                    if (DEBUG) Log.d(LOG_TAG, "prewarm " + fullPaths.length + " files: " + sThumbnailStore);
+                }
+            });
+        }
+    }
+
+    /** @return jpg thumbnail from sThumbnailStore or null if it cannot be created. Must not be called in gui thread. */
+    private static byte[] getThumbnail(String fullPath) {
+        PackedThumbnailStore store = sThumbnailStore;
+        if (store == null) return null;
+
+        File file = new File(fullPath);
+        long lastModified = file.lastModified();
+        long size = file.length();
+        try {
+            byte[] result = store.get(fullPath, lastModified, size);
+            if (result == null) {
+                result = createThumbnail(file);
+                if (result != null) store.put(fullPath, lastModified, size, result);
+            }
+            return result;
+        } catch (IOException ex) {
+            Log.e(LOG_TAG, "thumbnail store failed for " + fullPath, ex);
+        }
+        return null;
+    }
+
+    /** @return embedded exif thumbnail or downscaled image as jpg. null if file is not an image. */
+    private static byte[] createThumbnail(File file) {
+        byte[] result = (Global.galleryUseExifThumbnail) ? ExifThumbnailDownloader.getExifThumbnail(file.getAbsolutePath()) : null;
+        if (result == null) {
+            Bitmap bitmap = HugeImageLoader.loadImage(file, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            if (bitmap != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_JPG_QUALITY, out);
+                bitmap.recycle();
+                result = out.toByteArray();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Serves the thumbnail of a local file from the packed thumbnail store or the jpg thumbnail
+     * that is embedded in the exif instead of the full image so that only a few kilobytes
+     * have to be read and decoded. Only for {@link #THUMBNAIL_REQUEST}.
+     * Falls back to the full image if there is no thumbnail.
+     */
+    private static class ExifThumbnailDownloader extends BaseImageDownloader {
+        ExifThumbnailDownloader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected InputStream getStreamFromFile(String imageUri, Object extra) throws IOException {
+            if (extra != THUMBNAIL_REQUEST) {
+                return super.getStreamFromFile(imageUri, extra);
+            }
+
+            String fullPath = Scheme.FILE.crop(imageUri);
+            byte[] thumbnail = getThumbnail(fullPath);
+            if (thumbnail != null) {
+                return new ByteArrayInputStream(thumbnail);
+            }
+            if (Global.galleryUseExifThumbnail) {
+                thumbnail = getExifThumbnail(fullPath);
+                if (thumbnail != null) {
+                    return new ByteArrayInputStream(thumbnail);
+                }
+            }
+            return super.getStreamFromFile(imageUri, extra);
+        }
+
+        /** @return null if there is no embedded thumbnail */
+        private static byte[] getExifThumbnail(String fullPath) {
+            try {
+                ExifInterface exif = new ExifInterface(fullPath);
+                if (exif.hasThumbnail()) {
+                    return exif.getThumbnail();
+                }
+            } catch (Exception ex) {
+                // not a jpg or corrupt exif: use full image
+                if (DEBUG) Log.d(LOG_TAG, "no exif thumbnail for " + fullPath, ex);
+            }
+            return null;
+        }
+    }
+
+    /** decodes into bitmaps from {@link BitmapPool} */
+    private static class PoolingImageDecoder extends BaseImageDecoder {
+        /** true while retrying a decode that failed with a pooled bitmap */
+        private final ThreadLocal<Boolean> mNoReuse = new ThreadLocal<Boolean>();
+
+        PoolingImageDecoder() {
+            super(false);
+        }
+
+        @Override
+        public Bitmap decode(ImageDecodingInfo decodingInfo) throws IOException {
+            try {
+                return super.decode(decodingInfo);
+            } catch (IllegalArgumentException ex) {
+                // pooled bitmap not compatible: try again without
+                mNoReuse.set(Boolean.TRUE);
+                try {
+                    return super.decode(decodingInfo);
+                } finally {
+                    mNoReuse.remove();
+                }
+            }
+        }
+
+        @Override
+        protected BitmapFactory.Options prepareDecodingOptions(ImageSize imageSize, ImageDecodingInfo decodingInfo) {
+            BitmapFactory.Options result = super.prepareDecodingOptions(imageSize, decodingInfo);
+            result.outWidth = imageSize.getWidth();
+            result.outHeight = imageSize.getHeight();
+            if (mNoReuse.get() == null) {
+                BitmapPool.getInstance().addInBitmapOptions(result);
+            } else {
+                BitmapPool.getInstance().onReuseFailed(result);
+            }
+            return result;
+        }
+    }
+
+    private static DisplayImageOptions createThumbnailOptions(boolean cacheOnDisk, Object extraForDownloader) {
         return new DisplayImageOptions.Builder()
                 .showImageOnLoading(R.drawable.image_loading)
                 .showImageForEmptyUri(R.drawable.image_loading)
                 .showImageOnFail(R.drawable.image_loading)
                 .cacheInMemory(true)
-                .cacheOnDisk(true)
+                .cacheOnDisk(cacheOnDisk)
                 .considerExifParams(true)
                 .bitmapConfig(Bitmap.Config.RGB_565)
                 .displayer(new SimpleBitmapDisplayer())
+                .extraForDownloader(extraForDownloader)
                 .build();
     }
 
-    private static final DisplayImageOptions mDisplayImageOptions = ThumbNailUtils.createThumbnailOptions();
+    private static final DisplayImageOptions mDisplayImageOptions = ThumbNailUtils.createThumbnailOptions(true, null);
+
+    /**
+     * Local files are cached in sThumbnailStore instead of the image loader disk cache.
+     * A thumbnail must not be written to the disk cache: it would be served for the same file uri to the detail view.
+     */
+    private static final DisplayImageOptions mDisplayImageOptionsFile = ThumbNailUtils.createThumbnailOptions(false, THUMBNAIL_REQUEST);
 
     public static void getThumb(int iconID, ImageView imageView) {
         ImageLoader.getInstance().displayImage( FotoSql.getUriString(iconID), imageView, mDisplayImageOptions);
@@ -110,7 +340,9 @@ public class ThumbNailUtils {
     public static void getThumb(String fullPath, ImageView imageView) {
 
         if ((imageView != null) && (fullPath != null) && (fullPath.length() > 0)) {
-            ImageLoader.getInstance().displayImage("file://" + fullPath, imageView, mDisplayImageOptions);
+            // without store the thumbnails are not cached: use the image loader disk cache instead
+            ImageLoader.getInstance().displayImage("file://" + fullPath, imageView,
+                    (sThumbnailStore != null) ? mDisplayImageOptionsFile : mDisplayImageOptions);
         }
     }
 
@@ -21,7 +21,6 @@ package de.k3b.android.androFotoFinder.directory;
 
 import android.app.Activity;
 import android.database.Cursor;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.Log;
 
@@ -101,8 +100,7 @@ public class DirectoryLoaderTask extends AsyncTask<QueryParameter, Integer, IDir
             }
 
             try {
-                cursor = context.getContentResolver().query(Uri.parse(queryParameters.toFrom()), queryParameters.toColumns(),
-                        queryParameters.toAndroidWhere(), queryParameters.toAndroidParameters(), queryParameters.toOrderBy());
+                cursor = FotoSql.execQueryCached(context, queryParameters);
 
                 int itemCount = cursor.getCount();
                 final int expectedCount = itemCount + itemCount;
@@ -430,6 +430,18 @@ public class DirectoryPickerFragment extends DialogFragment implements Directory
         if (this.mAdapter != null) this.mAdapter.notifyDataSetChanged();
     }
 
+    /** tree has been modified incrementally by {@link de.k3b.io.DirectoryUpdater}: refresh gui without reloading */
+    public void onDirectoryChanged(IDirectory changedDirectory) {
+        notifyDataSetChanged();
+        if ((mParentPathBar != null) && (mCurrentSelection != null)) {
+            // a removed selection has no more parent
+            IDirectory selection = ((mCurrentSelection.getParent() != null) || (mCurrentSelection == getRoot()))
+                    ? mCurrentSelection
+                    : changedDirectory;
+            updateParentPathBar(selection);
+        }
+    }
+
     private boolean onCopy(IDirectory selection) {
         String path = (selection == null) ? null : selection.getAbsolute();
         return ClipboardUtil.addDirToClipboard(this.getActivity(), path);
@@ -511,7 +523,7 @@ public class DirectoryPickerFragment extends DialogFragment implements Directory
         // delete from dir tree
         IDirectory parent = (dir != null) ? dir.getParent() :null;
         if (parent != null) {
-            parent.getChildren().remove(dir);
+            parent.removeChild(dir);
             dir.destroy();
         }
 
@@ -602,7 +614,7 @@ public class DirectoryPickerFragment extends DialogFragment implements Directory
                 onParentPathBarButtonClick(newChild);
             } else {
                 msgId = R.string.mk_err_failed_format;
-                parentDir.getChildren().remove(newChild);
+                parentDir.removeChild(newChild);
                 newChild.destroy();
             }
             Toast.makeText(getActivity(), getActivity().getString(msgId, newPathAbsolute),
@@ -14,6 +14,9 @@ import android.view.WindowManager;
 
 import java.io.File;
 
+import de.k3b.android.util.BitmapPool;
+import de.k3b.media.ImageInfoCache;
+
 import uk.co.senab.photoview.log.LogManager;
 
 /**
@@ -71,8 +74,15 @@ public class HugeImageLoader {
 
     public static Bitmap loadImage(File file, int maxWidth, int maxHeight) {
         BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        ImageInfoCache.Info cached = ImageInfoCache.getInstance().get(file.getAbsolutePath());
+        if ((cached != null) && cached.hasSize()) {
+            // size is known from media db: no need to parse the image header twice
+            options.outWidth = cached.width;
+            options.outHeight = cached.height;
+        } else {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
         // int imageHeight = options.outHeight;
         // int imageWidth = options.outWidth;
         // String imageType = options.outMimeType;
@@ -104,7 +114,14 @@ public class HugeImageLoader {
 
         // Decode bitmap with inSampleSize set
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        BitmapPool.getInstance().addInBitmapOptions(options);
+        try {
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (IllegalArgumentException ex) {
+            // pooled bitmap not compatible
+            BitmapPool.getInstance().onReuseFailed(options);
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        }
     }
 
     private static int calculateInSampleSize(
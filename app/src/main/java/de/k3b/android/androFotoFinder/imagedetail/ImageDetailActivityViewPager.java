@@ -131,6 +131,7 @@ public class ImageDetailActivityViewPager extends LocalizedActivity implements C
 
     private LockableViewPager mViewPager = null;
     private ImagePagerAdapterFromCursorArray mAdapter = null;
+    private ImagePrefetcher mPrefetcher = null;
     private TagUpdateTask mTagWorflow = null;
 
     private final AndroidFileCommands mFileCommands = new LocalFileCommands();
@@ -424,6 +425,12 @@ public class ImageDetailActivityViewPager extends LocalizedActivity implements C
 
             mViewPager.setAdapter(mAdapter);
 
+            if (Global.imageDetailPrefetchCount > 0) {
+                mPrefetcher = new ImagePrefetcher(mAdapter, getResources().getDisplayMetrics());
+                mAdapter.setPrefetcher(mPrefetcher);
+                mViewPager.setOnPageChangeListener(mPrefetcher);
+            }
+
             mViewPager.setOnInterceptTouchEvent(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
@@ -683,6 +690,12 @@ public class ImageDetailActivityViewPager extends LocalizedActivity implements C
         if (mImageContextController != null) mImageContextController.close();
         mImageContextController = null;
         // getLoaderManager().destroyLoader(ACTIVITY_ID);
+        if (mPrefetcher != null) {
+            mViewPager.setOnPageChangeListener(null);
+            mAdapter.setPrefetcher(null);
+            mPrefetcher.close();
+            mPrefetcher = null;
+        }
         if (mAdapter != null) {
             mViewPager.setAdapter(null);
             mFileCommands.closeLogFile();
@@ -46,8 +46,10 @@ import java.util.Date;
 import de.k3b.android.androFotoFinder.Global;
 import de.k3b.android.androFotoFinder.R;
 import de.k3b.android.androFotoFinder.queries.FotoSql;
+import de.k3b.android.util.BitmapPool;
 import de.k3b.android.util.DBUtils;
 import de.k3b.android.util.GarbageCollector;
+import de.k3b.media.ImageInfoCache;
 import de.k3b.media.JpgMetaWorkflow;
 import de.k3b.android.util.MenuUtils;
 import de.k3b.android.util.ResourceUtils;
@@ -79,6 +81,9 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
 
     private ImageButtonControllerImpl mImageButtonController = null;
 
+    /** if not null: images decoded in advance */
+    private ImagePrefetcher mPrefetcher = null;
+
     public ImagePagerAdapterFromCursor(final Activity context, String name) {
         mActivity = context;
         mDebugPrefix = "ImagePagerAdapterFromCursor#" + (id++) + "@" + name + " ";
@@ -92,7 +97,9 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
                 .showImageOnFail(R.drawable.image_loading)
                 .cacheInMemory(false)
                 .cacheOnDisk(true)
-                .considerExifParams(true)
+                // rotation is done by photoView.setRotationTo for all image sources.
+                // The full res tiles of TiledImageDecoder are not rotated either.
+                .considerExifParams(false)
                 .bitmapConfig(Bitmap.Config.ARGB_8888)
                 .displayer(new SimpleBitmapDisplayer())
                 .build();
@@ -105,6 +112,10 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
         mMenu = menu;
     }
 
+    public void setPrefetcher(ImagePrefetcher prefetcher) {
+        mPrefetcher = prefetcher;
+    }
+
     /**
      * Swap in a new Cursor, returning the old Cursor.  Unlike the returned old Cursor is <em>not</em>
      * closed.
@@ -224,6 +235,7 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
             int size = (colSize >= 0) ? cursor.getInt(colSize) : 32767;
 
             if (fullPhotoPath != null) {
+                putImageInfo(cursor, fullPhotoPath);
                 return createViewWithContent(position, container, fullPhotoPath, "instantiateItemFromCursor(#", size);
             }
 
@@ -231,6 +243,16 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
         return null;
     }
 
+    /** remember rotation and size from db so that showing the image needs no extra jpg header parsing */
+    private static void putImageInfo(Cursor cursor, String fullPhotoPath) {
+        int colOrientation = cursor.getColumnIndex(FotoSql.SQL_COL_ORIENTATION);
+        if ((colOrientation >= 0) && !cursor.isNull(colOrientation)) {
+            ImageInfoCache.getInstance().put(fullPhotoPath, cursor.getInt(colOrientation),
+                    (int) DBUtils.getLong(cursor, FotoSql.SQL_COL_IMAGE_WIDTH, ImageInfoCache.UNKNOWN),
+                    (int) DBUtils.getLong(cursor, FotoSql.SQL_COL_IMAGE_HEIGHT, ImageInfoCache.UNKNOWN));
+        }
+    }
+
     /** internal helper. return null if position is not available */
     private Cursor getCursorAt(int position) {
         if ((this.mCursor != null) && (position >= 0) && (position < this.mCursor.getCount())) {
@@ -300,15 +322,22 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
 
         String loadType;
 
-        // if image is big use memoryefficient, fast, low-quality thumbnail (old code)
-        if (size > Global.imageDetailThumbnailIfBiggerThan) {
+        Bitmap prefetched = (mPrefetcher != null) ? mPrefetcher.take(fullPhotoPath) : null;
+        if (prefetched != null) {
+            // already decoded at screen resolution while swiping
+            loadType = "prefetched ";
+            photoView.setReusableBitmap(prefetched);
+            boolean downscaled = Math.max(prefetched.getWidth(), prefetched.getHeight()) < size;
+            setZoomSource(photoView, downscaled ? imageFile : null);
+        } else if (size > Global.imageDetailThumbnailIfBiggerThan) {
+            // if image is big use memoryefficient, fast, low-quality thumbnail (old code)
             loadType = "image too big using thumb ";
             setImageFromThumbnail(photoView, imageFile);
         } else {
             try {
                 // #53 Optimisation: no need for thumbnail - saves cache memory but may throw OutOfMemoryError
                 loadType = "image small enough ";
-                photoView.setImageBitmap(HugeImageLoader.loadImage(imageFile, MAX_IMAGE_DIMENSION, MAX_IMAGE_DIMENSION));
+                photoView.setReusableBitmap(HugeImageLoader.loadImage(imageFile, MAX_IMAGE_DIMENSION, MAX_IMAGE_DIMENSION));
                 photoView.setImageReloadFile(null);
             } catch (OutOfMemoryError err) {
                 loadType = "small image out of memory using thumb ";
@@ -326,13 +355,24 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
     }
 
     private void setImageFromThumbnail(PhotoViewEx photoView, File imageFile) {
-        /** k3b 20150913 #10: Faster initial loading: initially the view is loaded with low res image.
-         * on first zoom it is reloaded with this uri */
-        photoView.setImageReloadFile(imageFile);
+        setZoomSource(photoView, imageFile);
 
         ImageLoader.getInstance().displayImage("file://" + imageFile, photoView, mDisplayImageOptions);
     }
 
+    /** the low res image in photoView will show details of imageFile on zoom. null: image is already in full res. */
+    private static void setZoomSource(PhotoViewEx photoView, File imageFile) {
+        if (Global.imageDetailTiled) {
+            // low res image is overlayed with full res tiles of the visible area on zoom
+            photoView.setImageReloadFile(null);
+            photoView.setTiledImageFile(imageFile);
+        } else {
+            /** k3b 20150913 #10: Faster initial loading: initially the view is loaded with low res image.
+             * on first zoom it is reloaded with this uri */
+            photoView.setImageReloadFile(imageFile);
+        }
+    }
+
     /**
      * Implementation for PagerAdapter:
      * Remove a page for the given position.  The adapter is responsible
@@ -348,6 +388,12 @@ public class ImagePagerAdapterFromCursor extends PagerAdapter {
     public void destroyItem(ViewGroup container, int position, Object object) {
         if (Global.debugEnabledViewItem) Log.i(Global.LOG_CONTEXT, mDebugPrefix + "destroyItem(#" + position +") " + object);
         container.removeView((View) object);
+
+        View photoView = ((View) object).findViewById(R.id.image);
+        if (photoView instanceof PhotoViewEx) {
+            // decoded image can be reused by the next decode
+            BitmapPool.getInstance().put(((PhotoViewEx) photoView).releaseReusableBitmap());
+        }
         GarbageCollector.freeMemory((View) object); // to reduce memory leaks
     }
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.android.androFotoFinder.imagedetail;
+
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+import android.support.v4.view.ViewPager;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import de.k3b.android.androFotoFinder.Global;
+import de.k3b.android.util.BitmapPool;
+
+/**
+ * Decodes the images that will be shown next in swipe direction at screen resolution
+ * in the background so that {@link ImagePagerAdapterFromCursor} needs no loading placeholder.
+ *
+ * Fast swiping prefetches more images. Pending requests are canceled if the swipe direction changes.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class ImagePrefetcher implements ViewPager.OnPageChangeListener {
+    /** pages per second above that twice as many images are prefetched */
+    private static final float FAST_SWIPE_VELOCITY = 2.0f;
+
+    private final String mDebugPrefix = "ImagePrefetcher ";
+    private final ImagePagerAdapterFromCursor mAdapter;
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+
+    /** decoded images. Size in bytes. */
+    private final LruCache<String, Bitmap> mPrefetched
+            = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            // not taken by the adapter: nobody displays it
+            if (evicted) BitmapPool.getInstance().put(oldValue);
+        }
+    };
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "ImagePrefetcher");
+        }
+    });
+
+    /** path => request that is not finished yet */
+    private final Map<String, Future<?>> mPending = new HashMap<String, Future<?>>();
+
+    // swipe tracking. only used in gui thread
+    private int mLastSelected = -1;
+    private int mDirection = 0;
+    private float mLastScrollPosition = -1;
+    private long mLastScrollTime = 0;
+    private float mVelocity = 0;
+
+    public ImagePrefetcher(ImagePagerAdapterFromCursor adapter, DisplayMetrics displayMetrics) {
+        mAdapter = adapter;
+        mMaxWidth = displayMetrics.widthPixels;
+        mMaxHeight = displayMetrics.heightPixels;
+    }
+
+    /** @return prefetched image at screen resolution or null if not available (yet). The caller becomes the owner. */
+    public Bitmap take(String fullPath) {
+        return (fullPath == null) ? null : mPrefetched.remove(fullPath);
+    }
+
+    @Override
+    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+        float scrollPosition = position + positionOffset;
+        long now = SystemClock.uptimeMillis();
+        if ((mLastScrollPosition >= 0) && (now > mLastScrollTime)) {
+            mVelocity = Math.abs(scrollPosition - mLastScrollPosition) * 1000 / (now - mLastScrollTime);
+        }
+        mLastScrollPosition = scrollPosition;
+        mLastScrollTime = now;
+    }
+
+    @Override
+    public void onPageSelected(int position) {
+        int direction = (mLastSelected < 0) ? 1 : Integer.signum(position - mLastSelected);
+        mLastSelected = position;
+        if (direction == 0) return;
+
+        if (direction != mDirection) {
+            // user reversed: images in the old direction are not needed soon
+            cancelPending();
+            mDirection = direction;
+        }
+
+        int count = Global.imageDetailPrefetchCount;
+        if (mVelocity > FAST_SWIPE_VELOCITY) count *= 2;
+
+        int size = mAdapter.getCount();
+        for (int i = 1; i <= count; i++) {
+            int next = position + i * direction;
+            if ((next < 0) || (next >= size)) break;
+            request(mAdapter.getFullFilePath(next));
+        }
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        if (state == ViewPager.SCROLL_STATE_IDLE) {
+            mLastScrollPosition = -1;
+            mVelocity = 0;
+        }
+    }
+
+    private void request(final String fullPath) {
+        if ((fullPath == null) || (mPrefetched.get(fullPath) != null)) return;
+
+        synchronized (mPending) {
+            if (mPending.containsKey(fullPath)) return;
+            mPending.put(fullPath, mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Bitmap bitmap = HugeImageLoader.loadImage(new File(fullPath), mMaxWidth, mMaxHeight);
+                        if (bitmap != null) mPrefetched.put(fullPath, bitmap);
+                    } catch (OutOfMemoryError err) {
+                        Log.w(Global.LOG_CONTEXT, mDebugPrefix + "not enough memory to prefetch " + fullPath);
+                        mPrefetched.trimToSize(mPrefetched.size() / 2);
+                    } finally {
+                        synchronized (mPending) {
+                            mPending.remove(fullPath);
+                        }
+                    }
+                }
+            }));
+        }
+        if (Global.debugEnabledViewItem) Log.i(Global.LOG_CONTEXT, mDebugPrefix + "request " + fullPath);
+    }
+
+    private void cancelPending() {
+        synchronized (mPending) {
+            for (Future<?> request : mPending.values()) {
+                request.cancel(false);
+            }
+            mPending.clear();
+        }
+    }
+
+    /** stop prefetching and free memory */
+    public void close() {
+        cancelPending();
+        mExecutor.shutdown();
+        mPrefetched.evictAll();
+    }
+}
@@ -1,6 +1,9 @@
 package de.k3b.android.androFotoFinder.imagedetail;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.util.AttributeSet;
 import android.widget.ImageView;
@@ -16,6 +19,7 @@ import uk.co.senab.photoview.log.LogManager;
  * Enhanvced PhotoView with support for
  * - huge images
  * - fast load reduced image that will be replaced by full-size image on first zoom
+ * - or fast load reduced image with visible full-size tiles on zoom
  *
  * Simplified version of code used in de.k3b.android.androFotoFinder.imagedetail.ImagePagerAdapterFromCursor
  * from https://github.com/k3b/APhotoManager/
@@ -25,6 +29,12 @@ import uk.co.senab.photoview.log.LogManager;
 public class PhotoViewEx extends PhotoView {
     private PhotoViewAttacherEx mAttacher;
 
+    /** if not null: draw visible tiles of huge image in full resolution */
+    private TiledImageDecoder mTiles = null;
+
+    /** bitmap that is only used by this view and can be reused when the view is destroyed */
+    private Bitmap mReusableBitmap = null;
+
     public PhotoViewEx(Context context) {
         this(context, null);
     }
@@ -49,6 +59,46 @@ public class PhotoViewEx extends PhotoView {
         mAttacher.setImageReloadFile(file);
     }
 
+    /** show bitmap that is owned by this view */
+    public void setReusableBitmap(Bitmap bitmap) {
+        setImageBitmap(bitmap);
+        mReusableBitmap = bitmap;
+    }
+
+    /** @return bitmap set via setReusableBitmap that is not displayed any more or null */
+    public Bitmap releaseReusableBitmap() {
+        Bitmap result = mReusableBitmap;
+        mReusableBitmap = null;
+        if (result != null) setImageBitmap(null);
+        return result;
+    }
+
+    /** the low res drawable will be overlayed with visible tiles of file on zoom. null: no tiles */
+    public void setTiledImageFile(File file) {
+        if (mTiles != null) mTiles.close();
+        mTiles = (file != null) ? new TiledImageDecoder(this, file) : null;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        Drawable drawable = getDrawable();
+        if ((mTiles != null) && (drawable != null)) {
+            int saveCount = canvas.save();
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            mTiles.draw(canvas, getImageMatrix(), drawable,
+                    getWidth() - getPaddingLeft() - getPaddingRight(),
+                    getHeight() - getPaddingTop() - getPaddingBottom());
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        setTiledImageFile(null);
+        super.onDetachedFromWindow();
+    }
+
     static class PhotoViewAttacherEx extends PhotoViewAttacher {
         /** k3b 20150913 #10: Faster initial loading: initially the view is loaded with low res image.
          * on first zoom it is reloaded with this uri */
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.android.androFotoFinder.imagedetail;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.view.View;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import uk.co.senab.photoview.log.LogManager;
+
+/**
+ * Draws the visible part of a huge image in full resolution on top of a low res drawable.
+ *
+ * The image is divided into tiles of TILE_SIZE pixels for every power-of-two sample size.
+ * Only tiles that are visible at the current zoom level are decoded via {@link BitmapRegionDecoder}
+ * in a background pool. Decoded tiles of all images share one memory bounded lru cache.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class TiledImageDecoder {
+    private static final String LOG_TAG = HugeImageLoader.LOG_TAG;
+    private static final int TILE_SIZE = 512;
+
+    /** decoded tiles of all images. Size in bytes. */
+    private static final LruCache<TileKey, Bitmap> sTileCache
+            = new LruCache<TileKey, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+        @Override
+        protected int sizeOf(TileKey key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    private static final ExecutorService sDecodePool = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "TiledImageDecoder");
+        }
+    });
+
+    private final View mView;
+    private final String mPath;
+
+    /** null while not opened yet or after close. Only used while holding mDecodeLock. */
+    private BitmapRegionDecoder mDecoder = null;
+    private final Object mDecodeLock = new Object();
+    private volatile int mWidth = 0;
+    private volatile int mHeight = 0;
+    private volatile boolean mClosed = false;
+
+    /**
+     * tiles that are visible: sampleSize and col/row range. Tiles that are not wanted any more are not decoded.
+     * mWantedSampleSize == 0: nothing wanted.
+     */
+    private int mWantedSampleSize = 0;
+    private int mWantedColMin, mWantedColMax, mWantedRowMin, mWantedRowMax;
+    private final Set<TileKey> mPending = new HashSet<TileKey>();
+
+    // reused in gui thread by draw to avoid allocations
+    private final Matrix mInverse = new Matrix();
+    private final RectF mVisible = new RectF();
+    private final RectF mDest = new RectF();
+    private final TileKey mLookupKey = new TileKey();
+
+    public TiledImageDecoder(View view, File file) {
+        mView = view;
+        mPath = file.getAbsolutePath();
+        sDecodePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    private void open() {
+        try {
+            BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(mPath, false);
+            synchronized (mDecodeLock) {
+                if (mClosed) {
+                    decoder.recycle();
+                    return;
+                }
+                mDecoder = decoder;
+                mHeight = decoder.getHeight();
+                mWidth = decoder.getWidth();
+            }
+            mView.postInvalidate();
+        } catch (IOException ex) {
+            LogManager.getLogger().e(LOG_TAG, "cannot decode tiles of " + mPath + ": " + ex.getMessage());
+        }
+    }
+
+    /** releases the decoder in the background. Cached tiles are kept until removed by the lru. */
+    public void close() {
+        mClosed = true;
+        setWanted(0, 0, -1, 0, -1);
+        sDecodePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mDecodeLock) {
+                    if (mDecoder != null) mDecoder.recycle();
+                    mDecoder = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Draws the visible tiles over base that is drawn with imageMatrix.
+     * base must have the same orientation as the image file (not rotated by exif).
+     * Nothing is drawn if base has enough resolution for the current zoom.
+     */
+    public void draw(Canvas canvas, Matrix imageMatrix, Drawable base, int viewWidth, int viewHeight) {
+        final int width = mWidth;
+        final int height = mHeight;
+        if (mClosed || (width <= 0) || (height <= 0)) return;
+        int baseWidth = base.getIntrinsicWidth();
+        int baseHeight = base.getIntrinsicHeight();
+        if ((baseWidth <= 0) || (baseHeight <= 0) || !imageMatrix.invert(mInverse)) return;
+
+        // screen pixel per base pixel <= 1: base is good enough
+        float viewPerBase = imageMatrix.mapRadius(1f);
+        if (viewPerBase <= 1f) {
+            setWanted(0, 0, -1, 0, -1);
+            return;
+        }
+
+        float scaleX = ((float) baseWidth) / width;
+        float scaleY = ((float) baseHeight) / height;
+        float fullPerView = 1f / (viewPerBase * scaleX);
+        int sampleSize = 1;
+        while (sampleSize * 2 <= fullPerView) sampleSize *= 2;
+        int tileSize = TILE_SIZE * sampleSize;
+
+        // visible area in full image coordinates
+        mVisible.set(0, 0, viewWidth, viewHeight);
+        mInverse.mapRect(mVisible);
+        int colMin = Math.max(0, (int) (mVisible.left / scaleX) / tileSize);
+        int colMax = Math.min((width - 1) / tileSize, (int) (mVisible.right / scaleX) / tileSize);
+        int rowMin = Math.max(0, (int) (mVisible.top / scaleY) / tileSize);
+        int rowMax = Math.min((height - 1) / tileSize, (int) (mVisible.bottom / scaleY) / tileSize);
+
+        // tiles of previous zoom/scroll position that are not visible any more will not be decoded
+        setWanted(sampleSize, colMin, colMax, rowMin, rowMax);
+
+        canvas.save();
+        canvas.concat(imageMatrix);
+        for (int row = rowMin; row <= rowMax; row++) {
+            for (int col = colMin; col <= colMax; col++) {
+                mLookupKey.set(mPath, sampleSize, col, row);
+                Bitmap tile = sTileCache.get(mLookupKey);
+                if (tile != null) {
+                    mDest.set(col * tileSize * scaleX, row * tileSize * scaleY,
+                            Math.min(width, (col + 1) * tileSize) * scaleX, Math.min(height, (row + 1) * tileSize) * scaleY);
+                    canvas.drawBitmap(tile, null, mDest, null);
+                } else {
+                    requestTile(mLookupKey);
+                }
+            }
+        }
+        canvas.restore();
+    }
+
+    private synchronized boolean isWanted(TileKey key) {
+        return (key.sampleSize == mWantedSampleSize)
+                && (key.col >= mWantedColMin) && (key.col <= mWantedColMax)
+                && (key.row >= mWantedRowMin) && (key.row <= mWantedRowMax);
+    }
+
+    private synchronized void setWanted(int sampleSize, int colMin, int colMax, int rowMin, int rowMax) {
+        mWantedSampleSize = sampleSize;
+        mWantedColMin = colMin;
+        mWantedColMax = colMax;
+        mWantedRowMin = rowMin;
+        mWantedRowMax = rowMax;
+    }
+
+    /** lookup is reused by the caller. Only a tile that is not pending yet allocates its own key. */
+    private void requestTile(TileKey lookup) {
+        final TileKey key;
+        synchronized (this) {
+            if (mPending.contains(lookup)) return;
+            key = new TileKey().set(lookup.path, lookup.sampleSize, lookup.col, lookup.row);
+            mPending.add(key);
+        }
+        sDecodePool.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap tile = null;
+                try {
+                    synchronized (mDecodeLock) {
+                        // no longer visible (zoomed, scrolled or closed): skip
+                        if ((mDecoder != null) && !mClosed && isWanted(key)) {
+                            int tileSize = TILE_SIZE * key.sampleSize;
+                            Rect region = new Rect(key.col * tileSize, key.row * tileSize,
+                                    Math.min(mWidth, (key.col + 1) * tileSize), Math.min(mHeight, (key.row + 1) * tileSize));
+                            BitmapFactory.Options options = new BitmapFactory.Options();
+                            options.inSampleSize = key.sampleSize;
+                            tile = mDecoder.decodeRegion(region, options);
+                        }
+                    }
+                } catch (OutOfMemoryError err) {
+                    LogManager.getLogger().e(LOG_TAG, "Not enough memory for tile " + key);
+                    sTileCache.trimToSize(sTileCache.size() / 2);
+                } finally {
+                    synchronized (TiledImageDecoder.this) {
+                        mPending.remove(key);
+                    }
+                }
+                if (tile != null) {
+                    sTileCache.put(key, tile);
+                    mView.postInvalidate();
+                }
+            }
+        });
+    }
+
+    /** identifies a tile of an image file. Mutable so that draw can reuse one instance for lookups. */
+    private static class TileKey {
+        private String path;
+        private int sampleSize;
+        private int col;
+        private int row;
+
+        TileKey set(String path, int sampleSize, int col, int row) {
+            this.path = path;
+            this.sampleSize = sampleSize;
+            this.col = col;
+            this.row = row;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) return false;
+            TileKey other = (TileKey) o;
+            return (sampleSize == other.sampleSize) && (col == other.col) && (row == other.row)
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((path.hashCode() * 31 + sampleSize) * 31 + col) * 31 + row;
+        }
+
+        @Override
+        public String toString() {
+            return path + "#" + sampleSize + "#" + col + "#" + row;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TiledImageDecoder(" + mPath + ", " + mWidth + "x" + mHeight + ")";
+    }
+}
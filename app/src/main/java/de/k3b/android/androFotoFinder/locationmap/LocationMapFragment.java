@@ -67,6 +67,7 @@ import de.k3b.android.androFotoFinder.ThumbNailUtils;
 import de.k3b.android.androFotoFinder.imagedetail.ImageDetailActivityViewPager;
 import de.k3b.android.androFotoFinder.queries.AndroidAlbumUtils;
 import de.k3b.android.androFotoFinder.queries.FotoSql;
+import de.k3b.android.androFotoFinder.queries.GeoClusterSql;
 import de.k3b.android.osmdroid.FolderOverlayEx;
 import de.k3b.android.osmdroid.GuestureOverlay;
 import de.k3b.android.osmdroid.IconOverlay;
@@ -84,6 +85,7 @@ import de.k3b.geo.api.IGeoInfoHandler;
 import de.k3b.geo.api.IGeoPointInfo;
 import de.k3b.geo.io.GeoUri;
 import de.k3b.geo.io.gpx.GpxReaderBase;
+import de.k3b.io.GeoCellCache;
 import de.k3b.io.GeoRectangle;
 import de.k3b.io.IGalleryFilter;
 import de.k3b.io.IGeoRectangle;
@@ -169,6 +171,17 @@ public class LocationMapFragment extends DialogFragment {
         // refWatcher.watch(this);
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // media db may have been changed by other activities (i.e. GeoEdit)
+        if (mMarkerCellCache.size() > 0) {
+            invalidateMarkerCellCache();
+            reloadFotoMarker("onResume");
+        }
+    }
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -495,6 +508,7 @@ public class LocationMapFragment extends DialogFragment {
         }
 
         this.mRootQuery = AndroidAlbumUtils.getAsMergedNewQueryParameter(rootQuery, depricated_rootFilter);
+        invalidateMarkerCellCache();
 
         mSelectedItemsHandler.define(selectedItems);
         if (zoomToFit) {
@@ -673,13 +687,26 @@ public class LocationMapFragment extends DialogFragment {
                 List<Overlay> oldItems = mFolderOverlayGreenPhotoMarker.getItems();
 
                 mLastZoom = this.mMapView.getZoomLevelDouble();
-                QueryParameter query = getCurrentAreaQuery();
+                int level = GeoClusterSql.getLevel(mLastZoom);
+                double groupingFactor = getGroupingFactor(mLastZoom);
+                double cellSize = MARKER_CELL_GROUPS / groupingFactor;
+                IGeoRectangle visible = getGeoRectangle(this.mMapView.getBoundingBox());
+
+                // only cells that are not cached yet must be loaded
+                List<GeoCellCache.CellRange> missingCells = mMarkerCellCache.getMissingCells(level, cellSize, visible);
+                QueryParameter[] queries = new QueryParameter[missingCells.size()];
+                for (int i = 0; i < queries.length; i++) {
+                    queries[i] = getMarkerQuery(level, groupingFactor, missingCells.get(i).getArea(cellSize));
+                }
 
                 if (Global.debugEnabledMap) {
                     Log.d(Global.LOG_CONTEXT, mDebugPrefix + "reloadFotoMarker(" + why + ")"
-                            + " zoom " + mLastZoom + ", query " + query);
+                            + " zoom " + mLastZoom + ", missing cells " + missingCells
+                            + " of " + mMarkerCellCache);
                 }
-                reloadFotoMarker(query, oldItems);
+                mCurrentFotoMarkerLoader = new FotoMarkerLoaderTask(createHashMap(oldItems),
+                        mMarkerCellCache, level, cellSize, visible, missingCells);
+                mCurrentFotoMarkerLoader.execute(queries);
             } else {
                 // background load is already active. Remember that at least one scroll/zoom was missing
                 mFotoMarkerPendingLoads++;
@@ -687,36 +714,58 @@ public class LocationMapFragment extends DialogFragment {
         }
     }
 
-    private void reloadFotoMarker(QueryParameter query, List<Overlay> oldItems) {
-
-        mCurrentFotoMarkerLoader = new FotoMarkerLoaderTask(createHashMap(oldItems));
-        mCurrentFotoMarkerLoader.execute(query);
+    /** markers inside a cell of the marker cache. Cells are aligned to the grouping grid so no
+     * group crosses the cell border. From precomputed clusters if possible */
+    private QueryParameter getMarkerQuery(int level, double groupingFactor, IGeoRectangle cellArea) {
+        if (GeoClusterSql.canUse(getActivity(), this.mRootQuery, level)) {
+            // indexed lookup in precomputed clusters instead of group by over all photos
+            return GeoClusterSql.getQueryGroupByPlace(level
+                    , cellArea.getLatitudeMin()
+                    , cellArea.getLatitudeMax()
+                    , cellArea.getLogituedMin()
+                    , cellArea.getLogituedMax());
+        }
+        return getAreaQuery(groupingFactor
+                , cellArea.getLatitudeMin()
+                , cellArea.getLatitudeMax()
+                , cellArea.getLogituedMin()
+                , cellArea.getLogituedMax());
     }
 
     public QueryParameter getCurrentAreaQuery() {
         double groupingFactor = getGroupingFactor(mLastZoom);
         BoundingBox latLonArea = this.mMapView.getBoundingBox();
 
-        // only selected fields are required whithout where
-        QueryParameter query = FotoSql.getQueryGroupByPlace(groupingFactor);
-        query.clearWhere();
-
-        if (this.mRootQuery != null) {
-            query.getWhereFrom(this.mRootQuery, true);
-        }
-
         // delta: make the grouping area a little bit bigger than the viewport
         // so that counts at the borders are correct.
         double delta = (groupingFactor > 0) ? (2.0 / groupingFactor) : 0.0;
         IGeoRectangle rect = getGeoRectangle(latLonArea);
-        FotoSql.addWhereFilterLatLon(query
+        return getAreaQuery(groupingFactor
                 , rect.getLatitudeMin() - delta
                 , rect.getLatitudeMax() + delta
                 , rect.getLogituedMin() - delta
                 , rect.getLogituedMax() + delta);
+    }
+
+    private QueryParameter getAreaQuery(double groupingFactor, double latitudeMin, double latitudeMax, double logituedMin, double logituedMax) {
+        // only selected fields are required whithout where
+        QueryParameter query = FotoSql.getQueryGroupByPlace(groupingFactor);
+        query.clearWhere();
+
+        if (this.mRootQuery != null) {
+            query.getWhereFrom(this.mRootQuery, true);
+        }
+
+        FotoSql.addWhereFilterLatLon(query, latitudeMin, latitudeMax, logituedMin, logituedMax);
         return query;
     }
 
+    /** markers must be reloaded because query or media db has changed. */
+    private void invalidateMarkerCellCache() {
+        // a running loader still fills the old cache
+        mMarkerCellCache = new GeoCellCache<MarkerLoaderTask.MarkerItem>(MARKER_CELL_CACHE_SIZE);
+    }
+
     private IGeoRectangle getGeoRectangle(BoundingBox boundingBox) {
         GeoRectangle result = new GeoRectangle();
         result.setLatitude(boundingBox.getLatSouth(), boundingBox.getLatNorth());
@@ -740,6 +789,17 @@ public class LocationMapFragment extends DialogFragment {
      * because the marker clustering is different */
     private double mLastZoom = NO_ZOOM;
 
+    /** size of a marker cache cell in grouping cells (of {@link FotoSql#getGroupFactor(double)})
+     * so a cache cell has a constant size on the screen */
+    private static final int MARKER_CELL_GROUPS = 8;
+
+    /** max number of cached marker cells ( about 5 screens) */
+    private static final int MARKER_CELL_CACHE_SIZE = 256;
+
+    /** markers of already loaded cells so that scrolling only has to load new visible cells */
+    private GeoCellCache<MarkerLoaderTask.MarkerItem> mMarkerCellCache
+            = new GeoCellCache<MarkerLoaderTask.MarkerItem>(MARKER_CELL_CACHE_SIZE);
+
     /** how much mCurrentFotoMarkerLoader are tirggerd while task is loading */
     private int mFotoMarkerPendingLoads = 0;
 
@@ -752,9 +812,39 @@ public class LocationMapFragment extends DialogFragment {
 
     /** to load foto summary marker with numbers in the icons */
     private class FotoMarkerLoaderTask extends MarkerLoaderTaskWithRecycling<FotoMarker> {
-        public FotoMarkerLoaderTask(HashMap<Integer, FotoMarker> oldItems) {
+        private final GeoCellCache<MarkerItem> mCellCache;
+        private final int mLevel;
+        private final double mCellSize;
+        private final IGeoRectangle mVisible;
+
+        /** one query per missing cell range */
+        private final List<GeoCellCache.CellRange> mMissingCells;
+
+        public FotoMarkerLoaderTask(HashMap<Integer, FotoMarker> oldItems,
+                                    GeoCellCache<MarkerItem> cellCache, int level, double cellSize,
+                                    IGeoRectangle visible, List<GeoCellCache.CellRange> missingCells) {
             super(getActivity(), LocationMapFragment.this.mDebugPrefix + "-FotoMarkerLoaderTask#" + (sInstanceCountFotoLoader++) + "-",
                     mFotoMarkerRecycler, oldItems, NO_MARKER_COUNT_LIMIT);
+            mCellCache = cellCache;
+            mLevel = level;
+            mCellSize = cellSize;
+            mVisible = visible;
+            mMissingCells = missingCells;
+        }
+
+        /** loads the missing cells into the cache and returns all visible items from cache */
+        @Override
+        protected List<MarkerItem> loadItems(QueryParameter... queryParameter) {
+            for (int i = 0; i < queryParameter.length; i++) {
+                if (isCancelled()) return null;
+                GeoCellCache.CellRange range = mMissingCells.get(i);
+                List<MarkerItem> items = loadItems(queryParameter[i]);
+                mCellCache.setLoaded(range);
+                for (MarkerItem item : items) {
+                    mCellCache.put(range, mCellSize, item.lat, item.lon, item);
+                }
+            }
+            return mCellCache.getItems(mLevel, mCellSize, mVisible);
         }
 
         @NonNull
@@ -22,7 +22,6 @@ package de.k3b.android.androFotoFinder.locationmap;
 import android.app.Activity;
 import android.database.Cursor;
 import android.graphics.drawable.BitmapDrawable;
-import android.net.Uri;
 import android.os.AsyncTask;
 import android.util.Log;
 
@@ -30,11 +29,14 @@ import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.overlay.DefaultOverlayManager;
 import org.osmdroid.views.overlay.OverlayManager;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import de.k3b.android.androFotoFinder.Global;
 import de.k3b.android.androFotoFinder.R;
 import de.k3b.android.androFotoFinder.queries.FotoSql;
+import de.k3b.android.androFotoFinder.queries.GeoClusterSql;
 import de.k3b.android.osmdroid.IconFactory;
 import de.k3b.android.osmdroid.ClickableIconOverlay;
 import de.k3b.android.util.ResourceUtils;
@@ -83,78 +85,74 @@ public abstract class MarkerLoaderTask<MARKER extends ClickableIconOverlay> exte
         this.mContext = context;
         this.mDebugPrefix = debugPrefix;
         mOldItems = oldItems;
-        mIconFactory = new IconFactory(context.getResources(), ResourceUtils.getDrawable(context, R.drawable.marker_green));
+        mIconFactory = new IconFactory(context.getResources(), ResourceUtils.getDrawable(context, R.drawable.marker_green),
+                R.drawable.marker_green);
     }
 
     protected abstract MARKER createMarker();
 
+    /** the content of one row of a marker query. Can be cached independent of the marker overlay. */
+    public static class MarkerItem {
+        public final int id;
+        public final double lat;
+        public final double lon;
+        public final String countText;
+
+        public MarkerItem(int id, double lat, double lon, String countText) {
+            this.id = id;
+            this.lat = lat;
+            this.lon = lon;
+            this.countText = countText;
+        }
+    }
+
     @Override
     protected OverlayManager doInBackground(QueryParameter... queryParameter) {
-        if (queryParameter.length != 1) throw new IllegalArgumentException();
+        // warm up the geo index used by FotoSql.execGetPosition() and execGetGeoRectangle()
+        FotoSql.getGeoIndex(mContext);
 
-        QueryParameter queryParameters = queryParameter[0];
-
-        Cursor cursor = null;
         try {
-            cursor = mContext.getContentResolver().query(Uri.parse(queryParameters.toFrom()), queryParameters.toColumns(),
-                    queryParameters.toAndroidWhere(), queryParameters.toAndroidParameters(), queryParameters.toOrderBy());
-
-            int itemCount = cursor.getCount();
-            final int expectedCount = itemCount + itemCount;
+            List<MarkerItem> items = loadItems(queryParameter);
+            if (items == null) return null;
 
-            publishProgress(itemCount, expectedCount);
-            if (this.mStatus != null) {
-                this.mStatus.append("'").append(itemCount).append("' rows found for query \n\t").append(queryParameters.toSqlString());
-            }
+            int itemCount = items.size();
+            publishProgress(itemCount, itemCount + itemCount);
             OverlayManager result = new DefaultOverlayManager(null);
 
-            int colCount = cursor.getColumnIndex(FotoSql.SQL_COL_COUNT);
-            int colIconID = cursor.getColumnIndex(FotoSql.SQL_COL_PK);
-
-            int colLat = cursor.getColumnIndex(FotoSql.SQL_COL_LAT);
-            int colLon = cursor.getColumnIndex(FotoSql.SQL_COL_LON);
-
-            if ((colIconID == -1) || (colLat == -1) || (colLon == -1)) {
-                throw new IllegalArgumentException("Missing SQL Column " + FotoSql.SQL_COL_LON +
-                        "," + FotoSql.SQL_COL_LAT +
-                        " or " + FotoSql.SQL_COL_PK);
-            }
-            String markerItemCount = null;
             int increment = PROGRESS_INCREMENT;
-            while (cursor.moveToNext()) {
-                int id = cursor.getInt(colIconID);
-                MARKER marker = mOldItems.get(id);
+            int markerCount = 0;
+            for (MarkerItem item : items) {
+                MARKER marker = mOldItems.get(item.id);
                 if (marker != null) {
                     // recycle existing with same content
-                    mOldItems.remove(id);
+                    mOldItems.remove(item.id);
                     mStatisticsRecycled ++;
                 } else {
                     marker = createMarker();
-                    GeoPoint point = new GeoPoint(cursor.getDouble(colLat),cursor.getDouble(colLon));
+                    GeoPoint point = new GeoPoint(item.lat, item.lon);
 
-                    if (colCount != -1) markerItemCount = cursor.getString(colCount);
-                    BitmapDrawable icon = createIcon(markerItemCount);
-                    marker.set(id, point, icon,null );
+                    marker.set(item.id, point, createIcon(item.countText),null );
                 }
 
                 result.add(marker);
 
-                itemCount++;
+                markerCount++;
                 if ((--increment) <= 0) {
-                    publishProgress(itemCount, expectedCount);
+                    publishProgress(itemCount + markerCount, itemCount + itemCount);
                     increment = PROGRESS_INCREMENT;
 
                     // Escape early if cancel() is called
                     if (isCancelled()) break;
                 }
-                
-                if ((mMarkerCountLimit != NO_MARKER_COUNT_LIMIT) && (itemCount >=mMarkerCountLimit))
+
+                if ((mMarkerCountLimit != NO_MARKER_COUNT_LIMIT) && (markerCount >=mMarkerCountLimit))
                 {
                     break;
                 }
             }
             if (this.mStatus != null) {
-                this.mStatus.append("\n\tRecycled : ").append(mStatisticsRecycled);
+                this.mStatus.append("\n\tRecycled : ").append(mStatisticsRecycled)
+                        .append(", ").append(IconFactory.getStatistics());
                 // Log.i(Global.LOG_CONTEXT, debugPrefix + itemCount + this.mStatus);
             }
 
@@ -171,6 +169,55 @@ public abstract class MarkerLoaderTask<MARKER extends ClickableIconOverlay> exte
             }
 
             throw ex;
+        }
+    }
+
+    /** @return the marker items to be displayed. null if cancelled.
+     * Default implementation: the result of one query. */
+    protected List<MarkerItem> loadItems(QueryParameter... queryParameter) {
+        if (queryParameter.length != 1) throw new IllegalArgumentException();
+        return loadItems(queryParameter[0]);
+    }
+
+    /** @return all rows of query */
+    protected List<MarkerItem> loadItems(QueryParameter queryParameters) {
+        Cursor cursor = null;
+        try {
+            if (GeoClusterSql.TABLE.equals(queryParameters.toFrom())) {
+                // precomputed clusters from app private database
+                cursor = GeoClusterSql.execQuery(mContext, queryParameters);
+            } else {
+                cursor = FotoSql.execQueryCached(mContext, queryParameters);
+            }
+
+            int itemCount = cursor.getCount();
+            if (this.mStatus != null) {
+                this.mStatus.append("'").append(itemCount).append("' rows found for query \n\t").append(queryParameters.toSqlString());
+            }
+
+            int colCount = cursor.getColumnIndex(FotoSql.SQL_COL_COUNT);
+            int colIconID = cursor.getColumnIndex(FotoSql.SQL_COL_PK);
+
+            int colLat = cursor.getColumnIndex(FotoSql.SQL_COL_LAT);
+            int colLon = cursor.getColumnIndex(FotoSql.SQL_COL_LON);
+
+            if ((colIconID == -1) || (colLat == -1) || (colLon == -1)) {
+                throw new IllegalArgumentException("Missing SQL Column " + FotoSql.SQL_COL_LON +
+                        "," + FotoSql.SQL_COL_LAT +
+                        " or " + FotoSql.SQL_COL_PK);
+            }
+            List<MarkerItem> result = new ArrayList<MarkerItem>(itemCount);
+            while (cursor.moveToNext()) {
+                result.add(new MarkerItem(cursor.getInt(colIconID),
+                        cursor.getDouble(colLat), cursor.getDouble(colLon),
+                        (colCount != -1) ? cursor.getString(colCount) : null));
+
+                if ((mMarkerCountLimit != NO_MARKER_COUNT_LIMIT) && (result.size() >=mMarkerCountLimit))
+                {
+                    break;
+                }
+            }
+            return result;
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -178,8 +225,9 @@ public abstract class MarkerLoaderTask<MARKER extends ClickableIconOverlay> exte
         }
     }
 
+    /** markers with the same (bucketed) count share the same icon */
     protected BitmapDrawable createIcon(String iconText) {
-        return mIconFactory.createIcon(iconText);
+        return mIconFactory.getIcon(IconFactory.getCountLabel(iconText));
     }
 
 }
@@ -19,7 +19,6 @@
 
 package de.k3b.android.androFotoFinder.queries;
 
-import android.app.Activity;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -37,8 +36,9 @@ import de.k3b.android.util.DatabaseContext;
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
     public static final int DATABASE_VERSION_1_TransactionLog = 1;
+    public static final int DATABASE_VERSION_2_GeoCluster = 2;
 
-    public static final int DATABASE_VERSION = DatabaseHelper.DATABASE_VERSION_1_TransactionLog;
+    public static final int DATABASE_VERSION = DatabaseHelper.DATABASE_VERSION_2_GeoCluster;
 
     public DatabaseHelper(final Context context, final String databaseName) {
         super(context, databaseName, null, DatabaseHelper.DATABASE_VERSION);
@@ -52,6 +52,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(TransactionLogSql.CREATE_TABLE);
 
         this.version3Upgrade_TIMESLICE_WITH_NOTES(db);
+        this.version2Upgrade_GeoCluster(db);
     }
 
     @Override
@@ -62,6 +63,15 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         if (oldVersion < DatabaseHelper.DATABASE_VERSION_1_TransactionLog) {
             this.version3Upgrade_TIMESLICE_WITH_NOTES(db);
         }
+        if (oldVersion < DatabaseHelper.DATABASE_VERSION_2_GeoCluster) {
+            this.version2Upgrade_GeoCluster(db);
+        }
+    }
+
+    private void version2Upgrade_GeoCluster(final SQLiteDatabase db) {
+        db.execSQL(GeoClusterSql.CREATE_TABLE);
+        db.execSQL(GeoClusterSql.CREATE_TABLE_ITEM);
+        db.execSQL(GeoClusterSql.CREATE_INDEX_ITEM);
     }
 
     private void version3Upgrade_TIMESLICE_WITH_NOTES(final SQLiteDatabase db) {
@@ -73,7 +83,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     private static DatabaseHelper instance = null;
-    public static SQLiteDatabase getWritableDatabase(Activity context) {
+    public static SQLiteDatabase getWritableDatabase(Context context) {
         if (instance == null) {
             instance = new DatabaseHelper(new DatabaseContext(context), "APhotoManager");
         }
@@ -21,13 +21,17 @@ package de.k3b.android.androFotoFinder.queries;
 
 import android.app.Activity;
 import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
+import android.os.OperationCanceledException;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -41,12 +45,15 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.android.androFotoFinder.Global;
 import de.k3b.android.androFotoFinder.R;
+import de.k3b.android.androFotoFinder.tagDB.TagSql;
 import de.k3b.android.util.DBUtils;
 import de.k3b.database.QueryParameter;
+import de.k3b.database.QueryResultCache;
 import de.k3b.io.AlbumFile;
 import de.k3b.io.ListUtils;
 import de.k3b.io.StringUtils;
@@ -56,9 +63,13 @@ import de.k3b.io.collections.SelectedItems;
 import de.k3b.io.DirectoryFormatter;
 import de.k3b.io.FileCommands;
 import de.k3b.io.GalleryFilterParameter;
+import de.k3b.io.GeoIndex;
 import de.k3b.io.GeoRectangle;
 import de.k3b.io.IGalleryFilter;
 import de.k3b.io.IGeoRectangle;
+import de.k3b.io.MediaCatalog;
+import de.k3b.io.Metrics;
+import de.k3b.tagDB.TagConverter;
 
 /**
  * contains all SQL needed to query the android gallery
@@ -134,6 +145,17 @@ public class FotoSql extends FotoSqlBase {
                                                 MediaStore.Images.Media.HEIGHT +")"
                 : "1024";
 
+    /** rotation in degrees as written by the media scanner */
+    public static final String SQL_COL_ORIENTATION = MediaStore.Images.Media.ORIENTATION;
+
+    // size of the image without rotation. 0 if unknown.
+    public static final String SQL_COL_IMAGE_WIDTH = "col_img_width";
+    public static final String SQL_COL_IMAGE_HEIGHT = "col_img_height";
+    private static final String SQL_EXPR_IMAGE_WIDTH =
+            (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) ? MediaStore.Images.Media.WIDTH : "0";
+    private static final String SQL_EXPR_IMAGE_HEIGHT =
+            (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) ? MediaStore.Images.Media.HEIGHT : "0";
+
 
     public static final String SQL_COL_EXT_MEDIA_TYPE = MediaStore.Files.FileColumns.MEDIA_TYPE;
     public static final int MEDIA_TYPE_IMAGE = MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;   // 1
@@ -232,7 +254,7 @@ public class FotoSql extends FotoSqlBase {
             ;
 
     // the bigger the smaller the area
-    private static final double GROUPFACTOR_FOR_Z0 = 0.025;
+    static final double GROUPFACTOR_FOR_Z0 = 0.025;
 
     /** to avoid cascade delete of linked file when mediaDB-item is deleted
      *  the links are first set to null before delete. */
@@ -289,7 +311,10 @@ public class FotoSql extends FotoSqlBase {
             SQL_COL_MAX_WITH + " AS " + SQL_COL_WIDTH,
             SQL_COL_GPS,
             SQL_COL_DATE_TAKEN,
-            SQL_COL_PATH};
+            SQL_COL_PATH,
+            SQL_COL_ORIENTATION,
+            SQL_EXPR_IMAGE_WIDTH + " AS " + SQL_COL_IMAGE_WIDTH,
+            SQL_EXPR_IMAGE_HEIGHT + " AS " + SQL_COL_IMAGE_HEIGHT};
 
     public static final QueryParameter queryDetail = new QueryParameter()
             .setID(QUERY_TYPE_GALLERY)
@@ -657,6 +682,28 @@ public class FotoSql extends FotoSqlBase {
         return null;
     }
 
+    /** @return the fileNames that are in the media db and match the where of filter */
+    public static List<String> execGetMatchingFileNames(Context context, QueryParameter filter, String... fileNames) {
+        List<String> result = new ArrayList<String>();
+        if ((fileNames == null) || (fileNames.length == 0)) return result;
+
+        QueryParameter query = new QueryParameter()
+                .addColumn(SQL_COL_PATH)
+                .addFrom(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME)
+                .getWhereFrom(filter, false)
+                .addWhere(getWhereInFileNames(fileNames));
+        Cursor c = null;
+        try {
+            c = createCursorForQuery(null, "execGetMatchingFileNames", context, query, null);
+            while (c.moveToNext()) {
+                result.add(c.getString(0));
+            }
+        } finally {
+            if (c != null) c.close();
+        }
+        return result;
+    }
+
 	/** search for all full-image-file-paths that matches pathfilter  */
     public static List<String> execGetFotoPaths(Context context, String pathFilter) {
         ArrayList<String> result = new ArrayList<String>();
@@ -744,6 +791,20 @@ public class FotoSql extends FotoSqlBase {
         }
         FotoSql.addWhereLatLonNotNull(query);
 
+        GeoIndex geoIndex = sGeoIndex;
+        if ((baseQuery == null) && (selectedItems != null) && (geoIndex != null)) {
+            GeoRectangle result = geoIndex.getBounds(selectedItems);
+            if (result != null) {
+                if (debugMessage != null) {
+                    StringUtils.appendMessage(debugMessage, "result from GeoIndex", result);
+                    if (out_debugMessage == null) {
+                        Log.i(Global.LOG_CONTEXT, debugMessage.toString());
+                    }
+                }
+                return result;
+            }
+        }
+
         GeoRectangle result = null;
         Cursor c = null;
         try {
@@ -772,6 +833,13 @@ public class FotoSql extends FotoSqlBase {
     /** gets IGeoPoint either from file if fullPath is not null else from db via id */
     public static IGeoPoint execGetPosition(StringBuilder out_debugMessage, Context context,
                                             String fullPath, long id, Object... dbgContext) {
+        GeoIndex geoIndex = sGeoIndex;
+        if ((fullPath == null) && (geoIndex != null)) {
+            double[] latLon = geoIndex.getPosition(id);
+            if (latLon != null) return new GeoPoint(latLon[0], latLon[1]);
+            // not in index: may be a photo without position or a change not seen yet
+        }
+
         StringBuilder debugMessage = (out_debugMessage == null) ? StringUtils.createDebugMessage(Global.debugEnabledSql, dbgContext) : out_debugMessage;
         QueryParameter query = new QueryParameter()
         .setID(QUERY_TYPE_UNDEFINED)
@@ -868,6 +936,54 @@ public class FotoSql extends FotoSqlBase {
         return exexUpdateImpl(dbgContext, context, values, getFilterExprPathLikeWithVisibility(visibility), new String[]{path});
     }
 
+    /**
+     * Same as {@link #execUpdate(String, Context, String, ContentValues, VISIBILITY)} for every paths[i], values[i]
+     * but sends all updates to the media db with one {@link ContentResolver#applyBatch(String, ArrayList)}.
+     * Falls back to one update per item if the batch fails.
+     * @return number of updated items
+     */
+    public static int execUpdate(String dbgContext, Context context, List<String> paths, List<ContentValues> values, VISIBILITY visibility) {
+        if (paths.isEmpty()) return 0;
+
+        final String sqlWhere = getFilterExprPathLikeWithVisibility(visibility);
+        ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            ops.add(ContentProviderOperation.newUpdate(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE)
+                    .withSelection(sqlWhere, new String[]{paths.get(i)})
+                    .withValues(values.get(i))
+                    .build());
+        }
+
+        int result = 0;
+        try {
+            long start = Metrics.start();
+            ContentProviderResult[] results = context.getContentResolver().applyBatch(MediaStore.AUTHORITY, ops);
+            for (ContentProviderResult r : results) {
+                if (r.count != null) result += r.count;
+            }
+            Metrics.getInstance().timer(Metrics.DB_UPDATE).stop(start, result);
+        } catch (Exception ex) {
+            // the media provider does not apply the batch in one transaction:
+            // some items may already be updated. Updating them again with the same values does no harm.
+            Log.w(Global.LOG_CONTEXT, dbgContext + ":FotoSql.execUpdate batch of " + ops.size() +
+                    " failed. Updating one by one.", ex);
+            result = 0;
+            for (int i = 0; i < paths.size(); i++) {
+                result += Math.max(0, exexUpdateImpl(dbgContext, context, values.get(i), sqlWhere, new String[]{paths.get(i)}));
+            }
+            return result;
+        }
+
+        for (ContentValues itemValues : values) {
+            onDbModified(context, null, itemValues);
+        }
+        if ((dbgContext != null) && (Global.debugEnabledSql || FotoLibGlobal.debugEnabledJpg)) {
+            Log.i(Global.LOG_CONTEXT, dbgContext + ":FotoSql.execUpdate batch of " + ops.size() +
+                    " items: " + result + " updated");
+        }
+        return result;
+    }
+
     /**
      * execRenameFolder(getActivity(),"/storage/sdcard0/testFolder/", "/storage/sdcard0/renamedFolder/")
      *    "/storage/sdcard0/testFolder/image.jpg" becomes "/storage/sdcard0/renamedFolder/image.jpg"
@@ -959,7 +1075,9 @@ public class FotoSql extends FotoSqlBase {
         }
 
         try {
+            long start = Metrics.start();
             context.getContentResolver().applyBatch(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME, ops);
+            Metrics.getInstance().timer(Metrics.DB_UPDATE).stop(start, ops.size());
         } catch (Exception ex) {
             // java.lang.IllegalArgumentException: Unknown authority content://media/external/file
             // i assume not batch support for file
@@ -974,9 +1092,13 @@ public class FotoSql extends FotoSqlBase {
         int result = -1;
         Exception excpetion = null;
         try {
+            long start = Metrics.start();
             result = context.getContentResolver().update(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
                     values, sqlWhere,
                     selectionArgs);
+            Metrics.getInstance().timer(Metrics.DB_UPDATE).stop(start, result);
+            onDbModified(context, (FILTER_COL_PK.equals(sqlWhere) && (selectionArgs != null) && (selectionArgs.length == 1))
+                    ? Long.valueOf(selectionArgs[0]) : null, values);
         } catch (Exception ex) {
             excpetion = ex;
         } finally {
@@ -989,6 +1111,311 @@ public class FotoSql extends FotoSqlBase {
         return result;
     }
 
+    /** invalidates caches that depend on the modified values. values==null means everything may have changed.
+     * id: the only modified item or null if unknown */
+    private static void onDbModified(Context context, Long id, ContentValues values) {
+        sOwnModificationCount.incrementAndGet();
+        sQueryResultCache.invalidate();
+        if ((values == null) || values.containsKey(TagSql.SQL_COL_EXT_TAGS)) {
+            TagSql.invalidateTagHistogram();
+        }
+        if (id != null) {
+            GeoClusterSql.onMediaUpdated(context, id, values);
+            updateGeoIndex(context, id, values);
+            updateMediaCatalog(context, id, values);
+        } else {
+            if ((values == null) || values.containsKey(SQL_COL_LAT) || values.containsKey(SQL_COL_LON)
+                    || values.containsKey(SQL_COL_EXT_MEDIA_TYPE)) {
+                GeoClusterSql.invalidate();
+                invalidateGeoIndex();
+            }
+            if ((values == null) || containsMediaCatalogColumn(values)) {
+                sMediaCatalog = null;
+            }
+        }
+    }
+
+    /** number of media db modifications done by this app. Used to tell own change notifications from foreign ones. */
+    private static final AtomicLong sOwnModificationCount = new AtomicLong();
+
+    public static long getOwnModificationCount() {
+        return sOwnModificationCount.get();
+    }
+
+    /** results of repeated queries (gallery, date/folder tree, map). Invalidated on every db modification. */
+    private static final QueryResultCache sQueryResultCache = new QueryResultCache(20000);
+
+    /** media db was modified outside of FotoSql (i.e. media scanner) */
+    public static void invalidateQueryResultCache() {
+        sQueryResultCache.invalidate();
+    }
+
+    /** @return cursor from {@link #sQueryResultCache} or null if query is not cached */
+    public static Cursor getCachedCursor(Context context, QueryParameter query) {
+        // changes by the media scanner must invalidate the cache even if no activity is listening
+        registerMediaObserver(context);
+        QueryResultCache.Result cached = sQueryResultCache.get(query);
+        if (cached == null) return null;
+        Cursor result = new QueryResultCursor(cached);
+        result.setNotificationUri(context.getContentResolver(), Uri.parse(query.toFrom()));
+        return result;
+    }
+
+    /** copies the rows of c into {@link #sQueryResultCache} unless there are more than
+     * {@link QueryResultCache#getMaxRowCountPerQuery()}. Stops reading after the limit
+     * so c is never counted completely. c is rewound to before the first row. */
+    private static void cacheRows(QueryParameter query, long generation, Cursor c) {
+        int maxRowCount = sQueryResultCache.getMaxRowCountPerQuery();
+        int colCount = c.getColumnCount();
+        List<Object[]> rows = new ArrayList<Object[]>();
+        while (c.moveToNext()) {
+            if (rows.size() >= maxRowCount) {
+                rows = null;
+                break;
+            }
+            Object[] row = new Object[colCount];
+            for (int col = 0; col < colCount; col++) {
+                row[col] = DBUtils.getValue(c, col);
+            }
+            rows.add(row);
+        }
+        c.moveToPosition(-1);
+
+        if (rows != null) {
+            // not cached if db was modified meanwhile. c is still valid for the caller.
+            sQueryResultCache.put(query, generation,
+                    new QueryResultCache.Result(c.getColumnNames(), rows.toArray(new Object[rows.size()][])));
+        }
+    }
+
+    /** same as ContentResolver.query() but uses {@link #sQueryResultCache} for small results.
+     * Must not be called in gui thread. */
+    public static Cursor execQueryCached(Context context, QueryParameter query) {
+        Cursor result = getCachedCursor(context, query);
+        if (result != null) return result;
+
+        long generation = sQueryResultCache.getGeneration();
+        result = context.getContentResolver().query(Uri.parse(query.toFrom()), query.toColumns(),
+                query.toAndroidWhere(), query.toAndroidParameters(), query.toOrderBy());
+        if (result != null) {
+            try {
+                cacheRows(query, generation, result);
+            } catch (RuntimeException ex) {
+                result.close();
+                throw ex;
+            }
+        }
+        return result;
+    }
+
+    /** in memory positions of all geotagged private and public photos. null if not loaded yet. */
+    private static volatile GeoIndex sGeoIndex = null;
+
+    /** incremented on every {@link #invalidateGeoIndex()} so that an index loaded before is not published */
+    private static final AtomicLong sGeoIndexGeneration = new AtomicLong();
+
+    private static final String FILTER_EXPR_GEO_INDEX = FILTER_EXPR_PRIVATE_PUBLIC
+            + " AND " + SQL_COL_LAT + " IS NOT NULL AND " + SQL_COL_LON + " IS NOT NULL"
+            + " AND (" + SQL_COL_LON + " <> 0 OR " + SQL_COL_LAT + " <> 0)";
+
+    /** loads the geo index if neccessary. Should not be called from the gui thread. */
+    public static GeoIndex getGeoIndex(Context context) {
+        GeoIndex result = sGeoIndex;
+        if (result == null) {
+            registerMediaObserver(context);
+            long generation = sGeoIndexGeneration.get();
+            result = new GeoIndex();
+            Cursor c = null;
+            try {
+                c = context.getContentResolver().query(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                        new String[]{SQL_COL_PK, SQL_COL_LAT, SQL_COL_LON},
+                        FILTER_EXPR_GEO_INDEX, null, null);
+                while ((c != null) && c.moveToNext()) {
+                    result.put(c.getLong(0), c.getDouble(1), c.getDouble(2));
+                }
+                synchronized (sGeoIndexGeneration) {
+                    // media db was modified while loading: load again next time
+                    if (generation == sGeoIndexGeneration.get()) sGeoIndex = result;
+                }
+                if (Global.debugEnabledSql) {
+                    Log.i(Global.LOG_CONTEXT, "FotoSql.getGeoIndex() loaded " + result);
+                }
+            } catch (Exception ex) {
+                Log.e(Global.LOG_CONTEXT, "FotoSql.getGeoIndex(): error loading", ex);
+            } finally {
+                if (c != null) c.close();
+            }
+        }
+        return result;
+    }
+
+    private static void invalidateGeoIndex() {
+        synchronized (sGeoIndexGeneration) {
+            sGeoIndexGeneration.incrementAndGet();
+            sGeoIndex = null;
+        }
+    }
+
+    /** reloads the position of item id into the geo index */
+    private static void updateGeoIndex(Context context, long id, ContentValues values) {
+        if ((values == null) || values.containsKey(SQL_COL_LAT) || values.containsKey(SQL_COL_LON)
+                || values.containsKey(SQL_COL_EXT_MEDIA_TYPE) || values.containsKey(SQL_COL_PATH)) {
+            GeoIndex geoIndex = sGeoIndex;
+            if (geoIndex == null) {
+                // an index that is loading may have missed this change
+                invalidateGeoIndex();
+                return;
+            }
+            Cursor c = null;
+            try {
+                c = context.getContentResolver().query(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                        new String[]{SQL_COL_LAT, SQL_COL_LON},
+                        FILTER_COL_PK + " AND " + FILTER_EXPR_GEO_INDEX, new String[]{Long.toString(id)}, null);
+                if ((c != null) && c.moveToFirst()) {
+                    geoIndex.put(id, c.getDouble(0), c.getDouble(1));
+                } else {
+                    geoIndex.remove(id);
+                }
+            } catch (Exception ex) {
+                Log.e(Global.LOG_CONTEXT, "FotoSql.updateGeoIndex(" + id + ") failed", ex);
+                invalidateGeoIndex();
+            } finally {
+                if (c != null) c.close();
+            }
+        }
+    }
+
+    /** in memory copy of all private and public photos to evaluate filters. null if not loaded yet. */
+    private static MediaCatalog sMediaCatalog = null;
+
+    /** {@link #getOwnModificationCount()} when {@link #sMediaObserver} was notified last time */
+    private static volatile long sMediaNotifiedModificationCount = 0;
+
+    /** drops cached query results and in memory copies of the media db if it was modified outside of FotoSql (i.e. media scanner).
+     * Own modifications are already applied by {@link #onDbModified(Context, Long, ContentValues)}. */
+    private static final ContentObserver sMediaObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            long ownModificationCount = getOwnModificationCount();
+            if (ownModificationCount == sMediaNotifiedModificationCount) {
+                sQueryResultCache.invalidate();
+                sMediaCatalog = null;
+                GeoClusterSql.invalidate();
+                invalidateGeoIndex();
+            }
+            sMediaNotifiedModificationCount = ownModificationCount;
+        }
+    };
+    private static volatile boolean sMediaObserverRegistered = false;
+
+    private static final String[] MEDIA_CATALOG_COLUMNS = new String[]{SQL_COL_PK, SQL_COL_PATH,
+            SQL_COL_DATE_TAKEN, SQL_COL_LAT, SQL_COL_LON, SQL_COL_EXT_RATING, SQL_COL_EXT_MEDIA_TYPE,
+            TagSql.SQL_COL_EXT_TAGS};
+
+    /** loads the catalog if neccessary. Should not be called from the gui thread.
+     * @return null if the catalog cannot be loaded */
+    public static MediaCatalog getMediaCatalog(Context context) {
+        MediaCatalog result = sMediaCatalog;
+        if (result == null) {
+            registerMediaObserver(context);
+
+            Cursor c = null;
+            try {
+                c = context.getContentResolver().query(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                        MEDIA_CATALOG_COLUMNS, FILTER_EXPR_PRIVATE_PUBLIC, null, SQL_COL_PK);
+                if (c != null) {
+                    result = new MediaCatalog();
+                    while (c.moveToNext()) {
+                        putMediaCatalog(result, c);
+                    }
+                    sMediaCatalog = result;
+                    if (Global.debugEnabledSql) {
+                        Log.i(Global.LOG_CONTEXT, "FotoSql.getMediaCatalog() loaded " + result);
+                    }
+                }
+            } catch (Exception ex) {
+                // a partially loaded catalog would return wrong counts
+                Log.e(Global.LOG_CONTEXT, "FotoSql.getMediaCatalog(): error loading", ex);
+                result = null;
+            } finally {
+                if (c != null) c.close();
+            }
+        }
+        return result;
+    }
+
+    /** registers {@link #sMediaObserver} once on the application context.
+     * Must be called before loading an in memory copy of the media db. */
+    public static void registerMediaObserver(Context context) {
+        if (sMediaObserverRegistered) return;
+        synchronized (sMediaObserver) {
+            if (sMediaObserverRegistered) return;
+            ContentResolver resolver = context.getApplicationContext().getContentResolver();
+            resolver.registerContentObserver(SQL_TABLE_EXTERNAL_CONTENT_URI, true, sMediaObserver);
+            resolver.registerContentObserver(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE, true, sMediaObserver);
+            sMediaNotifiedModificationCount = getOwnModificationCount();
+            sMediaObserverRegistered = true;
+        }
+    }
+
+    /** c contains MEDIA_CATALOG_COLUMNS */
+    private static void putMediaCatalog(MediaCatalog catalog, Cursor c) {
+        catalog.put(c.getLong(0), c.getString(1),
+                c.isNull(2) ? MediaCatalog.NO_DATE : c.getLong(2),
+                c.isNull(3) ? Double.NaN : c.getDouble(3),
+                c.isNull(4) ? Double.NaN : c.getDouble(4),
+                c.getInt(5),
+                (c.getInt(6) == MEDIA_TYPE_IMAGE_PRIVATE) ? MediaCatalog.VISIBILITY_PRIVATE : MediaCatalog.VISIBILITY_PUBLIC,
+                TagConverter.fromString(c.getString(7)));
+    }
+
+    private static boolean containsMediaCatalogColumn(ContentValues values) {
+        for (String column : MEDIA_CATALOG_COLUMNS) {
+            if (values.containsKey(column)) return true;
+        }
+        return false;
+    }
+
+    /** reloads item id into the catalog */
+    private static void updateMediaCatalog(Context context, long id, ContentValues values) {
+        MediaCatalog catalog = sMediaCatalog;
+        if ((catalog != null) && ((values == null) || containsMediaCatalogColumn(values))) {
+            Cursor c = null;
+            try {
+                c = context.getContentResolver().query(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                        MEDIA_CATALOG_COLUMNS, FILTER_COL_PK + " AND " + FILTER_EXPR_PRIVATE_PUBLIC,
+                        new String[]{Long.toString(id)}, null);
+                if ((c != null) && c.moveToFirst()) {
+                    putMediaCatalog(catalog, c);
+                } else {
+                    catalog.remove(id);
+                }
+            } catch (Exception ex) {
+                Log.e(Global.LOG_CONTEXT, "FotoSql.updateMediaCatalog(" + id + ") failed", ex);
+                sMediaCatalog = null;
+            } finally {
+                if (c != null) c.close();
+            }
+        }
+    }
+
+    /** @return count from {@link MediaCatalog} or null if query contains more than a gallery filter */
+    private static Long getCountFromMediaCatalog(Context context, QueryParameter query) {
+        if (!SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME.equals(query.toFrom())) return null;
+
+        // the parser removes all filter expressions that it understands
+        QueryParameter remaining = new QueryParameter(query);
+        IGalleryFilter filter = TagSql.parseQueryEx(remaining, true);
+
+        // without visibility expression the query would also count non-photo files
+        if (remaining.isAndroidWhereEmpty() && (filter.getVisibility() != VISIBILITY.DEFAULT)
+                && MediaCatalog.isSupported(filter)) {
+            MediaCatalog catalog = getMediaCatalog(context);
+            if (catalog != null) return (long) catalog.count(filter);
+        }
+        return null;
+    }
+
     protected static String getFilterExprPathLikeWithVisibility(VISIBILITY visibility) {
         // visibility VISIBILITY.PRIVATE_PUBLIC
         String resultExpression = FotoSql.FILTER_EXPR_PATH_LIKE;
@@ -1027,6 +1454,7 @@ public class FotoSql extends FotoSqlBase {
         try {
         // on my android-4.4 insert with media_type=1001 (private) does insert with media_type=1 (image)
             result = context.getContentResolver().insert(providerUri, values);
+            onDbModified(context, getId(result), values);
         } catch (Exception ex) {
             excpetion = ex;
         } finally {
@@ -1113,6 +1541,7 @@ public class FotoSql extends FotoSqlBase {
                                     lastUsedWhereClause, lastSelectionArgs, null, delCount));
                 }
             }
+            onDbModified(context, null, null);
         } catch (Exception ex) {
             // null pointer exception when delete matches not items??
             final String msg = dbgContext + ": Exception in FotoSql.deleteMedia:\n" +
@@ -1166,6 +1595,11 @@ public class FotoSql extends FotoSqlBase {
 
     @Nullable
     public static long getCount(Context context, QueryParameter query) {
+        if (Global.galleryUseMediaCatalog) {
+            Long count = getCountFromMediaCatalog(context, query);
+            if (count != null) return count;
+        }
+
         QueryParameter queryModified = new QueryParameter(query);
         queryModified.clearColumns().addColumn("count(*)");
         Cursor c = null;
@@ -1309,8 +1743,7 @@ public class FotoSql extends FotoSqlBase {
         }
 
         if (visibility != null) {
-            String sqlWhere = parameters.toAndroidWhere();
-            if ((sqlWhere == null) || (parameters.toFrom().contains(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME) && !sqlWhere.contains(SQL_COL_EXT_MEDIA_TYPE))) {
+            if (parameters.isAndroidWhereEmpty() || (parameters.toFrom().contains(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME) && !parameters.containsInAndroidWhere(SQL_COL_EXT_MEDIA_TYPE))) {
                 parameters.addWhere(getFilterExpressionVisibility(visibility));
             }
         }
@@ -1349,18 +1782,59 @@ public class FotoSql extends FotoSqlBase {
         private final QueryParameter query;
         private Exception mException;
 
+        /** reloads after media db changes. Must be created in gui thread. */
+        private final ContentObserver mObserver;
+
         public CursorLoaderWithException(Context context, QueryParameter query) {
             super(context, Uri.parse(query.toFrom()), query.toColumns(), query.toAndroidWhere(), query.toAndroidParameters(), query.toOrderBy());
             this.query = query;
+            mObserver = new ContentObserver(new Handler()) {
+                @Override
+                public boolean deliverSelfNotifications() {
+                    return true;
+                }
+
+                @Override
+                public void onChange(boolean selfChange) {
+                    onContentChanged();
+                }
+            };
+        }
+
+        @Override
+        public void onContentChanged() {
+            // cached result must not be used for the reload
+            invalidateQueryResultCache();
+            super.onContentChanged();
         }
 
         @Override
         public Cursor loadInBackground() {
             mException = null;
             try {
-                Cursor result = super.loadInBackground();
+                Cursor result = getCachedCursor(getContext(), query);
+                if ((result == null) && Global.galleryUseKeysetPaging) {
+                    result = KeysetPagedCursor.create(getContext(), query);
+                }
+                if (result != null) {
+                    // same as super.loadInBackground(): requery if media db changes
+                    result.getCount();
+                    result.registerContentObserver(mObserver);
+                    return result;
+                }
+
+                // super supports cancellation and registers its own content observer
+                long generation = sQueryResultCache.getGeneration();
+                result = super.loadInBackground();
+                if (result != null) {
+                    cacheRows(query, generation, result);
+                }
                 return result;
             } catch (Exception ex) {
+                if ((Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) && (ex instanceof OperationCanceledException)) {
+                    // cancelled by the loader manager: not an error
+                    throw (OperationCanceledException) ex;
+                }
                 final String msg = "FotoSql.createCursorLoader()#loadInBackground failed:\n\t" + query.toSqlString();
                 Log.e(Global.LOG_CONTEXT, msg, ex);
                 mException = ex;
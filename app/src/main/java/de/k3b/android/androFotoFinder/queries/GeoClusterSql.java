@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.android.androFotoFinder.queries;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.k3b.android.androFotoFinder.Global;
+import de.k3b.database.QueryParameter;
+
+/**
+ * Precomputed map marker clusters for every zoom level ("geo-grid pyramid")
+ * in the app private database so that the map does not need a full table
+ * group by of the media database for every pan or zoom.
+ *
+ * For every level there is one row per grid cell with the number of public photos in it
+ * and the max id as representative (icon). The cells are the same as in
+ * {@link FotoSql#getQueryGroupByPlace(double)}.
+ *
+ * The pyramid is built in the background on first use and then kept current
+ * incrementally for media db updates of single photos.
+ * Other modifications (delete, update by path, media scanner) mark it as outdated.
+ * While it is outdated the map uses {@link FotoSql#getQueryGroupByPlace(double)}.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class GeoClusterSql {
+    public static final String TABLE = "GeoCluster";
+    private static final String COL_LEVEL = "level";
+    private static final String COL_LAT_CELL = "latCell";
+    private static final String COL_LON_CELL = "lonCell";
+    private static final String COL_COUNT = "itemCount";
+    private static final String COL_ICON_ID = "iconID";
+
+    /** photos that are counted in {@link #TABLE}. Required to decrement the old cells if a photo changes. */
+    public static final String TABLE_ITEM = "GeoClusterItem";
+    private static final String COL_ITEM_PK = "_id";
+    private static final String COL_ITEM_LAT = "lat";
+    private static final String COL_ITEM_LON = "lon";
+
+    public static final String CREATE_TABLE = "CREATE TABLE " + TABLE
+            + "(" + COL_LEVEL + " INTEGER, "
+            + COL_LAT_CELL + " INTEGER, "
+            + COL_LON_CELL + " INTEGER, "
+            + COL_COUNT + " INTEGER, "
+            + COL_ICON_ID + " INTEGER, "
+            + "PRIMARY KEY (" + COL_LEVEL + ", " + COL_LAT_CELL + ", " + COL_LON_CELL + ")"
+            + ")";
+
+    public static final String CREATE_TABLE_ITEM = "CREATE TABLE " + TABLE_ITEM
+            + "(" + COL_ITEM_PK + " INTEGER PRIMARY KEY, "
+            + COL_ITEM_LAT + " REAL, "
+            + COL_ITEM_LON + " REAL"
+            + ")";
+
+    public static final String CREATE_INDEX_ITEM = "CREATE INDEX " + TABLE_ITEM + "_" + COL_ITEM_LAT
+            + " ON " + TABLE_ITEM + "(" + COL_ITEM_LAT + ")";
+
+    /** zoom levels above this are grouped by {@link FotoSql#getQueryGroupByPlace(double)} */
+    public static final int MAX_LEVEL = 16;
+
+    private static final String[] GEO_VALUE_KEYS = {FotoSql.SQL_COL_LAT, FotoSql.SQL_COL_LON,
+            FotoSql.SQL_COL_EXT_MEDIA_TYPE, FotoSql.SQL_COL_PATH};
+
+    /** false: pyramid must be rebuilt before next use */
+    private static volatile boolean sValid = false;
+
+    /** incremented on every {@link #invalidate()} so that a rebuild started before is not published */
+    private static final AtomicLong sGeneration = new AtomicLong();
+
+    /** true while a rebuild is queued or running */
+    private static final AtomicBoolean sRebuildScheduled = new AtomicBoolean(false);
+    private static final Executor sRebuildExecutor = Executors.newSingleThreadExecutor();
+
+    /** map zoomlevel to pyramid level. Same rounding as {@link FotoSql#getGroupFactor(double)} */
+    public static int getLevel(double zoomLevel) {
+        int result = 0;
+        while (zoomLevel > 0) {
+            result++;
+            zoomLevel--;
+        }
+        return result;
+    }
+
+    /** same as {@link FotoSql#getGroupFactor(double)} without logging */
+    private static double getGroupFactor(int level) {
+        return FotoSql.GROUPFACTOR_FOR_Z0 * (1L << level);
+    }
+
+    /** @return true if the pyramid can answer the marker query for rootQuery.
+     * Starts a background rebuild if the pyramid is outdated. */
+    public static boolean canUse(Context context, QueryParameter rootQuery, int level) {
+        if ((level > MAX_LEVEL) || !Global.mapUseGeoClusterPyramid) return false;
+
+        // the pyramid only contains public photos without further filtering.
+        // no where at all would include private photos.
+        if ((rootQuery == null) || !rootQuery.hasWhere()
+                || !("(" + FotoSql.FILTER_EXPR_PUBLIC + ")").equals(rootQuery.toAndroidWhere())) {
+            return false;
+        }
+
+        if (!sValid) {
+            scheduleRebuild(context);
+            return false;
+        }
+        return true;
+    }
+
+    /** same result columns as {@link FotoSql#getQueryGroupByPlace(double)} but from {@link #TABLE} */
+    public static QueryParameter getQueryGroupByPlace(int level, double latMin, double latMax, double lonMin, double lonMax) {
+        double factor = getGroupFactor(level);
+        return new QueryParameter()
+                .setID(FotoSql.QUERY_TYPE_GROUP_PLACE)
+                .addColumn(
+                        COL_ICON_ID + " AS " + FotoSql.SQL_COL_PK,
+                        "((" + COL_LAT_CELL + " + 0.5) / " + factor + ") AS " + FotoSql.SQL_COL_LAT,
+                        "((" + COL_LON_CELL + " + 0.5) / " + factor + ") AS " + FotoSql.SQL_COL_LON,
+                        COL_COUNT + " AS " + FotoSql.SQL_COL_COUNT)
+                .addFrom(TABLE)
+                .addWhere(COL_LEVEL + " = ?", Integer.toString(level))
+                .addWhere(COL_LAT_CELL + " BETWEEN ? AND ?",
+                        Long.toString(getCell(latMin, factor)), Long.toString(getCell(latMax, factor)))
+                .addWhere(COL_LON_CELL + " BETWEEN ? AND ?",
+                        Long.toString(getCell(lonMin, factor)), Long.toString(getCell(lonMax, factor)));
+    }
+
+    /** executes a query created by {@link #getQueryGroupByPlace(int, double, double, double, double)}.
+     * Must not be called in gui thread. */
+    public static Cursor execQuery(Context context, QueryParameter query) {
+        SQLiteDatabase db = DatabaseHelper.getWritableDatabase(context);
+        return db.query(query.toFrom(), query.toColumns(), query.toAndroidWhere(),
+                query.toAndroidParameters(), null, null, query.toOrderBy());
+    }
+
+    /** pyramid must be rebuilt before next use because of changes that cannot be applied incrementally */
+    public static void invalidate() {
+        synchronized (sGeneration) {
+            sGeneration.incrementAndGet();
+            sValid = false;
+        }
+    }
+
+    /** rebuilds the pyramid in the background unless this is already in progress */
+    private static void scheduleRebuild(Context context) {
+        if (!sRebuildScheduled.compareAndSet(false, true)) return;
+
+        final Context appContext = context.getApplicationContext();
+        // changes by the media scanner are not reported through FotoSql
+        FotoSql.registerMediaObserver(appContext);
+        sRebuildExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rebuild(appContext, DatabaseHelper.getWritableDatabase(appContext));
+                } catch (Exception ex) {
+                    Log.e(Global.LOG_CONTEXT, "GeoClusterSql.rebuild() failed", ex);
+                } finally {
+                    sRebuildScheduled.set(false);
+                }
+            }
+        });
+    }
+
+    /** media db item id has been updated with values */
+    public static void onMediaUpdated(Context context, long id, ContentValues values) {
+        if ((values != null) && containsAny(values, GEO_VALUE_KEYS)) {
+            if (!sValid) {
+                // a rebuild that is running may have missed this change
+                invalidate();
+                return;
+            }
+            try {
+                update(context, DatabaseHelper.getWritableDatabase(context), id);
+            } catch (Exception ex) {
+                Log.e(Global.LOG_CONTEXT, "GeoClusterSql.onMediaUpdated(" + id + ") failed", ex);
+                invalidate();
+            }
+        }
+    }
+
+    private static boolean containsAny(ContentValues values, String... keys) {
+        for (String key : keys) {
+            if (values.containsKey(key)) return true;
+        }
+        return false;
+    }
+
+    /** reloads the item id from media db and moves it to its new cells */
+    private static synchronized void update(Context context, SQLiteDatabase db, long id) {
+        if (!sValid) return;
+
+        Double lat = null;
+        Double lon = null;
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(FotoSql.SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                    new String[]{FotoSql.SQL_COL_LAT, FotoSql.SQL_COL_LON},
+                    FotoSql.FILTER_COL_PK + " AND " + FotoSql.FILTER_EXPR_PUBLIC + " AND " + FotoSql.SQL_COL_LAT + " IS NOT NULL",
+                    new String[]{Long.toString(id)}, null);
+            if ((cursor != null) && cursor.moveToFirst()) {
+                lat = cursor.getDouble(0);
+                lon = cursor.getDouble(1);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        db.beginTransaction();
+        try {
+            removeItem(db, id);
+            if (lat != null) addItem(db, id, lat, lon);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void addItem(SQLiteDatabase db, long id, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(COL_ITEM_PK, id);
+        values.put(COL_ITEM_LAT, lat);
+        values.put(COL_ITEM_LON, lon);
+        db.insert(TABLE_ITEM, null, values);
+
+        String sId = Long.toString(id);
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            double factor = getGroupFactor(level);
+            String[] cellKey = getCellKey(level, getCell(lat, factor), getCell(lon, factor));
+            db.execSQL("UPDATE " + TABLE + " SET " + COL_COUNT + " = " + COL_COUNT + " + 1, "
+                    + COL_ICON_ID + " = max(" + COL_ICON_ID + ", " + sId + ") WHERE " + getCellWhere(), cellKey);
+            if (getChanges(db) == 0) {
+                db.execSQL("INSERT INTO " + TABLE + "(" + COL_LEVEL + ", " + COL_LAT_CELL + ", " + COL_LON_CELL
+                        + ", " + COL_COUNT + ", " + COL_ICON_ID + ") VALUES(?, ?, ?, 1, " + sId + ")", cellKey);
+            }
+        }
+    }
+
+    private static void removeItem(SQLiteDatabase db, long id) {
+        String sId = Long.toString(id);
+        Cursor cursor = null;
+        double lat;
+        double lon;
+        try {
+            cursor = db.query(TABLE_ITEM, new String[]{COL_ITEM_LAT, COL_ITEM_LON}, COL_ITEM_PK + " = ?",
+                    new String[]{sId}, null, null, null);
+            if (!cursor.moveToFirst()) return; // was not counted
+            lat = cursor.getDouble(0);
+            lon = cursor.getDouble(1);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        db.delete(TABLE_ITEM, COL_ITEM_PK + " = ?", new String[]{sId});
+
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            double factor = getGroupFactor(level);
+            long latCell = getCell(lat, factor);
+            long lonCell = getCell(lon, factor);
+            String[] cellKey = getCellKey(level, latCell, lonCell);
+            db.execSQL("UPDATE " + TABLE + " SET " + COL_COUNT + " = " + COL_COUNT + " - 1 WHERE " + getCellWhere(), cellKey);
+            db.delete(TABLE, getCellWhere() + " AND " + COL_COUNT + " <= 0", cellKey);
+
+            // representative has gone: use max id of the remaining items in the cell
+            db.execSQL("UPDATE " + TABLE + " SET " + COL_ICON_ID + " = (SELECT max(" + COL_ITEM_PK + ") FROM " + TABLE_ITEM
+                    + " WHERE " + COL_ITEM_LAT + " >= " + (latCell / factor)
+                    + " AND " + COL_ITEM_LAT + " < " + ((latCell + 1) / factor)
+                    + " AND " + COL_ITEM_LON + " >= " + (lonCell / factor)
+                    + " AND " + COL_ITEM_LON + " < " + ((lonCell + 1) / factor)
+                    + ") WHERE " + getCellWhere() + " AND " + COL_ICON_ID + " = " + sId, cellKey);
+        }
+    }
+
+    /** (re)creates the complete pyramid from the media db */
+    private static synchronized void rebuild(Context context, SQLiteDatabase db) {
+        long generation = sGeneration.get();
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        Cursor cursor = null;
+        db.beginTransaction();
+        try {
+            db.delete(TABLE, null, null);
+            db.delete(TABLE_ITEM, null, null);
+
+            cursor = context.getContentResolver().query(FotoSql.SQL_TABLE_EXTERNAL_CONTENT_URI_FILE,
+                    new String[]{FotoSql.SQL_COL_PK, FotoSql.SQL_COL_LAT, FotoSql.SQL_COL_LON},
+                    FotoSql.FILTER_EXPR_PUBLIC + " AND " + FotoSql.SQL_COL_LAT + " IS NOT NULL AND "
+                            + FotoSql.SQL_COL_LON + " IS NOT NULL", null, null);
+            ContentValues values = new ContentValues();
+            while ((cursor != null) && cursor.moveToNext()) {
+                values.clear();
+                values.put(COL_ITEM_PK, cursor.getLong(0));
+                values.put(COL_ITEM_LAT, cursor.getDouble(1));
+                values.put(COL_ITEM_LON, cursor.getDouble(2));
+                db.insert(TABLE_ITEM, null, values);
+                count++;
+            }
+
+            for (int level = 0; level <= MAX_LEVEL; level++) {
+                double factor = getGroupFactor(level);
+                db.execSQL("INSERT INTO " + TABLE + "(" + COL_LEVEL + ", " + COL_LAT_CELL + ", " + COL_LON_CELL
+                        + ", " + COL_COUNT + ", " + COL_ICON_ID + ") SELECT " + level + ", c_lat, c_lon, count(*), max("
+                        + COL_ITEM_PK + ") FROM (SELECT " + COL_ITEM_PK
+                        + ", " + getSqlCell(COL_ITEM_LAT, factor) + " AS c_lat"
+                        + ", " + getSqlCell(COL_ITEM_LON, factor) + " AS c_lon"
+                        + " FROM " + TABLE_ITEM + ") GROUP BY c_lat, c_lon");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            if (cursor != null) cursor.close();
+        }
+
+        synchronized (sGeneration) {
+            // not valid if media db was modified while rebuilding
+            sValid = (generation == sGeneration.get());
+        }
+
+        if (Global.debugEnabledSql || Global.debugEnabledMap) {
+            Log.i(Global.LOG_CONTEXT, "GeoClusterSql.rebuild() " + count + " photos in "
+                    + (System.currentTimeMillis() - startTime) + " msecs");
+        }
+    }
+
+    /** floor(value * factor) */
+    private static long getCell(double value, double factor) {
+        return (long) Math.floor(value * factor);
+    }
+
+    /** sql version of {@link #getCell(double, double)}: sqlite has no floor() */
+    private static String getSqlCell(String col, double factor) {
+        String product = "(" + col + " * " + factor + ")";
+        return "(CAST(" + product + " AS INTEGER) - (" + product + " < CAST(" + product + " AS INTEGER)))";
+    }
+
+    private static String getCellWhere() {
+        return COL_LEVEL + " = ? AND " + COL_LAT_CELL + " = ? AND " + COL_LON_CELL + " = ?";
+    }
+
+    private static String[] getCellKey(int level, long latCell, long lonCell) {
+        return new String[]{Integer.toString(level), Long.toString(latCell), Long.toString(lonCell)};
+    }
+
+    private static long getChanges(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT changes()", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.android.androFotoFinder.queries;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import de.k3b.android.androFotoFinder.Global;
+import de.k3b.android.util.DBUtils;
+import de.k3b.database.KeysetQuery;
+import de.k3b.database.QueryParameter;
+
+/**
+ * Read only cursor that loads its rows page by page instead of stepping through the
+ * whole result set like {@link Cursor#getCount()} of a sqlite cursor does.
+ *
+ * The next/previous page is loaded with keyset pagination relative to the
+ * sort keys of an already loaded neighbour page (see {@link KeysetQuery}).
+ * The neighbour pages of the current page are prefetched in a background thread so that
+ * scrolling does not wait for the db. After a jump (i.e. fast scroll) the page is loaded
+ * in the background thread with "LIMIT/OFFSET". Until it is loaded its rows contain null values
+ * and the data set observers (i.e. the adapter) are notified when it arrives.
+ * The count comes from a "count(*)" query with the same condition as the pages. If the media db
+ * changes in the mean time it is only approximate: missing rows at the end contain null values.
+ * If a page cannot be loaded its rows contain null values and the content observers
+ * are notified once so that the owning loader reloads the query and reports the error.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class KeysetPagedCursor extends ObjectRowCursor {
+    private static final String mDebugPrefix = "KeysetPagedCursor ";
+
+    /** rows per page */
+    private static final int PAGE_SIZE = 256;
+
+    /** max number of pages kept in memory */
+    private static final int MAX_PAGE_COUNT = 16;
+
+    private final ContentResolver mResolver;
+    private final Uri mUri;
+    private final KeysetQuery mKeysetQuery;
+    private final int mCount;
+
+    /** page number => rows. Each row contains the values of mColumnNames followed by the sort keys */
+    private final LinkedHashMap<Integer, Object[][]> mPages = new LinkedHashMap<Integer, Object[][]>(MAX_PAGE_COUNT, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+            return size() > MAX_PAGE_COUNT;
+        }
+    };
+
+    /** page number => page that is prefetched in background. Guarded by mPages */
+    private final Map<Integer, Future<Object[][]>> mLoading = new HashMap<Integer, Future<Object[][]>>();
+
+    /** pages that were displayed with null values while loading. Guarded by mPages */
+    private final Set<Integer> mMissingPages = new HashSet<Integer>();
+
+    /** AbstractCursor does not allow subclasses to notify its data set observers */
+    private final DataSetObservable mPageLoadedObservable = new DataSetObservable();
+
+    private static final ExecutorService sPrefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "KeysetPagedCursor");
+        }
+    });
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean mFailureNotified = false;
+
+    private Object[] mCurrentRow = null;
+
+    /** @return paged cursor for query or null if query is too small or cannot be paged. Must not be called in gui thread. */
+    public static Cursor create(Context context, QueryParameter query) {
+        String[] columns = query.toColumns();
+        if ((columns == null) || (columns.length == 0) || Arrays.asList(columns).contains("*")) return null;
+
+        KeysetQuery keysetQuery = new KeysetQuery(query, FotoSql.SQL_COL_PK);
+        if (!keysetQuery.isSupported()) return null;
+
+        long count = getCount(context.getContentResolver(), Uri.parse(query.toFrom()), keysetQuery.createPageQuery(null, false));
+        if (count <= 2 * PAGE_SIZE) return null;
+
+        return new KeysetPagedCursor(context, query, keysetQuery, (int) count);
+    }
+
+    /** @return number of rows of pageQuery without limit. -1 if the count cannot be calculated. */
+    private static long getCount(ContentResolver resolver, Uri uri, QueryParameter pageQuery) {
+        Cursor c = null;
+        try {
+            c = resolver.query(uri, new String[]{"count(*)"}, pageQuery.toAndroidWhere(), pageQuery.toAndroidParameters(), null);
+            if ((c != null) && c.moveToFirst()) return c.getLong(0);
+        } catch (Exception ex) {
+            Log.e(Global.LOG_CONTEXT, mDebugPrefix + "getCount(" + pageQuery + ") failed", ex);
+        } finally {
+            if (c != null) c.close();
+        }
+        return -1;
+    }
+
+    private KeysetPagedCursor(Context context, QueryParameter query, KeysetQuery keysetQuery, int count) {
+        super(getColumnNames(query.toColumns()));
+        mResolver = context.getContentResolver();
+        mUri = Uri.parse(query.toFrom());
+        mKeysetQuery = keysetQuery;
+        mCount = count;
+
+        mPages.put(0, loadPage(mKeysetQuery.createPageQuery(null, false), 0, false));
+        setNotificationUri(mResolver, mUri);
+        prefetch(1);
+    }
+
+    private static String[] getColumnNames(String[] columns) {
+        String[] result = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            result[i] = getColumnName(columns[i]);
+        }
+        return result;
+    }
+
+    /** "max(_id) AS _id" => "_id" */
+    private static String getColumnName(String column) {
+        int pos = column.toUpperCase().lastIndexOf(" AS ");
+        return ((pos >= 0) ? column.substring(pos + 4) : column).trim();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int pageNo = newPosition / PAGE_SIZE;
+        Object[][] rows;
+        synchronized (mPages) {
+            rows = mPages.get(pageNo);
+            if (rows == null) mMissingPages.add(pageNo);
+        }
+        if (rows == null) prefetch(pageNo);
+
+        int row = newPosition % PAGE_SIZE;
+        mCurrentRow = ((rows != null) && (row < rows.length)) ? rows[row] : null;
+
+        if ((oldPosition < 0) || (oldPosition / PAGE_SIZE != pageNo)) {
+            prefetch(pageNo + 1);
+            prefetch(pageNo - 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        super.registerDataSetObserver(observer);
+        mPageLoadedObservable.registerObserver(observer);
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        super.unregisterDataSetObserver(observer);
+        mPageLoadedObservable.unregisterObserver(observer);
+    }
+
+    /** loads page pageNo in background if it is not loaded yet */
+    private void prefetch(final int pageNo) {
+        if ((pageNo < 0) || (pageNo * PAGE_SIZE >= mCount) || isClosed()) return;
+
+        synchronized (mPages) {
+            if (mPages.containsKey(pageNo) || mLoading.containsKey(pageNo)) return;
+            mLoading.put(pageNo, sPrefetcher.submit(new Callable<Object[][]>() {
+                @Override
+                public Object[][] call() throws Exception {
+                    Object[][] result = null;
+                    try {
+                        result = loadPage(pageNo);
+                    } catch (Exception ex) {
+                        Log.e(Global.LOG_CONTEXT, mDebugPrefix + "loadPage(" + pageNo + ") failed", ex);
+                        onLoadFailed();
+                    }
+
+                    boolean wasMissing;
+                    synchronized (mPages) {
+                        mLoading.remove(pageNo);
+                        wasMissing = mMissingPages.remove(pageNo);
+                    }
+                    if (wasMissing && (result != null)) onPageLoaded();
+                    return result;
+                }
+            }));
+        }
+    }
+
+    /** loads page pageNo relative to a loaded neighbour page if possible and adds it to mPages */
+    private Object[][] loadPage(int pageNo) {
+        Object[][] previous;
+        Object[][] next;
+        synchronized (mPages) {
+            previous = mPages.get(pageNo - 1);
+            next = mPages.get(pageNo + 1);
+        }
+
+        Object[][] result;
+        if ((previous != null) && (previous.length == PAGE_SIZE)) {
+            result = loadPage(mKeysetQuery.createPageQuery(getKeys(previous[PAGE_SIZE - 1]), false), 0, false);
+        } else if ((next != null) && (next.length > 0)) {
+            result = loadPage(mKeysetQuery.createPageQuery(getKeys(next[0]), true), 0, true);
+        } else {
+            result = loadPage(mKeysetQuery.createPageQuery(null, false), pageNo * PAGE_SIZE, false);
+        }
+
+        synchronized (mPages) {
+            if (!isClosed()) mPages.put(pageNo, result);
+        }
+        return result;
+    }
+
+    /** lets the adapter redisplay the rows that were displayed with null values while loading */
+    private void onPageLoaded() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!isClosed()) mPageLoadedObservable.notifyChanged();
+            }
+        });
+    }
+
+    /** lets the owning loader reload the query. Only once so that a permanent error does not cause a reload loop. */
+    private void onLoadFailed() {
+        if (!mFailureNotified) {
+            mFailureNotified = true;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isClosed()) onChange(false);
+                }
+            });
+        }
+    }
+
+    private Object[] getKeys(Object[] row) {
+        return Arrays.copyOfRange(row, mColumnNames.length, row.length);
+    }
+
+    private Object[][] loadPage(QueryParameter query, int offset, boolean reverse) {
+        String sortOrder = query.toOrderBy() + " LIMIT " + PAGE_SIZE;
+        if (offset > 0) sortOrder += " OFFSET " + offset;
+
+        if (Global.debugEnabledSql) {
+            Log.i(Global.LOG_CONTEXT, mDebugPrefix + "loadPage " + query.toAndroidWhere() + " ORDER BY " + sortOrder);
+        }
+
+        Cursor c = null;
+        try {
+            c = mResolver.query(mUri, query.toColumns(), query.toAndroidWhere(), query.toAndroidParameters(), sortOrder);
+            int colCount = c.getColumnCount();
+            Object[][] result = new Object[c.getCount()][];
+            int rowNo = 0;
+            while (c.moveToNext()) {
+                Object[] row = new Object[colCount];
+                for (int col = 0; col < colCount; col++) {
+                    row[col] = DBUtils.getValue(c, col);
+                }
+                result[(reverse) ? (result.length - 1 - rowNo) : rowNo] = row;
+                rowNo++;
+            }
+            return result;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    @Override
+    protected Object getValue(int column) {
+        return (mCurrentRow == null) ? null : mCurrentRow[column];
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        synchronized (mPages) {
+            for (Future<Object[][]> loading : mLoading.values()) {
+                loading.cancel(false);
+            }
+            mLoading.clear();
+            mMissingPages.clear();
+            mPages.clear();
+        }
+        mPageLoadedObservable.unregisterAll();
+        mCurrentRow = null;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mPages) {
+            return mDebugPrefix + mCount + " rows, " + mPages.size() + " pages loaded";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.android.androFotoFinder.queries;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import de.k3b.android.util.DBUtils;
+
+/**
+ * Read only cursor over in memory values as returned by {@link DBUtils#getValue(Cursor, int)}.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public abstract class ObjectRowCursor extends AbstractCursor {
+    protected final String[] mColumnNames;
+
+    protected ObjectRowCursor(String[] columnNames) {
+        mColumnNames = columnNames;
+    }
+
+    /** @return value of column in current row. column is valid. */
+    protected abstract Object getValue(int column);
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    private Object get(int column) {
+        if ((column < 0) || (column >= mColumnNames.length)) {
+            throw new IndexOutOfBoundsException("column " + column + " of " + mColumnNames.length);
+        }
+        return getValue(column);
+    }
+
+    @Override
+    public String getString(int column) {
+        Object value = get(column);
+        return (value == null) ? null : value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        Object value = get(column);
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        Object value = get(column);
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        Object value = get(column);
+        return (value instanceof byte[]) ? (byte[]) value : null;
+    }
+
+    @Override
+    public int getType(int column) {
+        Object value = get(column);
+        if (value == null) return FIELD_TYPE_NULL;
+        if ((value instanceof Double) || (value instanceof Float)) return FIELD_TYPE_FLOAT;
+        if (value instanceof Number) return FIELD_TYPE_INTEGER;
+        if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return get(column) == null;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package de.k3b.android.androFotoFinder.queries;
+
+import de.k3b.database.QueryResultCache;
+
+/**
+ * Cursor over a cached {@link QueryResultCache.Result} without copying its rows.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class QueryResultCursor extends ObjectRowCursor {
+    private final QueryResultCache.Result mResult;
+
+    public QueryResultCursor(QueryResultCache.Result result) {
+        super(result.getColumnNames());
+        mResult = result;
+    }
+
+    @Override
+    public int getCount() {
+        return mResult.getRowCount();
+    }
+
+    @Override
+    protected Object getValue(int column) {
+        return mResult.getValue(getPosition(), column);
+    }
+}
@@ -31,6 +31,8 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.android.androFotoFinder.Global;
@@ -48,6 +50,7 @@ import de.k3b.media.MediaXmpSegment;
 import de.k3b.media.MetaWriterExifXml;
 import de.k3b.tagDB.Tag;
 import de.k3b.tagDB.TagConverter;
+import de.k3b.tagDB.TagHistogram;
 
 /**
  * Database related code to handle non standard image processing (Tags, Description)
@@ -354,6 +357,20 @@ public class TagSql extends FotoSql {
      */
     public static int updateDB(String dbgContext, Context context, String oldFullJpgFilePath,
                                MetaWriterExifXml jpg, MediaUtil.FieldID... allowSetNulls) {
+        ContentValues dbValues = getUpdateDBValues(oldFullJpgFilePath, jpg, allowSetNulls);
+        if (dbValues != null) {
+            return TagSql.execUpdate(dbgContext, context, oldFullJpgFilePath,
+                    TagSql.EXT_LAST_EXT_SCAN_UNKNOWN, dbValues, VISIBILITY.PRIVATE_PUBLIC);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the values that {@link #updateDB(String, Context, String, MetaWriterExifXml, MediaUtil.FieldID...)}
+     * writes to the media database item of oldFullJpgFilePath or null if there is nothing to update.
+     */
+    public static ContentValues getUpdateDBValues(String oldFullJpgFilePath,
+                                                  MetaWriterExifXml jpg, MediaUtil.FieldID... allowSetNulls) {
         if ((jpg != null) && (!MediaScanner.isNoMedia(oldFullJpgFilePath))) {
             ContentValues dbValues = new ContentValues();
             MediaContentValues mediaValueAdapter = new MediaContentValues();
@@ -378,13 +395,12 @@ public class TagSql extends FotoSql {
                 TagSql.setXmpFileModifyDate(dbValues, xmpFilelastModified);
                 TagSql.setFileModifyDate(dbValues, newFullJpgFilePath);
 
-                return TagSql.execUpdate(dbgContext, context, oldFullJpgFilePath,
-                        TagSql.EXT_LAST_EXT_SCAN_UNKNOWN, dbValues, VISIBILITY.PRIVATE_PUBLIC);
+                return dbValues;
             }
 
 
         }
-        return 0;
+        return null;
     }
 
 
@@ -395,8 +411,85 @@ public class TagSql extends FotoSql {
         return exexUpdateImpl(dbgContext, context, values, FILTER_EXPR_PATH_LIKE_XMP_DATE, new String[]{path, Long.toString(xmpFileDate)});
     }
 
+    /** cache for {@link #getTagHistogram(Context)}. null means must be (re)loaded */
+    private static volatile TagHistogram sTagHistogram = null;
+
+    /** incremented by every {@link #invalidateTagHistogram()} so that a histogram loaded before is not cached */
+    private static final AtomicLong sTagHistogramGeneration = new AtomicLong();
+
+    /** must be called whenever tags in the media db may have changed */
+    public static void invalidateTagHistogram() {
+        synchronized (sTagHistogramGeneration) {
+            sTagHistogramGeneration.incrementAndGet();
+            sTagHistogram = null;
+        }
+    }
+
+    /**
+     * @return how many photos reference each tag. Calculated by a single scan over the tags column
+     * of all photos and cached until the next {@link #invalidateTagHistogram()}.
+     */
+    public static TagHistogram getTagHistogram(Context context) {
+        TagHistogram result = sTagHistogram;
+        if (result == null) {
+            final long generation = sTagHistogramGeneration.get();
+            result = loadTagHistogram(context);
+            if (result == null) return new TagHistogram();
+
+            synchronized (sTagHistogramGeneration) {
+                if (generation == sTagHistogramGeneration.get()) sTagHistogram = result;
+            }
+        }
+        return result;
+    }
+
+    /** @return null if the query failed */
+    private static TagHistogram loadTagHistogram(Context context) {
+        TagHistogram result = new TagHistogram();
+        QueryParameter query = new QueryParameter()
+                .addColumn(SQL_COL_EXT_TAGS).addFrom(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME)
+                .addWhere(SQL_COL_EXT_TAGS + " is not null");
+        Cursor c = null;
+        long startTime = System.currentTimeMillis();
+        try {
+            c = createCursorForQuery(null, "loadTagHistogram", context, query, VISIBILITY.PRIVATE_PUBLIC);
+            while (c.moveToNext()) {
+                result.add(c.getString(0));
+            }
+        } catch (Exception ex) {
+            Log.e(Global.LOG_CONTEXT, "TagSql.loadTagHistogram(): error executing " + query, ex);
+            return null;
+        } finally {
+            if (c != null) c.close();
+        }
+        if (Global.debugEnabledSql) {
+            Log.i(Global.LOG_CONTEXT, "TagSql.loadTagHistogram(): " + result + " in "
+                    + (System.currentTimeMillis() - startTime) + " msecs");
+        }
+        return result;
+    }
+
+    /** return for every tag in tags how many photos reference it, using the cached {@link TagHistogram}. */
+    public static Map<Tag, Integer> getTagRefCounts(Context context, List<Tag> tags) {
+        return getTagHistogram(context).getCounts(tags);
+    }
+
     /** return how many photos exist that have one or more tags from list */
     public static int getTagRefCount(Context context, List<Tag> tags) {
+        if (tags == null) return 0;
+
+        // if at most one tag is used the histogram has the answer.
+        // Else sql is required because one photo may contain several of the tags.
+        int usedTagCount = 0;
+        int result = 0;
+        for (Integer count : getTagRefCounts(context, tags).values()) {
+            if (count > 0) {
+                usedTagCount++;
+                result = count;
+            }
+        }
+        if (usedTagCount <= 1) return result;
+
         QueryParameter query = new QueryParameter()
                 .addColumn("count(*)").addFrom(SQL_TABLE_EXTERNAL_CONTENT_URI_FILE_NAME);
         if (addWhereAnyOfTags(query, tags) > 0) {
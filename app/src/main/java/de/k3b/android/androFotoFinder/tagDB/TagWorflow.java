@@ -19,20 +19,34 @@
 package de.k3b.android.androFotoFinder.tagDB;
 
 import android.app.Activity;
+import android.content.ContentValues;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import de.k3b.android.androFotoFinder.Global;
 import de.k3b.android.util.AndroidFileCommands;
+import de.k3b.android.widget.HistoryEditText;
 import de.k3b.io.IProgessListener;
 import de.k3b.io.collections.SelectedFiles;
 import de.k3b.io.FileCommands;
+import de.k3b.io.VISIBILITY;
 import de.k3b.media.MediaUtil;
 import de.k3b.media.MediaXmpSegment;
 import de.k3b.media.MetaWriterExifXml;
@@ -52,6 +66,11 @@ public class TagWorflow extends TagProcessor implements IProgessListener {
     private List<TagSql.TagWorflowItem> items = null;
     private Activity context;
 
+    public TagWorflow() {
+        // tags are case insensitive: db-tag-filter uses "like" and Tag.equals() ignores case
+        super(true);
+    }
+
     /** Get current assigned tags from selectedItemPks
      * and/or any image that has one or more tag of anyOfTags.
      * @param context
@@ -80,6 +99,15 @@ public class TagWorflow extends TagProcessor implements IProgessListener {
     public int updateTags(List<String> addedTags, List<String> removedTags) {
         int itemCount = 0;
         if (items != null) {
+            if ((addedTags != null) && (addedTags.size() > 0)) {
+                HistoryEditText.addCompletions(context, HistoryEditText.COMPLETION_KEY_TAGS, addedTags);
+                HistoryEditText.saveCompletionIndexes(context);
+            }
+
+            if ((Global.tagUpdateThreadCount > 1) && (items.size() > Global.tagUpdateDbBatchSize)) {
+                return updateTagsParallel(addedTags, removedTags);
+            }
+
             int progressCountDown = 0;
             int total = items.size();
             for (TagSql.TagWorflowItem item : items) {
@@ -95,23 +123,131 @@ public class TagWorflow extends TagProcessor implements IProgessListener {
         return itemCount;
     }
 
+    /**
+     * Pipelined version of {@link #updateTags(List, List)}:
+     * jpg/xmp are loaded, diffed and saved by {@link Global#tagUpdateThreadCount} background threads
+     * (max {@link Global#tagUpdateMaxWritesPerDevice} writes per storage device at the same time)
+     * while the calling thread commits the results in batches of {@link Global#tagUpdateDbBatchSize}
+     * (one media db applyBatch and one transaction log write per batch) and reports progress.
+     */
+    protected int updateTagsParallel(final List<String> addedTags, final List<String> removedTags) {
+        final int total = items.size();
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+        final Map<String, Semaphore> deviceWriteLimits = new HashMap<String, Semaphore>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(Global.tagUpdateThreadCount, total));
+        CompletionService<TagUpdate> completionService = new ExecutorCompletionService<TagUpdate>(executor);
+
+        for (final TagSql.TagWorflowItem item : items) {
+            final Semaphore deviceWriteLimit = getDeviceWriteLimit(deviceWriteLimits, item.path);
+            completionService.submit(new Callable<TagUpdate>() {
+                @Override
+                public TagUpdate call() throws Exception {
+                    if (canceled.get()) return null;
+                    TagUpdate update = prepareUpdate(item, addedTags, removedTags);
+                    if ((update != null) && update.mustSave) {
+                        deviceWriteLimit.acquire();
+                        try {
+                            update.save();
+                        } finally {
+                            deviceWriteLimit.release();
+                        }
+                    }
+                    return update;
+                }
+            });
+        }
+        executor.shutdown();
+
+        int itemCount = 0;
+        int processed = 0;
+        boolean interrupted = false;
+        List<TagUpdate> batch = new ArrayList<TagUpdate>(Global.tagUpdateDbBatchSize);
+        while (processed < total) {
+            TagUpdate update = null;
+            try {
+                update = completionService.take().get();
+            } catch (ExecutionException e) {
+                Log.e(Global.LOG_CONTEXT, "TagWorflow.updateTagsParallel error : " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                // not started items are skipped. Items that are already written to jpg/xmp
+                // are still collected and committed to the media db.
+                interrupted = true;
+                canceled.set(true);
+                continue;
+            }
+            processed++;
+            if (update != null) batch.add(update);
+
+            if ((batch.size() >= Global.tagUpdateDbBatchSize) || (processed == total)) {
+                itemCount += commit(batch, addedTags, removedTags);
+                String lastPath = (batch.size() > 0) ? batch.get(batch.size() - 1).item.path : null;
+                batch.clear();
+                if (!canceled.get() && !onProgress(itemCount, total, lastPath)) {
+                    // items already in progress are finished and committed. not started items are skipped.
+                    canceled.set(true);
+                }
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+        return itemCount;
+    }
+
+    /** One photo whose tags are updated: result of load and diff. */
+    protected static class TagUpdate {
+        final TagSql.TagWorflowItem item;
+        final MetaWriterExifXml exif;
+        final List<String> tags;
+        final boolean mustSave;
+        final String dbgSaveReason;
+        boolean saved = false;
+
+        TagUpdate(TagSql.TagWorflowItem item, MetaWriterExifXml exif, List<String> tags, boolean mustSave, String dbgSaveReason) {
+            this.item = item;
+            this.exif = exif;
+            this.tags = tags;
+            this.mustSave = mustSave;
+            this.dbgSaveReason = dbgSaveReason;
+        }
+
+        /** write jpg and/or xmp */
+        void save() throws IOException {
+            exif.setTags(tags);
+            exif.save(dbgSaveReason);
+            saved = true;
+        }
+    }
+
     /** update one file if tags change or xmp does not exist yet: xmp-sidecar-file, media-db and batch */
     protected int updateTags(TagSql.TagWorflowItem tagWorflowItemFromDB, List<String> addedTags, List<String> removedTags) {
-        int result = 0;
+        TagUpdate update = prepareUpdate(tagWorflowItemFromDB, addedTags, removedTags);
+        if (update == null) return 0;
+        try {
+            if (update.mustSave) update.save();
+        } catch (IOException e) {
+            Log.e(Global.LOG_CONTEXT,update.dbgSaveReason + " error : " + e.getMessage(),e);
+            return 0;
+        }
+        return commit(update, addedTags, removedTags);
+    }
+
+    /** load jpg/xmp of one photo and calculate the new tags. Thread save. Returns null on error. */
+    protected TagUpdate prepareUpdate(TagSql.TagWorflowItem tagWorflowItemFromDB, List<String> addedTags, List<String> removedTags) {
         boolean mustSave = tagWorflowItemFromDB.xmpMoreRecentThanSql;
         String dbgSaveReason = (mustSave) ? "xmpMoreRecentThanSql." : "";
 
         List<String> currentItemTags = tagWorflowItemFromDB.tags;
         try {
             MetaWriterExifXml exif = MetaWriterExifXml.create (tagWorflowItemFromDB.path, null, false, "updateTags:");
-            List<String> tagsDbPlusFile = this.getUpdated(currentItemTags, exif.getTags(), null);
+            List<String> tagsDbPlusFile = getUpdated(currentItemTags, exif.getTags(), null, true);
             if (tagsDbPlusFile != null) {
                 mustSave = true;
                 dbgSaveReason += "jpg/xmp has more tags than sql.";
                 currentItemTags = tagsDbPlusFile;
             }
 
-            List<String> modifiedTags = this.getUpdated(currentItemTags, addedTags, removedTags);
+            List<String> modifiedTags = getUpdated(currentItemTags, addedTags, removedTags, true);
             if (modifiedTags != null) {
                 // tags have changed.
                 currentItemTags = modifiedTags;
@@ -120,43 +256,103 @@ public class TagWorflow extends TagProcessor implements IProgessListener {
             }
 
             dbgSaveReason = "TagWorflow.updateTags(" + tagWorflowItemFromDB.path + "): " + dbgSaveReason;
+            return new TagUpdate(tagWorflowItemFromDB, exif, currentItemTags, mustSave, dbgSaveReason);
+        } catch (IOException e) {
+            Log.e(Global.LOG_CONTEXT,dbgSaveReason + " error : " + e.getMessage(),e);
+        }
+        return null;
+    }
+
+    /**
+     * same as {@link #commit(TagUpdate, List, List)} for every item of batch but
+     * the media-db is updated with one batch update and the transaction log is written once.
+     */
+    private int commit(List<TagUpdate> batch, List<String> addedTags, List<String> removedTags) {
+        if (batch.isEmpty()) return 0;
 
-            if (mustSave) {
-                exif.setTags(currentItemTags);
-                exif.save(dbgSaveReason);
-                TagSql.updateDB(dbgSaveReason, this.context, tagWorflowItemFromDB.path, exif, MediaUtil.FieldID.tags);
+        int result = 0;
+        List<String> paths = new ArrayList<String>(batch.size());
+        List<ContentValues> dbValues = new ArrayList<ContentValues>(batch.size());
+        for (TagUpdate update : batch) {
+            if (update.saved) {
+                ContentValues values = TagSql.getUpdateDBValues(update.item.path, update.exif, MediaUtil.FieldID.tags);
+                if (values != null) {
+                    paths.add(update.item.path);
+                    dbValues.add(values);
+                }
 
                 // update tag repository
-                TagRepository.getInstance().includeTagNamesIfNotFound(currentItemTags);
-                result = 1;
+                TagRepository.getInstance().includeTagNamesIfNotFound(update.tags);
+                result++;
             }
+        }
+        TagSql.execUpdate("TagWorflow.commit(batch)", this.context, paths, dbValues, VISIBILITY.PRIVATE_PUBLIC);
 
-            // update batch
-            long now = new Date().getTime();
-            String tagsString = TagConverter.asBatString(removedTags);
-            AndroidFileCommands cmd = AndroidFileCommands.createFileCommand(context, false);
-            if (tagsString != null) {
-                cmd.addTransactionLog(tagWorflowItemFromDB.id, tagWorflowItemFromDB.path, now,
-                        MediaTransactionLogEntryType.TAGSREMOVE, tagsString);
-            }
+        // update batch
+        AndroidFileCommands cmd = AndroidFileCommands.createFileCommand(context, false);
+        for (TagUpdate update : batch) {
+            addTransactionLog(cmd, update, addedTags, removedTags);
+        }
+        cmd.closeLogFile();
+        return result;
+    }
 
-            tagsString = TagConverter.asBatString(addedTags);
-            if (tagsString != null) {
-                cmd.addTransactionLog(tagWorflowItemFromDB.id, tagWorflowItemFromDB.path, now,
-                        MediaTransactionLogEntryType.TAGSADD, tagsString);
-            }
+    /** after jpg/xmp was saved: update media-db, tag repository and batch. Not thread save. */
+    private int commit(TagUpdate update, List<String> addedTags, List<String> removedTags) {
+        int result = 0;
+        if (update.saved) {
+            TagSql.updateDB(update.dbgSaveReason, this.context, update.item.path, update.exif, MediaUtil.FieldID.tags);
+
+            // update tag repository
+            TagRepository.getInstance().includeTagNamesIfNotFound(update.tags);
+            result = 1;
+        }
+
+        // update batch
+        AndroidFileCommands cmd = AndroidFileCommands.createFileCommand(context, false);
+        addTransactionLog(cmd, update, addedTags, removedTags);
+        cmd.closeLogFile();
+        return result;
+    }
+
+    private void addTransactionLog(AndroidFileCommands cmd, TagUpdate update, List<String> addedTags, List<String> removedTags) {
+        TagSql.TagWorflowItem tagWorflowItemFromDB = update.item;
+        long now = new Date().getTime();
+        String tagsString = TagConverter.asBatString(removedTags);
+        if (tagsString != null) {
+            cmd.addTransactionLog(tagWorflowItemFromDB.id, tagWorflowItemFromDB.path, now,
+                    MediaTransactionLogEntryType.TAGSREMOVE, tagsString);
+        }
 
+        tagsString = TagConverter.asBatString(addedTags);
+        if (tagsString != null) {
             cmd.addTransactionLog(tagWorflowItemFromDB.id, tagWorflowItemFromDB.path, now,
-                    MediaTransactionLogEntryType.TAGS, TagConverter.asBatString(exif.getTags()));
+                    MediaTransactionLogEntryType.TAGSADD, tagsString);
+        }
 
-            cmd.closeLogFile();
+        cmd.addTransactionLog(tagWorflowItemFromDB.id, tagWorflowItemFromDB.path, now,
+                MediaTransactionLogEntryType.TAGS, TagConverter.asBatString(update.exif.getTags()));
+    }
 
-        } catch (IOException e) {
-            Log.e(Global.LOG_CONTEXT,dbgSaveReason + " error : " + e.getMessage(),e);
+    /** all files on the same storage device (i.e. "/storage/sdcard1") share the same write limit */
+    private static Semaphore getDeviceWriteLimit(Map<String, Semaphore> deviceWriteLimits, String path) {
+        String device = getDeviceKey(path);
+        Semaphore result = deviceWriteLimits.get(device);
+        if (result == null) {
+            result = new Semaphore(Math.max(1, Global.tagUpdateMaxWritesPerDevice));
+            deviceWriteLimits.put(device, result);
         }
         return result;
     }
 
+    /** "/storage/sdcard1/DCIM/a.jpg" => "/storage/sdcard1" */
+    static String getDeviceKey(String path) {
+        if (path == null) return "";
+        int first = path.indexOf('/', 1);
+        int second = (first < 0) ? -1 : path.indexOf('/', first + 1);
+        return (second < 0) ? path : path.substring(0, second);
+    }
+
     /** periodically called while work in progress. can be overwritten to supply feedback to user */
     public boolean onProgress(int itemCount, int total, String message) {
         return true;
@@ -48,6 +48,7 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.k3b.android.androFotoFinder.FotoGalleryActivity;
@@ -514,6 +515,12 @@ public class TagsPickerFragment  extends DialogFragment  {
         return filter;
     }
 
+    /** @return number of photos that contain tag. Answered from the cached tag histogram. */
+    private int getTagRefCount(Tag tag) {
+        Integer result = TagSql.getTagRefCounts(getActivity(), Arrays.asList(tag)).get(tag);
+        return (result != null) ? result : 0;
+    }
+
     public boolean showTagDeleteDialog(final Tag item) {
         AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
         builder.setTitle(R.string.delete_menu_title);
@@ -528,7 +535,7 @@ public class TagsPickerFragment  extends DialogFragment  {
 
         List<Tag> rootList = new ArrayList<Tag>();
         rootList.add(item);
-        final int rootTagReferenceCount = TagSql.getTagRefCount(getActivity(), rootList);
+        final int rootTagReferenceCount = getTagRefCount(item);
 
         List<Tag> children = item.getChildren(loadTagRepositoryItems(false), true, false);
 
@@ -636,9 +643,7 @@ public class TagsPickerFragment  extends DialogFragment  {
                 View result = parent.getLayoutInflater().inflate(R.layout.dialog_tag_rename, null);
                 chkUpdatePhotos = (CheckBox) result.findViewById(R.id.chkUpdatePhotos);
 
-                List<Tag> rootList = new ArrayList<Tag>();
-                rootList.add(tag);
-                final int rootTagReferenceCount = TagSql.getTagRefCount(getActivity(), rootList);
+                final int rootTagReferenceCount = getTagRefCount(tag);
 
                 chkUpdatePhotos.setText(getString(R.string.tags_update_photos) + " (" +
                         rootTagReferenceCount + ")");
@@ -26,6 +26,9 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.support.v4.util.LruCache;
+
+import de.k3b.android.util.BitmapPool;
 
 /**
  * Creates Icon with text.
@@ -33,21 +36,41 @@ import android.graphics.drawable.Drawable;
  * Created by k3b on 16.07.2015.
  */
 public class IconFactory {
+    /** max number of different icons that are kept in memory */
+    private static final int MAX_ICON_COUNT = 128;
+
+    /** background without resource id: icons are not cached */
+    public static final int NO_BACKGROUND_ID = 0;
+
+    /** rendered icons shared by all markers and all IconFactory instances. key=background resource id+text */
+    private static final LruCache<String, BitmapDrawable> sIconCache = new LruCache<String, BitmapDrawable>(MAX_ICON_COUNT);
+
     private final Resources resources;
     /** cluster icon anchor */
     /** anchor point to draw the number of markers inside the cluster icon */
     private float mTextAnchorU = ClickableIconOverlay.ANCHOR_CENTER, mTextAnchorV = ClickableIconOverlay.ANCHOR_CENTER;
 
     private final Bitmap mBackground;
+    private final int mBackgroundId;
     private Paint mTextPaint;
 
     /** must be called from the gui-Thread */
     public IconFactory(Resources resources, Drawable background) {
-        this(resources, ((BitmapDrawable) background).getBitmap());
+        this(resources, background, NO_BACKGROUND_ID);
+    }
+
+    /** must be called from the gui-Thread. backgroundId: resource id of background for the shared icon cache */
+    public IconFactory(Resources resources, Drawable background, int backgroundId) {
+        this(resources, ((BitmapDrawable) background).getBitmap(), backgroundId);
     }
 
     /** must be called from the gui-Thread */
     public IconFactory(Resources resources, Bitmap background) {
+        this(resources, background, NO_BACKGROUND_ID);
+    }
+
+    /** must be called from the gui-Thread. backgroundId: resource id of background for the shared icon cache */
+    public IconFactory(Resources resources, Bitmap background, int backgroundId) {
         this.resources = resources;
         mTextPaint = new Paint();
         mTextPaint.setColor(Color.WHITE);
@@ -57,11 +80,47 @@ public class IconFactory {
         mTextPaint.setAntiAlias(true);
 
         mBackground = background;
+        mBackgroundId = backgroundId;
+    }
+
+    /** @return cached icon with text. Every distinct text is rendered only once per background id. */
+    public BitmapDrawable getIcon(String text) {
+        if (mBackgroundId == NO_BACKGROUND_ID) return createIcon(text);
+
+        String key = mBackgroundId + ":" + text;
+        BitmapDrawable result = sIconCache.get(key);
+        if (result == null) {
+            result = createIcon(text);
+            sIconCache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Groups big cluster counts so that only few different icons are needed:
+     * 1..99, 100+..900+, 1k+..9k+, 10k+.
+     */
+    public static String getCountLabel(String countText) {
+        if (countText == null) return null;
+        int count;
+        try {
+            count = Integer.parseInt(countText.trim());
+        } catch (NumberFormatException ignore) {
+            return countText;
+        }
+        if (count < 100) return countText;
+        if (count < 1000) return (count / 100) + "00+";
+        if (count < 10000) return (count / 1000) + "k+";
+        return "10k+";
+    }
+
+    public static String getStatistics() {
+        return "icons " + sIconCache.size() + ", hit " + sIconCache.hitCount() + ", miss " + sIconCache.missCount();
     }
 
     // inspired by org.osmdroid.bonuspack.clustering.MarkerClusterer.
     public BitmapDrawable createIcon(String text) {
-        Bitmap finalIcon = Bitmap.createBitmap(mBackground.getWidth(), mBackground.getHeight(), mBackground.getConfig());
+        Bitmap finalIcon = BitmapPool.getInstance().create(mBackground.getWidth(), mBackground.getHeight(), mBackground.getConfig());
         Canvas iconCanvas = new Canvas(finalIcon);
         iconCanvas.drawBitmap(mBackground, 0, 0, null);
         if ((text != null) && (text.length() > 0)) {
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.android.util;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmaps that are not displayed any more and can be reused for the next decode via
+ * {@link BitmapFactory.Options#inBitmap} or as canvas to draw on.
+ * This avoids gc pauses while scrolling fast.
+ *
+ * Since KitKat any bitmap that is big enough can be reused so the bitmaps are
+ * bucketed by power-of-two byte size. Before KitKat width, height and config must match exactly.
+ *
+ * Shared by gallery thumbnails, image detail view and map marker icons.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class BitmapPool {
+    private static final boolean ANY_SIZE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    private static final BitmapPool sInstance = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+
+    private final long mMaxBytes;
+    private long mBytes = 0;
+
+    /** bucket key => unused bitmaps */
+    private final Map<String, List<Bitmap>> mBuckets = new HashMap<String, List<Bitmap>>();
+    /** all bitmaps in pool, oldest first */
+    private final LinkedList<Bitmap> mAge = new LinkedList<Bitmap>();
+
+    // statistics for tuning
+    private int mRequestCount = 0;
+    private int mHitCount = 0;
+    private int mPutCount = 0;
+    private int mEvictCount = 0;
+    private int mReuseFailedCount = 0;
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static BitmapPool getInstance() {
+        return sInstance;
+    }
+
+    /** make bitmap available for reuse. Caller must not use bitmap any more. Ignored if not mutable. */
+    public synchronized void put(Bitmap bitmap) {
+        if ((bitmap == null) || bitmap.isRecycled() || !bitmap.isMutable()) return;
+        int bytes = getByteCount(bitmap);
+        if (bytes > mMaxBytes) return;
+
+        List<Bitmap> bucket = mBuckets.get(getKey(bitmap));
+        if (bucket == null) {
+            bucket = new ArrayList<Bitmap>();
+            mBuckets.put(getKey(bitmap), bucket);
+        } else if (bucket.contains(bitmap)) {
+            return;
+        }
+        bucket.add(bitmap);
+        mAge.add(bitmap);
+        mBytes += bytes;
+        mPutCount++;
+
+        while (mBytes > mMaxBytes) {
+            Bitmap oldest = mAge.removeFirst();
+            remove(oldest);
+            mEvictCount++;
+        }
+    }
+
+    /** @return an unused mutable bitmap with exact width, height and config or null if there is none */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap result = take(getExactKey(width, height, config));
+        if (result != null) {
+            mAge.remove(result);
+            // bucket only guarantees that the bitmap is big enough
+            if (ANY_SIZE) result.reconfigure(width, height, config);
+        }
+        return result;
+    }
+
+    /** @return an unused mutable bitmap with exact width, height and config. Allocates a new one if there is none. */
+    public Bitmap create(int width, int height, Bitmap.Config config) {
+        Bitmap result = get(width, height, config);
+        if (result == null) return Bitmap.createBitmap(width, height, config);
+        result.eraseColor(0);
+        return result;
+    }
+
+    /**
+     * Prepares options to decode into a pooled bitmap if there is a compatible one.
+     * options.outWidth/outHeight must contain the size of the image as set by inJustDecodeBounds.
+     */
+    public void addInBitmapOptions(BitmapFactory.Options options) {
+        options.inMutable = true;
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (!ANY_SIZE && (sampleSize != 1)) {
+            // not supported before KitKat
+            synchronized (this) {
+                mRequestCount++;
+            }
+            return;
+        }
+
+        Bitmap.Config config = (options.inPreferredConfig != null) ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        if ((width <= 0) || (height <= 0)) return;
+
+        synchronized (this) {
+            Bitmap candidate = take(getExactKey(width, height, config));
+            if (candidate != null) {
+                mAge.remove(candidate);
+                options.inBitmap = candidate;
+            }
+        }
+    }
+
+    /** to be called if decoding into options.inBitmap failed */
+    public synchronized void onReuseFailed(BitmapFactory.Options options) {
+        mReuseFailedCount++;
+        options.inBitmap = null;
+    }
+
+    private Bitmap take(String key) {
+        mRequestCount++;
+        List<Bitmap> bucket = mBuckets.get(key);
+        if ((bucket == null) || bucket.isEmpty()) return null;
+        Bitmap result = bucket.remove(bucket.size() - 1);
+        mBytes -= getByteCount(result);
+        mHitCount++;
+        return result;
+    }
+
+    private void remove(Bitmap bitmap) {
+        List<Bitmap> bucket = mBuckets.get(getKey(bitmap));
+        if ((bucket != null) && bucket.remove(bitmap)) {
+            mBytes -= getByteCount(bitmap);
+        }
+    }
+
+    public synchronized void clear() {
+        mBuckets.clear();
+        mAge.clear();
+        mBytes = 0;
+    }
+
+    /** percentage of requests that could reuse a bitmap */
+    public synchronized int getHitRate() {
+        return (mRequestCount == 0) ? 0 : (mHitCount * 100 / mRequestCount);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool(" + mAge.size() + " bitmaps, " + (mBytes / 1024) + "k of " + (mMaxBytes / 1024)
+                + "k, hit " + mHitCount + "/" + mRequestCount + "=" + getHitRate()
+                + "%, put " + mPutCount + ", evicted " + mEvictCount + ", reuse failed " + mReuseFailedCount + ")";
+    }
+
+    private static String getKey(Bitmap bitmap) {
+        if (ANY_SIZE) {
+            // floor: every bitmap in bucket is at least as big as the bucket key
+            return "b" + Integer.highestOneBit(getByteCount(bitmap));
+        }
+        return getExactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+    }
+
+    private static String getExactKey(int width, int height, Bitmap.Config config) {
+        if (ANY_SIZE) return "b" + nextPowerOf2(width * height * getBytesPerPixel(config));
+        return width + "x" + height + ":" + config;
+    }
+
+    private static int nextPowerOf2(int value) {
+        int result = Integer.highestOneBit(value);
+        return (result == value) ? result : (result << 1);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int getByteCount(Bitmap bitmap) {
+        if (ANY_SIZE) return bitmap.getAllocationByteCount();
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ARGB_8888) return 4;
+        if ((config == Bitmap.Config.RGB_565) || (config == Bitmap.Config.ARGB_4444)) return 2;
+        return 1;
+    }
+}
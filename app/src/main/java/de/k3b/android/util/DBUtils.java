@@ -55,4 +55,20 @@ public class DBUtils {
         int columnIndex = (cursor == null) ? -1 : cursor.getColumnIndex(colId);
         return (columnIndex == -1)  ? notFoundValue : cursor.getLong(columnIndex);
     }
+
+    /** @return value of current row as Long, Double, String, byte[] or null */
+    public static Object getValue(Cursor cursor, int columnIndex) {
+        switch (cursor.getType(columnIndex)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(columnIndex);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(columnIndex);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(columnIndex);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(columnIndex);
+            default:
+                return null;
+        }
+    }
 }
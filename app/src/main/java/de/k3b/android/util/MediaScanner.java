@@ -50,8 +50,10 @@ import de.k3b.database.QueryParameter;
 import de.k3b.geo.api.GeoPointDto;
 import de.k3b.geo.api.IGeoPointInfo;
 import de.k3b.io.FileUtils;
+import de.k3b.io.Metrics;
 import de.k3b.io.VISIBILITY;
 import de.k3b.media.IMetaApi;
+import de.k3b.media.ImageInfoCache;
 import de.k3b.media.MediaUtil;
 import de.k3b.media.MediaXmpSegment;
 import de.k3b.media.MetaApiChainReader;
@@ -330,6 +332,7 @@ abstract public class MediaScanner  {
 
     /** updates values with current values of file. */
     protected MediaContentValues getExifFromFile(ContentValues values, File jpgFile) {
+        long start = Metrics.start();
         String absoluteJpgPath = FileUtils.tryGetCanonicalPath(jpgFile, jpgFile.getAbsolutePath());
 
         BitmapFactory.Options options = new BitmapFactory.Options();
@@ -355,6 +358,9 @@ abstract public class MediaScanner  {
 
         IMetaApi exif = loadNonMediaValues(values, absoluteJpgPath, xmpContent);
 
+        Integer rotation = values.getAsInteger(DB_ORIENTATION);
+        ImageInfoCache.getInstance().put(absoluteJpgPath, (rotation != null) ? rotation.intValue() : 0, mWidth, mHeight);
+
         IMetaApi src = null;
         if (exif == null) {
             src = xmpContent;
@@ -375,6 +381,7 @@ abstract public class MediaScanner  {
 
         setPathRelatedFieldsIfNeccessary(values, absoluteJpgPath, null);
 
+        Metrics.getInstance().timer(Metrics.SCAN).stop(start, 1);
         return dest;
     }
 
@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.k3b.android.androFotoFinder.R;
+import de.k3b.android.androFotoFinder.ThumbNailUtils;
 import de.k3b.io.FileUtils;
 import de.k3b.media.MediaUtil;
 
@@ -143,6 +144,10 @@ public class RecursiveMediaScannerAsyncTask extends MediaScannerAsyncTask {
         final Integer resultCount = super.doInBackground(null, fileNames);
         if (resultCount != null) {
             this.mCount += resultCount.intValue();
+            if (resultCount.intValue() > 0) {
+                // new or changed photos: create thumbnails before they are shown in gallery
+                ThumbNailUtils.prewarm(fileNames);
+            }
         }
         return resultCount;
     }
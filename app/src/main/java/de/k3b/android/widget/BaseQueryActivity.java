@@ -26,6 +26,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.database.ContentObserver;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -61,6 +62,8 @@ import de.k3b.database.QueryParameter;
 import de.k3b.io.AlbumFile;
 import de.k3b.io.Directory;
 import de.k3b.io.DirectoryFormatter;
+import de.k3b.io.DirectoryUpdater;
+import de.k3b.io.FileCommands;
 import de.k3b.io.GalleryFilterParameter;
 import de.k3b.io.IDirectory;
 import de.k3b.io.IGalleryFilter;
@@ -516,7 +519,7 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
         return mFolderApi;
     }
 
-    protected class FolderApi {
+    protected class FolderApi implements FileCommands.IFileChangeListener, DirectoryUpdater.IDirectoryChangeListener {
         // either folder picker or date picker
         private static final int QUERY_TYPE_GROUP_ALBUM = FotoSql.QUERY_TYPE_GROUP_ALBUM;
         // either folder picker or date picker
@@ -530,6 +533,15 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
          */
         private boolean mMustShowNavigator = false;
 
+        /** where of the query that loaded mDirectoryRoot. Only matching items are counted in the tree. */
+        private QueryParameter mDirectoryRootFilter = null;
+
+        /** {@link FotoSql#getOwnModificationCount()} when the last media db change notification was handled */
+        private long mNotifiedOwnModificationCount = FotoSql.getOwnModificationCount();
+
+        /** file commands whose media db update has not been notified yet. Consumed by {@link #onMediaChanged(String)} */
+        private final List<PendingFileChange> mPendingFileChanges = new ArrayList<PendingFileChange>();
+
         /**
          * set while dir picker is active
          */
@@ -576,6 +588,8 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
                     };
 
                     if (!loadDate) {
+                        mDirectoryRootFilter = new QueryParameter().getWhereFrom(mergedBaseQuery, false);
+
                         // limit valbums to matching parent-path query
                         QueryParameter vAlbumQueryWithPathExpr = FotoSql.copyPathExpressions(FotoSql.queryVAlbum, mergedBaseQuery);
                         if (vAlbumQueryWithPathExpr == null)
@@ -671,6 +685,125 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
             mDateRoot = invalidateDirectories(why, mDateRoot);
         }
 
+        /** media db has changed: mDirectoryRoot is only kept if the change was made by this app
+         * for file commands that can be applied incrementally. Foreign changes always reload it. */
+        private void onMediaChanged(String why) {
+            List<PendingFileChange> pendingFileChanges = null;
+            synchronized (this) {
+                long ownModificationCount = FotoSql.getOwnModificationCount();
+                if ((ownModificationCount != mNotifiedOwnModificationCount) && !mPendingFileChanges.isEmpty()) {
+                    pendingFileChanges = new ArrayList<PendingFileChange>(mPendingFileChanges);
+                }
+                mPendingFileChanges.clear();
+                mNotifiedOwnModificationCount = ownModificationCount;
+            }
+
+            if (pendingFileChanges == null) {
+                invalidateDirectories(why);
+                return;
+            }
+
+            mDateRoot = invalidateDirectories(why, mDateRoot);
+            final IDirectory directoryRoot = mDirectoryRoot;
+            if (directoryRoot == null) return;
+
+            final DirectoryUpdateTask task = new DirectoryUpdateTask(directoryRoot, mDirectoryRootFilter, why);
+            final PendingFileChange[] changes = pendingFileChanges.toArray(new PendingFileChange[pendingFileChanges.size()]);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    task.execute(changes);
+                }
+            });
+        }
+
+        /** FileCommands.IFileChangeListener: remember the change so that the cached folder tree
+         * can be updated instead of reloaded after the media db has been updated. */
+        @Override
+        public void onFilesChanged(final int opCode, String[] oldPathNames, String[] newPathNames) {
+            if (mDirectoryRoot == null) return;
+
+            synchronized (this) {
+                mPendingFileChanges.add(new PendingFileChange(opCode, oldPathNames, newPathNames));
+            }
+        }
+
+        /** a file command that may be applied to mDirectoryRoot */
+        private class PendingFileChange {
+            final int opCode;
+            final String[] oldPathNames;
+            final String[] newPathNames;
+
+            PendingFileChange(int opCode, String[] oldPathNames, String[] newPathNames) {
+                this.opCode = opCode;
+                this.oldPathNames = oldPathNames;
+                this.newPathNames = newPathNames;
+            }
+        }
+
+        /**
+         * Checks in background that the media db items of all changed files match the filter of the folder tree
+         * and applies the changes to the tree. Else the tree is reloaded by the {@link DirectoryLoaderTask}.
+         */
+        private class DirectoryUpdateTask extends AsyncTask<PendingFileChange, Void, PendingFileChange[]> {
+            private final IDirectory mRoot;
+            private final QueryParameter mFilter;
+            private final String mWhy;
+
+            DirectoryUpdateTask(IDirectory root, QueryParameter filter, String why) {
+                mRoot = root;
+                mFilter = filter;
+                mWhy = why;
+            }
+
+            /** @return changes or null if the tree must be reloaded */
+            @Override
+            protected PendingFileChange[] doInBackground(PendingFileChange... changes) {
+                try {
+                    for (PendingFileChange change : changes) {
+                        // deleted items are not in the media db any more so they cannot be checked against the filter
+                        if ((change.opCode == FileCommands.OP_DELETE) || (change.newPathNames == null)) return null;
+
+                        List<String> matching = FotoSql.execGetMatchingFileNames(
+                                BaseQueryActivity.this, mFilter, change.newPathNames);
+                        if (matching.size() != change.newPathNames.length) return null;
+                    }
+                } catch (Exception ex) {
+                    Log.e(Global.LOG_CONTEXT, mDebugPrefix + "DirectoryUpdateTask failed", ex);
+                    return null;
+                }
+                return changes;
+            }
+
+            @Override
+            protected void onPostExecute(PendingFileChange[] changes) {
+                if (mRoot != mDirectoryRoot) return; // reloaded meanwhile
+
+                if (changes == null) {
+                    mDirectoryRoot = invalidateDirectories(mWhy, mDirectoryRoot);
+                    return;
+                }
+
+                int count = 0;
+                DirectoryUpdater updater = new DirectoryUpdater(mRoot).setListener(FolderApi.this);
+                for (PendingFileChange change : changes) {
+                    count += updater.onFilesChanged(change.opCode, change.oldPathNames, change.newPathNames);
+                }
+                if (Global.debugEnabled) {
+                    Log.i(Global.LOG_CONTEXT, mDebugPrefix + "DirectoryUpdateTask updated " + count
+                            + " items in folder tree because of " + mWhy);
+                }
+            }
+        }
+
+        /** DirectoryUpdater.IDirectoryChangeListener: update gui of open folder picker */
+        @Override
+        public void onDirectoryChanged(IDirectory directory) {
+            if ((mDirPicker != null) && (mDirPicker.getRoot() == mDirectoryRoot)) {
+                mDirPicker.onDirectoryChanged(directory);
+            }
+        }
+
         private IDirectory invalidateDirectories(String why, IDirectory directoryRoot) {
             if (directoryRoot != null) {
                 if (Global.debugEnabled) {
@@ -748,6 +881,7 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
         super.onCreate(savedInstanceState);
         this.getContentResolver().registerContentObserver(FotoSql.SQL_TABLE_EXTERNAL_CONTENT_URI, true, mMediaObserverDirectory);
         this.getContentResolver().registerContentObserver(FotoSql.SQL_TABLE_EXTERNAL_CONTENT_URI_FILE, true, mMediaObserverDirectory);
+        FileCommands.addFileChangeListener(getFolderApi());
     }
 
     protected void onCreateData(Bundle savedInstanceState) {
@@ -774,7 +908,8 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
     private final ContentObserver mMediaObserverDirectory = new ContentObserver(null) {
         @Override
         public void onChange(boolean selfChange) {
-            invalidateDirectories(mDebugPrefix + "#onChange from mMediaObserverDirectory");
+            FotoSql.invalidateQueryResultCache();
+            getFolderApi().onMediaChanged(mDebugPrefix + "#onChange from mMediaObserverDirectory");
         }
     };
 
@@ -904,6 +1039,7 @@ public abstract class BaseQueryActivity  extends ActivityWithAutoCloseDialogs im
     protected void onDestroy() {
         super.onDestroy();
         this.getContentResolver().unregisterContentObserver(mMediaObserverDirectory);
+        FileCommands.removeFileChangeListener(getFolderApi());
         this.mGalleryQueryParameter.mGalleryContentBaseQuery = null;
         invalidateDirectories(mDebugPrefix + "#onDestroy");
     }
@@ -24,6 +24,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Build;
 import android.preference.PreferenceManager;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -31,10 +32,20 @@ import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.PopupMenu;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import de.k3b.android.androFotoFinder.Global;
+import de.k3b.io.CompletionIndex;
 import de.k3b.io.ListUtils;
 
 /**
@@ -42,6 +53,9 @@ import de.k3b.io.ListUtils;
  * The ImageButton opens a popupmenu with previous values.
  * Long-Press if no selection => popup with previous values.
  * Use HistoryEditText.saveHistory() to persist the previous values in shared preferences.
+ * If the EditText already contains text the popup shows the best matching values
+ * for the token at the cursor from the {@link CompletionIndex} of the editor first.
+ * Every history key has its own index unless editors share one via {@link #setCompletion(String, String, EditText...)}.
  *
  * Popup-menu requires at least api 11 (HONEYCOMB)
  * Created by k3b on 26.08.2015.
@@ -49,6 +63,20 @@ import de.k3b.io.ListUtils;
 @TargetApi(Build.VERSION_CODES.HONEYCOMB)
 public class HistoryEditText {
     private static final int NO_ID = -1;
+    private static final int MAX_POPUP_ITEMS = 10;
+    private static final String COMPLETION_INDEX_DIR_NAME = "completion";
+
+    /** completion index shared by all tag editors and {@link de.k3b.android.androFotoFinder.tagDB.TagWorflow} */
+    public static final String COMPLETION_KEY_TAGS = "tags";
+    /** same delimiters as {@link de.k3b.tagDB.TagConverter#fromString(Object)} */
+    public static final String TAG_DELIMITERS = ",;:";
+
+    /** completionKey => index. Lazy loaded by {@link #getCompletionIndex(Context, String)} */
+    private static final Map<String, CompletionIndex> sCompletionIndexes = new HashMap<String, CompletionIndex>();
+    /** completionKeys of indexes that must be saved */
+    private static final Set<String> sModifiedCompletionKeys = new HashSet<String>();
+    private static final Executor sSaveExecutor = Executors.newSingleThreadExecutor();
+
     private final Context mContext;
     private final String mDelimiter;
     private final int mMaxHisotrySize;
@@ -60,8 +88,16 @@ public class HistoryEditText {
         private final ImageButton mCmd;
         private final String mId;
 
+        /** key of the {@link CompletionIndex} of this editor. */
+        private String mCompletionKey;
+        /** null: the whole text is one value. Else chars that seperate several values in the text. */
+        private String mTokenDelimiters = null;
+        /** number of completions at the beginning of the last {@link #getPopupItems()} */
+        private int mCompletionCount = 0;
+
         public EditorHandler(String id, EditText editor, int imageButtonResourceId) {
             mId = id;
+            mCompletionKey = id;
             mEditor = editor;
 
             mCmd = (imageButtonResourceId != NO_ID) ? (ImageButton) editor.getRootView().findViewById(imageButtonResourceId) : null;
@@ -79,13 +115,13 @@ public class HistoryEditText {
         }
 
         protected void showHistory() {
-            List<String> items = getHistoryItems();
+            final List<String> items = getPopupItems();
 
             PopupMenu popup = null;
             popup = new PopupMenu(mContext, mEditor);
             Menu root = popup.getMenu();
             int len = items.size();
-            if (len > 10) len = 10;
+            if (len > MAX_POPUP_ITEMS) len = MAX_POPUP_ITEMS;
             for (int i = 0; i < len; i++) {
                 String text = items.get(i).trim();
 
@@ -94,19 +130,83 @@ public class HistoryEditText {
                 }
             }
 
+            final int completionCount = mCompletionCount;
             popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
                 @Override
                 public boolean onMenuItemClick(MenuItem item) {
                     // String text = item.getTitle();
-                    String text = getHistoryItems().get(item.getItemId() - 10);
-                    mEditor.setText(text);
-                    mEditor.setSelection(0, mEditor.length());
+                    int index = item.getItemId() - 10;
+                    String text = items.get(index);
+                    if (index < completionCount) {
+                        replaceTokenAtCursor(text);
+                    } else {
+                        mEditor.setText(text);
+                        mEditor.setSelection(0, mEditor.length());
+                    }
                     return true;
                 }
             });
             popup.show();
         }
 
+        /** completions for the token at the cursor ranked by frequency followed by the history */
+        private List<String> getPopupItems() {
+            List<String> history = getHistoryItems();
+            mCompletionCount = 0;
+            String prefix = getText(getTokenStart(), getCursor()).trim();
+            if (prefix.length() == 0) return history;
+
+            List<String> result = new ArrayList<String>(getCompletionIndex(mContext, mCompletionKey).complete(prefix, MAX_POPUP_ITEMS));
+            mCompletionCount = result.size();
+            for (String item : history) {
+                if ((result.size() < MAX_POPUP_ITEMS) && !result.contains(item)) result.add(item);
+            }
+            return result;
+        }
+
+        private int getCursor() {
+            int cursor = mEditor.getSelectionStart();
+            return (cursor < 0) ? mEditor.length() : cursor;
+        }
+
+        /** @return start of the value that contains the cursor */
+        private int getTokenStart() {
+            int start = getCursor();
+            if (mTokenDelimiters != null) {
+                CharSequence text = mEditor.getText();
+                while ((start > 0) && (mTokenDelimiters.indexOf(text.charAt(start - 1)) < 0)) start--;
+            } else {
+                start = 0;
+            }
+            return start;
+        }
+
+        /** @return end of the value that contains the cursor */
+        private int getTokenEnd() {
+            int end = getCursor();
+            final int len = mEditor.length();
+            if (mTokenDelimiters != null) {
+                CharSequence text = mEditor.getText();
+                while ((end < len) && (mTokenDelimiters.indexOf(text.charAt(end)) < 0)) end++;
+            } else {
+                end = len;
+            }
+            return end;
+        }
+
+        private String getText(int start, int end) {
+            return mEditor.getText().subSequence(start, end).toString();
+        }
+
+        private void replaceTokenAtCursor(String value) {
+            int start = getTokenStart();
+            int end = getTokenEnd();
+            // keep the blank after a delimiter
+            if ((start > 0) && (start < end) && (mEditor.getText().charAt(start) == ' ')) start++;
+            mEditor.getText().replace(start, end, value);
+            mEditor.setSelection(start + value.length());
+        }
+
         private List<String> getHistoryItems() {
             SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(mContext);
             return getHistory(sharedPref);
@@ -127,7 +227,11 @@ public class HistoryEditText {
 
         protected void saveHistory(SharedPreferences sharedPref, SharedPreferences.Editor edit) {
             List<String> history = getHistory(sharedPref);
-            history = include(history, mEditor.getText().toString().trim());
+            final String newValue = mEditor.getText().toString().trim();
+            addCompletions(mContext, mCompletionKey, (mTokenDelimiters != null)
+                    ? Arrays.asList(newValue.split("[" + mTokenDelimiters + "]"))
+                    : Arrays.asList(newValue));
+            history = include(history, newValue);
             String result = toString(history);
             edit.putString(mId, result);
         }
@@ -196,6 +300,22 @@ public class HistoryEditText {
         return new EditorHandler(id,editor, cmdId);
     }
 
+    /**
+     * editors share the {@link CompletionIndex} completionKey
+     * @param tokenDelimiters if not null: chars that seperate several values in the text, i.e. {@link #TAG_DELIMITERS}
+     */
+    public HistoryEditText setCompletion(String completionKey, String tokenDelimiters, EditText... editors) {
+        for (EditorHandler instance: mEditorHandlers) {
+            for (EditText editor : editors) {
+                if (instance.mEditor == editor) {
+                    instance.mCompletionKey = completionKey;
+                    instance.mTokenDelimiters = tokenDelimiters;
+                }
+            }
+        }
+        return this;
+    }
+
     private int getId(int[] ids, int offset) {
         if ((ids != null) && (offset >= 0) && (offset < ids.length) ) return ids[offset];
         return NO_ID;
@@ -210,6 +330,66 @@ public class HistoryEditText {
             instance.saveHistory(sharedPref, edit);
         }
         edit.apply();
+        saveCompletionIndexes(mContext);
+    }
+
+    /** completion for tags, search terms or paths of completionKey ranked by frequency and recency. */
+    public static CompletionIndex getCompletionIndex(Context context, String completionKey) {
+        synchronized (sCompletionIndexes) {
+            CompletionIndex result = sCompletionIndexes.get(completionKey);
+            if (result == null) {
+                result = new CompletionIndex(MAX_POPUP_ITEMS);
+                File file = getCompletionIndexFile(context, completionKey);
+                try {
+                    result.load(file);
+                } catch (IOException e) {
+                    Log.e(Global.LOG_CONTEXT, "HistoryEditText.getCompletionIndex: cannot load " + file, e);
+                }
+                sCompletionIndexes.put(completionKey, result);
+            }
+            return result;
+        }
+    }
+
+    /** remember that values were used in completionKey. Call {@link #saveCompletionIndexes(Context)} to persist. */
+    public static void addCompletions(Context context, String completionKey, List<String> values) {
+        getCompletionIndex(context, completionKey).addAll(values, 1.0);
+        synchronized (sCompletionIndexes) {
+            sModifiedCompletionKeys.add(completionKey);
+        }
+    }
+
+    /** persist the modified completion indexes in a background thread */
+    public static void saveCompletionIndexes(Context context) {
+        final Map<String, CompletionIndex> modified = new HashMap<String, CompletionIndex>();
+        synchronized (sCompletionIndexes) {
+            for (String completionKey : sModifiedCompletionKeys) {
+                modified.put(completionKey, sCompletionIndexes.get(completionKey));
+            }
+            sModifiedCompletionKeys.clear();
+        }
+        if (modified.isEmpty()) return;
+
+        final Context appContext = context.getApplicationContext();
+        sSaveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, CompletionIndex> entry : modified.entrySet()) {
+                    File file = getCompletionIndexFile(appContext, entry.getKey());
+                    try {
+                        file.getParentFile().mkdirs();
+                        entry.getValue().save(file);
+                    } catch (IOException e) {
+                        Log.e(Global.LOG_CONTEXT, "HistoryEditText.saveCompletionIndexes: cannot save " + file, e);
+                    }
+                }
+            }
+        });
+    }
+
+    private static File getCompletionIndexFile(Context context, String completionKey) {
+        File dir = new File(context.getApplicationContext().getFilesDir(), COMPLETION_INDEX_DIR_NAME);
+        return new File(dir, completionKey.replaceAll("[^A-Za-z0-9_\\-]", "_") + ".txt");
     }
 
     @Override
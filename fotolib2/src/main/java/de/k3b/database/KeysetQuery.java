@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates page queries for keyset pagination ("seek method") of a {@link QueryParameter}:
+ * Instead of "LIMIT n OFFSET m" that has to step through m rows the next page is
+ * "WHERE (sortkeys) &gt; (sortkeys of last row of previous page) LIMIT n".
+ *
+ * The order by expressions of the query are added as result columns
+ * {@link #COL_KEY_PREFIX}0 ... so the keys of the page borders are available.
+ * The primary key is added as last sort key to make the order unique.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class KeysetQuery {
+    /** result column names of the sort keys */
+    public static final String COL_KEY_PREFIX = "_key";
+
+    private final QueryParameter mQuery;
+    private final String[] mKeyExpressions;
+    private final boolean[] mDescending;
+
+    public KeysetQuery(QueryParameter query, String pkColumn) {
+        mQuery = query;
+        List<String> expressions = new ArrayList<String>();
+        List<Boolean> descending = new ArrayList<Boolean>();
+        for (String orderBy : query.mOrderBy) {
+            for (String term : splitTerms(orderBy)) {
+                String lower = term.toLowerCase();
+                boolean desc = lower.endsWith(" desc");
+                if (desc || lower.endsWith(" asc")) {
+                    term = term.substring(0, term.lastIndexOf(' ')).trim();
+                }
+                expressions.add(term);
+                descending.add(desc);
+            }
+        }
+
+        if (!expressions.contains(pkColumn)) {
+            expressions.add(pkColumn);
+            descending.add(descending.isEmpty() ? false : descending.get(descending.size() - 1));
+        }
+
+        mKeyExpressions = expressions.toArray(new String[expressions.size()]);
+        mDescending = new boolean[mKeyExpressions.length];
+        for (int i = 0; i < mDescending.length; i++) {
+            mDescending[i] = descending.get(i);
+        }
+    }
+
+    /** false: pages cannot be calculated from the sort keys (i.e. group by) */
+    public boolean isSupported() {
+        return mQuery.mGroupBy.isEmpty() && mQuery.mHaving.isEmpty();
+    }
+
+    public int getKeyCount() {
+        return mKeyExpressions.length;
+    }
+
+    /**
+     * @param borderKeys null for the first page. Else the sort keys of the row before
+     *                   (backward==false) or after (backward==true) the page.
+     * @param backward if true the rows before borderKeys are returned in reverse order.
+     * @return the query with the sort keys as additional columns and without limit.
+     */
+    public QueryParameter createPageQuery(Object[] borderKeys, boolean backward) {
+        QueryParameter result = new QueryParameter(mQuery);
+        for (int i = 0; i < mKeyExpressions.length; i++) {
+            result.addColumn(mKeyExpressions[i] + " AS " + COL_KEY_PREFIX + i);
+        }
+        if (borderKeys != null) {
+            result.addWhere(getWhereBehind(borderKeys, backward));
+        }
+
+        String[] orderBy = new String[mKeyExpressions.length];
+        for (int i = 0; i < mKeyExpressions.length; i++) {
+            orderBy[i] = mKeyExpressions[i] + ((mDescending[i] ^ backward) ? " DESC" : " ASC");
+        }
+        result.replaceOrderBy(orderBy);
+        return result;
+    }
+
+    /** @return sql condition for all rows that come after (or before if backward) borderKeys in sort order */
+    protected String getWhereBehind(Object[] borderKeys, boolean backward) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < mKeyExpressions.length; i++) {
+            String behind = getBehind(mKeyExpressions[i], borderKeys[i], mDescending[i] ^ backward);
+            if (behind != null) {
+                if (result.length() > 0) result.append(" OR ");
+                result.append("(");
+                for (int j = 0; j < i; j++) {
+                    result.append(getEquals(mKeyExpressions[j], borderKeys[j])).append(" AND ");
+                }
+                result.append(behind).append(")");
+            }
+        }
+        if (result.length() == 0) return "0";
+        return "(" + result + ")";
+    }
+
+    /** sqlite sorts null before all other values */
+    private static String getBehind(String expression, Object value, boolean smaller) {
+        if (value == null) {
+            return (smaller) ? null : expression + " IS NOT NULL";
+        }
+        String literal = toSqlLiteral(value);
+        return (smaller)
+                ? "(" + expression + " < " + literal + " OR " + expression + " IS NULL)"
+                : expression + " > " + literal;
+    }
+
+    private static String getEquals(String expression, Object value) {
+        return (value == null) ? expression + " IS NULL" : expression + " = " + toSqlLiteral(value);
+    }
+
+    /** values are inlined instead of using parameters because parameters are always strings:
+     * in sqlite an expression without column affinity (i.e. length(...)) compared to a string is always smaller */
+    public static String toSqlLiteral(Object value) {
+        if (value == null) return "NULL";
+        if (value instanceof Number) return value.toString();
+        if (value instanceof byte[]) {
+            StringBuilder result = new StringBuilder("X'");
+            for (byte b : (byte[]) value) {
+                result.append(String.format("%02x", b));
+            }
+            return result.append("'").toString();
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    /** splits "a asc, length(b, c) desc" into "a asc" and "length(b, c) desc" */
+    private static List<String> splitTerms(String orderBy) {
+        List<String> result = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < orderBy.length(); i++) {
+            char c = orderBy.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if ((c == ',') && (depth == 0)) {
+                addTerm(result, orderBy.substring(start, i));
+                start = i + 1;
+            }
+        }
+        addTerm(result, orderBy.substring(start));
+        return result;
+    }
+
+    private static void addTerm(List<String> result, String term) {
+        term = term.trim();
+        if (term.length() > 0) result.add(term);
+    }
+}
@@ -244,6 +244,16 @@ public class QueryParameter {
         return result.toString();
     }
 
+    /** same as toAndroidWhere() == null without creating the string */
+    public boolean isAndroidWhereEmpty() {
+        return !hasWhere() && !Helper.isNotEmpty(mGroupBy) && !Helper.isNotEmpty(mHaving);
+    }
+
+    /** same as toAndroidWhere().contains(sqlPart) without creating the string */
+    public boolean containsInAndroidWhere(String sqlPart) {
+        return Helper.contains(mWhere, sqlPart) || Helper.contains(mGroupBy, sqlPart) || Helper.contains(mHaving, sqlPart);
+    }
+
     public boolean hasWhere() {
         return Helper.isNotEmpty(mWhere);
     }
@@ -558,6 +568,15 @@ public class QueryParameter {
             return false;
         }
 
+        private static boolean contains(List<String> list, String sqlPart) {
+            int listSize = list.size();
+            for (int i = 0; i < listSize; i++) {
+                String item = list.get(i);
+                if ((item != null) && item.contains(sqlPart)) return true;
+            }
+            return false;
+        }
+
         private static boolean isNotEmpty(List<String> list) {
             return (list != null) && (list.size() > 0);
         }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches query results so that switching between gallery, date tree, folder tree and map
+ * does not execute the same sql again.
+ *
+ * The key consists of the sql parts and parameters of the {@link QueryParameter} plus a
+ * db generation counter that is incremented by every db modification via {@link #invalidate()}.
+ * The cache is limited by the total number of cached rows (least recently used are removed first).
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class QueryResultCache {
+    /** immutable result of a query */
+    public static class Result {
+        private final String[] mColumnNames;
+        private final Object[][] mRows;
+
+        /** the arrays must not be modified after this */
+        public Result(String[] columnNames, Object[][] rows) {
+            mColumnNames = columnNames;
+            mRows = rows;
+        }
+
+        public String[] getColumnNames() {
+            return mColumnNames.clone();
+        }
+
+        public int getRowCount() {
+            return mRows.length;
+        }
+
+        /** @return copy of the values of row */
+        public Object[] getRow(int row) {
+            return mRows[row].clone();
+        }
+
+        public Object getValue(int row, int column) {
+            return mRows[row][column];
+        }
+    }
+
+    private final int mMaxRowCount;
+
+    /** access ordered: least recently used first */
+    private final LinkedHashMap<List<Object>, Result> mEntries = new LinkedHashMap<List<Object>, Result>(16, 0.75f, true);
+    private int mRowCount = 0;
+    private long mGeneration = 0;
+
+    public QueryResultCache(int maxRowCount) {
+        mMaxRowCount = maxRowCount;
+    }
+
+    /** bigger results are not cached */
+    public int getMaxRowCountPerQuery() {
+        return mMaxRowCount / 4;
+    }
+
+    /** to be passed to {@link #put(QueryParameter, long, Result)} */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /** the db has been modified: all cached results are outdated. */
+    public synchronized void invalidate() {
+        mGeneration++;
+        mEntries.clear();
+        mRowCount = 0;
+    }
+
+    /** @return cached result or null if not cached */
+    public synchronized Result get(QueryParameter query) {
+        return mEntries.get(getKey(query, mGeneration));
+    }
+
+    /**
+     * @param generation value of {@link #getGeneration()} before the query was executed.
+     *                   If the db was modified while the query was executed the result is not cached.
+     * @return true if result was cached
+     */
+    public synchronized boolean put(QueryParameter query, long generation, Result result) {
+        if ((generation != mGeneration) || (result.getRowCount() > getMaxRowCountPerQuery())) return false;
+
+        Result old = mEntries.put(getKey(query, generation), result);
+        if (old != null) mRowCount -= old.getRowCount();
+        mRowCount += result.getRowCount();
+
+        Iterator<Map.Entry<List<Object>, Result>> iter = mEntries.entrySet().iterator();
+        while ((mRowCount > mMaxRowCount) && iter.hasNext()) {
+            mRowCount -= iter.next().getValue().getRowCount();
+            iter.remove();
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /** generation plus copies of the sql parts and parameters of query */
+    protected static List<Object> getKey(QueryParameter query, long generation) {
+        return Arrays.<Object>asList(generation,
+                new ArrayList<String>(query.mColumns),
+                new ArrayList<String>(query.mFrom),
+                new ArrayList<String>(query.mWhere),
+                new ArrayList<String>(query.mParameters),
+                new ArrayList<String>(query.mGroupBy),
+                new ArrayList<String>(query.mHaving),
+                new ArrayList<String>(query.mHavingParameters),
+                new ArrayList<String>(query.mOrderBy));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " queries, " + mRowCount + " rows, generation " + mGeneration + "]";
+    }
+}
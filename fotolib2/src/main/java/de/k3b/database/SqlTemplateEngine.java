@@ -19,10 +19,16 @@
 
 package de.k3b.database;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Translates strings with jsp like macros to sqlLite string expressions.
  * "hello ${expression}"
  *
+ * Translated templates are cached so that repeated use of the same template
+ * does not parse the template again.
+ *
  * Created by k3b on 12.06.2017.
  */
 
@@ -31,43 +37,102 @@ public class SqlTemplateEngine {
     private static final String MACRO_START = "${";
     private static final String MACRO_END = "}";
 
+    /** max number of cached templates */
+    private static final int MAX_CACHE_SIZE = 64;
+
+    /** template => translated sql. access ordered: least recently used first */
+    private static final Map<String, Compiled> sCache = new LinkedHashMap<String, Compiled>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Compiled> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
+
+    /** Immutable template that has been translated to sql once. */
+    public static class Compiled {
+        private final String mSql;
+
+        private Compiled(String template) {
+            StringBuilder sql = new StringBuilder(template.length() + 16);
+            translate(sql, template);
+            mSql = sql.toString();
+        }
+
+        /** appends the translated sql to dest without creating temporary strings */
+        public StringBuilder appendTo(StringBuilder dest) {
+            return dest.append(mSql);
+        }
+
+        public String toSql() {
+            return mSql;
+        }
+
+        @Override
+        public String toString() {
+            return mSql;
+        }
+    }
+
+    /** @return translated template from cache. null if template is null */
+    public static Compiled compile(String template) {
+        if (template == null) return null;
+
+        synchronized (sCache) {
+            Compiled result = sCache.get(template);
+            if (result == null) {
+                result = new Compiled(template);
+                sCache.put(template, result);
+            }
+            return result;
+        }
+    }
+
     public static String toSql(String input) {
-        if (input == null) return null;
+        Compiled compiled = compile(input);
+        return (compiled == null) ? null : compiled.toSql();
+    }
+
+    /** appends the translated input to dest. */
+    public static StringBuilder toSql(StringBuilder dest, String input) {
+        Compiled compiled = compile(input);
+        return (compiled == null) ? dest : compiled.appendTo(dest);
+    }
 
+    /** parses input and appends the sql to result */
+    private static void translate(StringBuilder result, String input) {
+        // "||" is only added between items that belong to input
+        final int resultStart = result.length();
         int lastStart = 0;
         int length = input.length();
-        StringBuilder result = new StringBuilder();
         int startMacro;
 
         while (lastStart < length) {
             startMacro = input.indexOf(MACRO_START, lastStart);
             if (startMacro >= lastStart) {
-                addConst(result, input, lastStart, startMacro);
+                addConst(result, resultStart, input, lastStart, startMacro);
                 int endMacro = input.indexOf(MACRO_END, startMacro);
                 if (endMacro > startMacro) {
-                    addExpression(result, input, startMacro + MACRO_START.length(), endMacro);
+                    addExpression(result, resultStart, input, startMacro + MACRO_START.length(), endMacro);
                     lastStart = endMacro + MACRO_END.length();
                 } else {
                     // start without end
-                    addConst(result, input, startMacro, length);
+                    addConst(result, resultStart, input, startMacro, length);
                     lastStart = length; // terminate loop
                 }
             } else {
-                if (result.length() == 0) {
+                if (result.length() == resultStart) {
                     // special case no macros included
                     result.append(input);
                 } else {
-                    addConst(result, input, lastStart, length);
+                    addConst(result, resultStart, input, lastStart, length);
                 }
                 lastStart = length; // terminate loop
             }
 
         }
-
-        return result.toString();
     }
 
-    private static void addExpression(StringBuilder result, String input, int start, int end) {
+    private static void addExpression(StringBuilder result, int resultStart, String input, int start, int end) {
         int endExpression = end;
         while ((endExpression > start) && (input.charAt(endExpression - 1) == '|'))  {
             endExpression--;
@@ -75,25 +140,27 @@ public class SqlTemplateEngine {
 
         if (endExpression > start) {
             // expression exist
-            if (result.length() > 0) result.append("||");
+            if (result.length() > resultStart) result.append("||");
 
             result
                     .append("ifnull(")
-                    .append(input.substring(start,endExpression));
-            addConst(result, input, endExpression, end);
+                    .append(input, start, endExpression);
+            addConst(result, resultStart, input, endExpression, end);
             result
                     .append(",'')");
         }
 
     }
 
-    private static void addConst(StringBuilder result, String input, int start, int end) {
+    private static void addConst(StringBuilder result, int resultStart, String input, int start, int end) {
         if ((start >= 0) && (end > start) && (end <= input.length())) {
-            if (result.length() > 0) result.append("||");
-            result
-                .append("'")
-                .append(input.substring(start,end).replace('\'','\"'))
-                .append("'");
+            if (result.length() > resultStart) result.append("||");
+            result.append('\'');
+            for (int i = start; i < end; i++) {
+                char c = input.charAt(i);
+                result.append((c == '\'') ? '\"' : c);
+            }
+            result.append('\'');
         }
     }
 }
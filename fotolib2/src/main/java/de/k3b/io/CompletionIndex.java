@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Auto-completion for tags, search terms and paths ranked by frequency and recency.
+ *
+ * Every {@link #add(String)} increases the score of the value by a weight that doubles every
+ * {@link #HALF_LIFE} adds ("recent uses count more than old uses") so old scores never have to be decayed.
+ *
+ * Values are stored in a case insensitive prefix tree where every node remembers its
+ * best {@link #mTopN} values so that {@link #complete(String, int)} costs O(prefix-length + n)
+ * independent of the number of values.
+ *
+ * If there are more than maxSize values the values with the lowest scores are forgotten.
+ *
+ * Persisted as text: first line is the clock, then one "score{tab}value" line per value.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class CompletionIndex {
+    /** after this many adds a new use is worth twice as much as an old use */
+    public static final int HALF_LIFE = 200;
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** scores are rescaled when they become bigger than this to avoid double overflow */
+    private static final double MAX_SCORE = 1.0e100;
+
+    private static final String SEPERATOR = "\t";
+
+    private static class Entry {
+        final String value;
+        double score = 0;
+
+        Entry(String value) {
+            this.value = value;
+        }
+    }
+
+    private static class Node {
+        Map<Character, Node> children = null;
+
+        /** best entries of this sub-tree sorted by score descending */
+        Entry[] top = null;
+        int topCount = 0;
+
+        Node getOrCreateChild(char c) {
+            if (children == null) children = new HashMap<Character, Node>();
+            Node result = children.get(c);
+            if (result == null) {
+                result = new Node();
+                children.put(c, result);
+            }
+            return result;
+        }
+
+        Node getChild(char c) {
+            return (children == null) ? null : children.get(c);
+        }
+
+        /** entry.score has increased: update position in top list */
+        void onScoreIncreased(Entry entry, int topN) {
+            if (top == null) top = new Entry[topN];
+
+            int pos = indexOf(entry);
+            if (pos < 0) {
+                if (topCount < topN) {
+                    pos = topCount++;
+                } else if (top[topCount - 1].score < entry.score) {
+                    pos = topCount - 1;
+                } else {
+                    return; // not good enough
+                }
+                top[pos] = entry;
+            }
+
+            // move up
+            while ((pos > 0) && (top[pos - 1].score < entry.score)) {
+                top[pos] = top[pos - 1];
+                top[--pos] = entry;
+            }
+        }
+
+        private int indexOf(Entry entry) {
+            for (int i = 0; i < topCount; i++) {
+                if (top[i] == entry) return i;
+            }
+            return -1;
+        }
+    }
+
+    private static final Comparator<Entry> BY_SCORE_DESC = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return Double.compare(rhs.score, lhs.score);
+        }
+    };
+
+    private final int mTopN;
+    private final int mMaxSize;
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+    private Node mRoot = new Node();
+
+    /** number of adds so far. Basis for recency weight. */
+    private long mClock = 0;
+
+    /**
+     * @param topN max number of results that {@link #complete(String, int)} can return.
+     * @param maxSize max number of values to remember.
+     */
+    public CompletionIndex(int topN, int maxSize) {
+        mTopN = topN;
+        mMaxSize = Math.max(topN, maxSize);
+    }
+
+    /** @param topN max number of results that {@link #complete(String, int)} can return. */
+    public CompletionIndex(int topN) {
+        this(topN, DEFAULT_MAX_SIZE);
+    }
+
+    public CompletionIndex() {
+        this(10);
+    }
+
+    /** remember that value has been used (again) */
+    public CompletionIndex add(String value) {
+        return add(value, 1.0);
+    }
+
+    /** remember that value has been used (again) with weight relative to other values */
+    public synchronized CompletionIndex add(String value, double weight) {
+        String trimmed = (value != null) ? value.trim() : null;
+        if ((trimmed != null) && (trimmed.length() > 0)) {
+            mClock++;
+            increaseScore(trimmed, weight * Math.pow(2, (double) mClock / HALF_LIFE));
+        }
+        return this;
+    }
+
+    /** add all values of list */
+    public CompletionIndex addAll(List<String> values, double weight) {
+        if (values != null) {
+            for (String value : values) {
+                add(value, weight);
+            }
+        }
+        return this;
+    }
+
+    private void increaseScore(String value, double scoreIncrement) {
+        String key = value.toLowerCase();
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(value);
+            mEntries.put(key, entry);
+        }
+        entry.score += scoreIncrement;
+
+        Node node = mRoot;
+        node.onScoreIncreased(entry, mTopN);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.getOrCreateChild(key.charAt(i));
+            node.onScoreIncreased(entry, mTopN);
+        }
+
+        if (entry.score > MAX_SCORE) rescale();
+
+        // shrink only after 25% overflow so that shrinking is not done on every add
+        if (mEntries.size() > mMaxSize + mMaxSize / 4) shrink();
+    }
+
+    /** forget the values with the lowest scores so that mMaxSize values remain */
+    private void shrink() {
+        List<Entry> entries = new ArrayList<Entry>(mEntries.values());
+        Collections.sort(entries, BY_SCORE_DESC);
+
+        mEntries.clear();
+        mRoot = new Node();
+        for (int i = 0; i < mMaxSize; i++) {
+            Entry entry = entries.get(i);
+            increaseScore(entry.value, entry.score);
+        }
+    }
+
+    /** divide all scores by the same factor. Does not change the order. */
+    private void rescale() {
+        double factor = Math.pow(2, (double) mClock / HALF_LIFE);
+        for (Entry entry : mEntries.values()) {
+            entry.score /= factor;
+        }
+        mClock = 0;
+    }
+
+    /**
+     * @return up to max best values starting with prefix (ignoring case) sorted by rank.
+     * Empty or null prefix returns the overall best values.
+     */
+    public synchronized List<String> complete(String prefix, int max) {
+        List<String> result = new ArrayList<String>();
+        Node node = mRoot;
+        if (prefix != null) {
+            String key = prefix.trim().toLowerCase();
+            for (int i = 0; (node != null) && (i < key.length()); i++) {
+                node = node.getChild(key.charAt(i));
+            }
+        }
+        if (node != null) {
+            int count = Math.min(max, node.topCount);
+            for (int i = 0; i < count; i++) {
+                result.add(node.top[i].value);
+            }
+        }
+        return result;
+    }
+
+    /** number of different values */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    public synchronized void save(Writer writer) throws IOException {
+        writer.write(Long.toString(mClock));
+        writer.write("\n");
+        for (Entry entry : mEntries.values()) {
+            writer.write(Double.toString(entry.score));
+            writer.write(SEPERATOR);
+            writer.write(entry.value);
+            writer.write("\n");
+        }
+        writer.flush();
+    }
+
+    /** adds content of reader to this */
+    public synchronized CompletionIndex load(Reader reader) throws IOException {
+        BufferedReader br = new BufferedReader(reader);
+        String line = br.readLine();
+        if (line != null) {
+            mClock = Math.max(mClock, Long.parseLong(line.trim()));
+            while ((line = br.readLine()) != null) {
+                int delimiter = line.indexOf(SEPERATOR);
+                if (delimiter > 0) {
+                    try {
+                        double score = Double.parseDouble(line.substring(0, delimiter));
+                        String value = line.substring(delimiter + SEPERATOR.length()).trim();
+                        if (value.length() > 0) increaseScore(value, score);
+                    } catch (NumberFormatException ignore) {
+                        // corrupt line: ignore
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    public void save(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            save(writer);
+        } finally {
+            FileUtils.close(writer, file);
+        }
+    }
+
+    /** adds content of file to this if file exists */
+    public CompletionIndex load(File file) throws IOException {
+        if ((file != null) && file.exists()) {
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            try {
+                load(reader);
+            } finally {
+                FileUtils.close(reader, file);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " values]";
+    }
+}
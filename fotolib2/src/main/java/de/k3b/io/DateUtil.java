@@ -60,7 +60,9 @@ public class DateUtil {
         if (dateString != null) {
             for (DateFormat formatCandidate : formatCandidates) {
                 try {
-                    result = formatCandidate.parse(dateString);
+                    synchronized (formatCandidate) {
+                        result = formatCandidate.parse(dateString);
+                    }
                     if (result != null) break;
                 } catch (ParseException e) {
                 }
@@ -71,11 +73,15 @@ public class DateUtil {
 
     public static String toIsoDateTimeString(Date date) {
         if (date == null) return null;
-        return IsoDateTimeFormat.format(date);
+        synchronized (IsoDateTimeFormat) {
+            return IsoDateTimeFormat.format(date);
+        }
     }
 
     public static String toIsoDateString(Date date) {
         if (date == null) return null;
-        return IsoDateFormat.format(date);
+        synchronized (IsoDateFormat) {
+            return IsoDateFormat.format(date);
+        }
     }
 }
@@ -21,7 +21,9 @@ package de.k3b.io;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class to represent a Directory-Structure where a Directory can have several SubDirectories.
@@ -40,11 +42,19 @@ public class Directory implements IDirectory {
     public static final int OPT_ALL = 0xffff;
     public static final int OPT_NONE = 0;
 
+    /** if there are more children than this a hash index is used to find a child by name */
+    public static final int CHILD_INDEX_THRESHOLD = 8;
+
     private String relPath = null;
     private Boolean apmDir = null;
     private Directory parent = null;
     private List<IDirectory> children = null;
 
+    /** lowercase first path element of child.relPath => first child with that name. null if not created yet.
+     * children must be modified via addChild, removeChild, setChildren or followed by invalidateChildIndex */
+    private Map<String, IDirectory> childIndex = null;
+    private int childIndexSize = 0;
+
     private int nonDirItemCount = 0;
     private int nonDirSubItemCount = 0;
     private int dirCount = 0;
@@ -82,6 +92,7 @@ public class Directory implements IDirectory {
             }
             children = null;
         }
+        childIndex = null;
         parent = null;
     }
 
@@ -90,6 +101,68 @@ public class Directory implements IDirectory {
             this.children = new ArrayList<>();
         this.children.add(child);
 
+        if ((childIndex != null) && (childIndexSize + 1 == children.size())) {
+            addToChildIndex(childIndex, child);
+            childIndexSize++;
+        }
+    }
+
+    @Override
+    public void removeChild(IDirectory child) {
+        if ((children != null) && children.remove(child)) {
+            invalidateChildIndex();
+        }
+    }
+
+    /**
+     * @return first child where the first path element of its relPath equals name ignoring case
+     * or null if there is no such child.
+     * Uses a hash index if there are more than {@link #CHILD_INDEX_THRESHOLD} children.
+     */
+    public IDirectory findChildIgnoreCase(String name) {
+        final List<IDirectory> children = this.children;
+        if ((name == null) || (children == null)) return null;
+
+        if (children.size() > CHILD_INDEX_THRESHOLD) {
+            return getChildIndex().get(name.toLowerCase());
+        }
+
+        for (IDirectory child : children) {
+            if (name.equalsIgnoreCase(getFirstPathElement(child.getRelPath()))) return child;
+        }
+        return null;
+    }
+
+    private Map<String, IDirectory> getChildIndex() {
+        if ((childIndex == null) || (childIndexSize != children.size())) {
+            // (re-)create because children were replaced or renamed
+            childIndex = new HashMap<String, IDirectory>(children.size() * 2);
+            for (IDirectory child : children) {
+                addToChildIndex(childIndex, child);
+            }
+            childIndexSize = children.size();
+        }
+        return childIndex;
+    }
+
+    private static void addToChildIndex(Map<String, IDirectory> childIndex, IDirectory child) {
+        String key = getFirstPathElement(child.getRelPath());
+        if (key != null) {
+            key = key.toLowerCase();
+            if (!childIndex.containsKey(key)) childIndex.put(key, child);
+        }
+    }
+
+    /** must be called if name of a child has changed */
+    protected void invalidateChildIndex() {
+        childIndex = null;
+    }
+
+    /** "a/b/c" => "a" */
+    private static String getFirstPathElement(String relPath) {
+        if (relPath == null) return null;
+        int end = relPath.indexOf(PATH_DELIMITER);
+        return (end < 0) ? relPath : relPath.substring(0, end);
     }
 
     /*------------------- simple properties ------------------------*/
@@ -101,6 +174,7 @@ public class Directory implements IDirectory {
 
     public void setRelPath(String relPath) {
         this.relPath = relPath;
+        if (parent != null) parent.invalidateChildIndex();
     }
 
     private boolean isApmDir() {
@@ -126,6 +200,7 @@ public class Directory implements IDirectory {
 
     public void setChildren(List<IDirectory> children) {
         this.children = children;
+        invalidateChildIndex();
     }
 
     /*------------------- formatting ------------------------*/
@@ -257,6 +332,20 @@ public class Directory implements IDirectory {
         int pathLen = path.length();
         if (pathLen == 0) return parent;
 
+        if (parent instanceof Directory) {
+            // fast path: hash lookup of first path element
+            int end = path.indexOf(PATH_DELIMITER);
+            IDirectory child = ((Directory) parent).findChildIgnoreCase((end < 0) ? path.toString() : path.substring(0, end));
+            if ((child != null) && (path.indexOf(child.getRelPath()) == 0)) {
+                int childLen = child.getRelPath().length();
+                if (childLen == pathLen) return child; // found last path element
+                if (path.indexOf(PATH_DELIMITER, childLen) == childLen) {
+                    path.delete(0,childLen);
+                    return find(child, path);
+                }
+            }
+        }
+
         if (parent.getChildren() != null) {
             for(IDirectory child : parent.getChildren()) {
                 if (path.indexOf(child.getRelPath()) == 0) {
@@ -301,6 +390,6 @@ public class Directory implements IDirectory {
     public void rename(String oldFolderName, String newFolderName) {
         String relPath = this.getRelPath();
         relPath = relPath.replace(oldFolderName, newFolderName);
-        this.relPath = relPath;
+        setRelPath(relPath);
     }
 }
@@ -130,14 +130,9 @@ public class DirectoryBuilder {
         if ((serach == null) || (serach.length() == 0))
             return addPath(elements, level + 1, root, iconID);
 
-        List<IDirectory> children = root.getChildren();
-        if (children != null) {
-            for (IDirectory _child: children) {
-                Directory child = (Directory) _child;
-                if (serach.compareToIgnoreCase(child.getRelPath()) == 0) {
-                    return addPath(elements, level+1, child, iconID);
-                }
-            }
+        Directory child = (Directory) root.findChildIgnoreCase(serach);
+        if ((child != null) && (serach.compareToIgnoreCase(child.getRelPath()) == 0)) {
+            return addPath(elements, level+1, child, iconID);
         }
 
         Directory result = new Directory(serach, root, 0);
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incrementally updates a Directory-Structure created by {@link DirectoryBuilder}
+ * after files were inserted, deleted or moved
+ * so that the tree does not have to be reloaded from the database.
+ *
+ * Only the affected path is touched: item counts and statistics are updated from the
+ * modified directory up to the root and the tree stays compressed the same way as
+ * {@link DirectoryBuilder#getRoot()} would have created it.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class DirectoryUpdater {
+    /** Receives a notification after the tree has been modified */
+    public interface IDirectoryChangeListener {
+        /** directory whose children and/or statistics have changed. */
+        void onDirectoryChanged(IDirectory directory);
+    }
+
+    private final Directory mRoot;
+    private IDirectoryChangeListener mListener = null;
+
+    public DirectoryUpdater(IDirectory root) {
+        mRoot = (Directory) root;
+    }
+
+    public DirectoryUpdater setListener(IDirectoryChangeListener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * Translates a {@link FileCommands} operation into add/remove of items.
+     *
+     * @param opCode one of FileCommands.OP_XXX
+     * @return number of items that were added or removed
+     */
+    public int onFilesChanged(int opCode, String[] oldPathNames, String[] newPathNames) {
+        int result = 0;
+        switch (opCode) {
+            case FileCommands.OP_MOVE:
+            case FileCommands.OP_RENAME:
+                result += removeFiles(oldPathNames);
+                result += addFiles(newPathNames);
+                break;
+            case FileCommands.OP_COPY:
+                result += addFiles(newPathNames);
+                break;
+            case FileCommands.OP_DELETE:
+                result += removeFiles(oldPathNames);
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+
+    private int addFiles(String[] pathNames) {
+        int result = 0;
+        Map<String, Integer> dirs = getDirCounts(pathNames);
+        for (Map.Entry<String, Integer> dir : dirs.entrySet()) {
+            if (addItems(dir.getKey(), dir.getValue(), 0) != null) result += dir.getValue();
+        }
+        return result;
+    }
+
+    private int removeFiles(String[] pathNames) {
+        int result = 0;
+        Map<String, Integer> dirs = getDirCounts(pathNames);
+        for (Map.Entry<String, Integer> dir : dirs.entrySet()) {
+            if (removeItems(dir.getKey(), dir.getValue()) != null) result += dir.getValue();
+        }
+        return result;
+    }
+
+    /** "/a/b/c.jpg" => ("/a/b/", 1) */
+    private static Map<String, Integer> getDirCounts(String[] pathNames) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        if (pathNames != null) {
+            for (String pathName : pathNames) {
+                if (pathName != null) {
+                    String dir = pathName.replace('\\', '/');
+                    dir = dir.substring(0, dir.lastIndexOf(Directory.PATH_DELIMITER) + 1);
+                    Integer count = result.get(dir);
+                    result.put(dir, (count == null) ? 1 : count + 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add nonDirItemCount items to the directory dirPath that is created if it does not exist yet.
+     *
+     * @return the directory containing the items or null if nothing was changed.
+     */
+    public IDirectory addItems(String dirPath, int nonDirItemCount, int iconID) {
+        String[] elements = getPathElements(dirPath);
+        if ((mRoot == null) || (elements.length == 0) || (nonDirItemCount <= 0)) return null;
+
+        Directory changed = null;
+        Directory current = mRoot;
+        int level = 0;
+        while (level < elements.length) {
+            Directory child = (Directory) current.findChildIgnoreCase(elements[level]);
+            if (child == null) {
+                // remaining elements become one compressed directory
+                child = addChild(current, join(elements, level, elements.length), iconID);
+                if (changed == null) changed = current;
+                current = child;
+                break;
+            }
+
+            String[] childElements = getPathElements(child.getRelPath());
+            int match = 0;
+            while ((match < childElements.length) && (level + match < elements.length)
+                    && childElements[match].equalsIgnoreCase(elements[level + match])) {
+                match++;
+            }
+
+            if (match < childElements.length) {
+                // "a/b/c" must become "a/b" -> "c" to insert "a/b/x" or "a/b"
+                child = split(child, childElements, match);
+                if (changed == null) changed = current;
+            }
+            current = child;
+            level += match;
+        }
+
+        current.setNonDirItemCount(current.getNonDirItemCount() + nonDirItemCount);
+        for (Directory dir = current; dir != null; dir = (Directory) dir.getParent()) {
+            dir.setNonDirSubItemCount(dir.getNonDirSubItemCount() + nonDirItemCount);
+            if (iconID > dir.getSelectionIconID()) dir.setIconID(iconID);
+        }
+
+        notifyChanged((changed != null) ? changed : current);
+        return current;
+    }
+
+    /**
+     * Remove up to nonDirItemCount items from the directory dirPath.
+     * Directories without items are removed.
+     *
+     * @return the topmost directory that has changed or null if nothing was changed.
+     */
+    public IDirectory removeItems(String dirPath, int nonDirItemCount) {
+        Directory current = (mRoot == null) ? null : (Directory) mRoot.find(dirPath);
+        if ((current == null) || (current == mRoot)) return null;
+
+        int count = Math.min(nonDirItemCount, current.getNonDirItemCount());
+        if (count <= 0) return null;
+
+        current.setNonDirItemCount(current.getNonDirItemCount() - count);
+        for (Directory dir = current; dir != null; dir = (Directory) dir.getParent()) {
+            dir.setNonDirSubItemCount(dir.getNonDirSubItemCount() - count);
+        }
+
+        Directory changed = current;
+        while ((current != mRoot) && (current.getNonDirSubItemCount() <= 0)) {
+            Directory parent = (Directory) current.getParent();
+            removeChild(parent, current);
+            changed = parent;
+            current = parent;
+        }
+
+        if (mergeWithChildIfPossible(current)) {
+            changed = (Directory) current.getParent();
+        }
+
+        notifyChanged(changed);
+        return changed;
+    }
+
+    private void notifyChanged(Directory changed) {
+        if ((mListener != null) && (changed != null)) {
+            mListener.onDirectoryChanged(changed);
+        }
+    }
+
+    /** creates a new child without items at the sorted position */
+    private static Directory addChild(Directory parent, String relPath, int iconID) {
+        Directory child = new Directory(relPath, null, 0);
+        child.setParent(parent);
+        child.setIconID(iconID);
+        insertSorted(parent, child);
+
+        parent.setDirCount(parent.getDirCount() + 1);
+        for (Directory dir = parent; dir != null; dir = (Directory) dir.getParent()) {
+            dir.setSubDirCount(dir.getSubDirCount() + 1);
+        }
+        return child;
+    }
+
+    /** child "a/b/c" with match=2 becomes "a/b" -> "c". @return the new "a/b" */
+    private static Directory split(Directory child, String[] childElements, int match) {
+        Directory parent = (Directory) child.getParent();
+        Directory result = new Directory(join(childElements, 0, match), null, 0);
+        result.setParent(parent);
+        result.setIconID(child.getSelectionIconID());
+        List<IDirectory> siblings = parent.getChildren();
+        siblings.set(siblings.indexOf(child), result);
+        parent.invalidateChildIndex();
+
+        child.setParent(result);
+        child.setRelPath(join(childElements, match, childElements.length));
+        List<IDirectory> children = new ArrayList<IDirectory>();
+        children.add(child);
+        result.setChildren(children);
+
+        result.setNonDirSubItemCount(child.getNonDirSubItemCount())
+                .setDirCount(1)
+                .setSubDirCount(child.getSubDirCount() + 1);
+        for (Directory dir = parent; dir != null; dir = (Directory) dir.getParent()) {
+            dir.setSubDirCount(dir.getSubDirCount() + 1);
+        }
+        return result;
+    }
+
+    private static void removeChild(Directory parent, Directory child) {
+        parent.removeChild(child);
+
+        parent.setDirCount(parent.getDirCount() - 1);
+        int removedDirCount = child.getSubDirCount() + 1;
+        for (Directory dir = parent; dir != null; dir = (Directory) dir.getParent()) {
+            dir.setSubDirCount(dir.getSubDirCount() - removedDirCount);
+        }
+        child.destroy();
+    }
+
+    /** same as compress in {@link DirectoryBuilder}: "a" -> "b" becomes "a/b" if "a" has no items.
+     * @return true if merged */
+    private boolean mergeWithChildIfPossible(Directory dir) {
+        if ((dir == mRoot) || (dir.getNonDirItemCount() > 0) || (Directory.getChildCount(dir) != 1)) return false;
+
+        Directory child = (Directory) dir.getChildren().get(0);
+        dir.setRelPath(dir.getRelPath() + Directory.PATH_DELIMITER + child.getRelPath());
+        List<IDirectory> grandChildren = child.getChildren();
+        if (grandChildren != null) {
+            for (IDirectory grandChild : grandChildren) {
+                ((Directory) grandChild).setParent(dir);
+            }
+        }
+        dir.setChildren(grandChildren);
+        dir.setNonDirItemCount(child.getNonDirItemCount());
+        dir.setDirCount(child.getDirCount());
+        dir.setSubDirCount(child.getSubDirCount());
+        for (Directory parent = (Directory) dir.getParent(); parent != null; parent = (Directory) parent.getParent()) {
+            parent.setSubDirCount(parent.getSubDirCount() - 1);
+        }
+        child.setChildren(null);
+        child.setParent(null);
+        return true;
+    }
+
+    /** keeps the order of the database query "order by path" */
+    private static void insertSorted(Directory parent, Directory child) {
+        List<IDirectory> children = parent.getChildren();
+        if (children == null) {
+            parent.setChildren(children = new ArrayList<IDirectory>());
+        }
+        int pos = 0;
+        while ((pos < children.size()) && (children.get(pos).getRelPath().compareTo(child.getRelPath()) < 0)) {
+            pos++;
+        }
+        children.add(pos, child);
+        parent.invalidateChildIndex();
+    }
+
+    /** "/a//b/" => {"a", "b"} */
+    private static String[] getPathElements(String path) {
+        List<String> result = new ArrayList<String>();
+        if (path != null) {
+            for (String element : path.split(Directory.PATH_DELIMITER)) {
+                if (element.length() > 0) result.add(element);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static String join(String[] elements, int start, int end) {
+        StringBuilder result = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) result.append(Directory.PATH_DELIMITER);
+            result.append(elements[i]);
+        }
+        return result.toString();
+    }
+}
@@ -30,6 +30,8 @@ import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.io.collections.DestDirFileNameProcessor;
@@ -60,6 +62,14 @@ public class FileCommands extends FileProcessor implements  Cloneable, IProgessL
     public static final int OP_RENAME = 4;
     public static final int OP_UPDATE = 5;
 
+    /** Receives copy/move/rename/delete results i.e. to update cached directory trees incrementally */
+    public interface IFileChangeListener {
+        /** @param opCode one of OP_XXX */
+        void onFilesChanged(int opCode, String[] oldPathNames, String[] newPathNames);
+    }
+
+    private static final List<IFileChangeListener> sFileChangeListeners = new CopyOnWriteArrayList<IFileChangeListener>();
+
     protected ArrayList<String> mModifiedDestFiles;
     protected ArrayList<String> mModifiedSrcFiles;
 
@@ -495,6 +505,7 @@ public class FileCommands extends FileProcessor implements  Cloneable, IProgessL
     private static boolean _osFileCopy(File targetFullPath, File sourceFullPath, FileCommands owner) {
         boolean result = true;
 
+        long start = Metrics.start();
         FileChannel in = null;
         FileChannel out = null;
         try {
@@ -503,6 +514,7 @@ public class FileCommands extends FileProcessor implements  Cloneable, IProgessL
             long size = in.size();
             MappedByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0,	size);
             out.write(buf);
+            Metrics.getInstance().timer(Metrics.FILE_COPY).stop(start, size);
         } catch (Throwable e) {
             result = false;
             if (owner != null) {
@@ -539,6 +551,36 @@ public class FileCommands extends FileProcessor implements  Cloneable, IProgessL
     /** called for each modified/deleted file */
     protected void onPostProcess(String what, int opCode, SelectedFiles selectedFiles, int modifyCount, int itemCount, String[] oldPathNames, String[] newPathNames) {
         /* can be overwritten */
+        if (modifyCount > 0) {
+            notifyFilesChanged(opCode,
+                    (opCode == OP_DELETE) ? getNonExisting(oldPathNames) : oldPathNames,
+                    newPathNames);
+        }
+    }
+
+    public static void addFileChangeListener(IFileChangeListener listener) {
+        if ((listener != null) && !sFileChangeListeners.contains(listener)) sFileChangeListeners.add(listener);
+    }
+
+    public static void removeFileChangeListener(IFileChangeListener listener) {
+        sFileChangeListeners.remove(listener);
+    }
+
+    /** inform all {@link IFileChangeListener}-s */
+    public static void notifyFilesChanged(int opCode, String[] oldPathNames, String[] newPathNames) {
+        for (IFileChangeListener listener : sFileChangeListeners) {
+            listener.onFilesChanged(opCode, oldPathNames, newPathNames);
+        }
+    }
+
+    /** delete passes all selected files: only the ones that are gone now were deleted */
+    private static String[] getNonExisting(String[] pathNames) {
+        if (pathNames == null) return null;
+        List<String> result = new ArrayList<String>();
+        for (String pathName : pathNames) {
+            if ((pathName != null) && !new File(pathName).exists()) result.add(pathName);
+        }
+        return result.toArray(new String[result.size()]);
     }
 
     /** all logging goes through this.
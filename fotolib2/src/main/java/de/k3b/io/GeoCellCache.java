@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches map items in a grid of cells with key (level, latCell, lonCell)
+ * so that moving the map only has to load cells that became visible.
+ *
+ * Usage:
+ * {@link #getMissingCells(int, double, IGeoRectangle)} for the visible area,
+ * load every {@link CellRange}, {@link #setLoaded(CellRange)} and
+ * {@link #put(CellRange, double, double, double, Object)} its items,
+ * then {@link #getItems(int, double, IGeoRectangle)}.
+ * Cells that were not visible for a long time are removed (least recently used).
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class GeoCellCache<T> {
+    /** a row of neighbouring cells with the same latCell that can be loaded with one query */
+    public static class CellRange {
+        public final int level;
+        public final long latCell;
+        public final long lonCellMin;
+        public final long lonCellMax;
+
+        private CellRange(int level, long latCell, long lonCellMin, long lonCellMax) {
+            this.level = level;
+            this.latCell = latCell;
+            this.lonCellMin = lonCellMin;
+            this.lonCellMax = lonCellMax;
+        }
+
+        /** @return area covered by the cells. Max is exclusive. */
+        public GeoRectangle getArea(double cellSize) {
+            GeoRectangle result = new GeoRectangle();
+            result.setLatitude(latCell * cellSize, (latCell + 1) * cellSize);
+            result.setLogitude(lonCellMin * cellSize, (lonCellMax + 1) * cellSize);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "z" + level + ":" + latCell + "," + lonCellMin + ".." + lonCellMax;
+        }
+    }
+
+    private static class CellKey {
+        private final int level;
+        private final long latCell;
+        private final long lonCell;
+
+        CellKey(int level, long latCell, long lonCell) {
+            this.level = level;
+            this.latCell = latCell;
+            this.lonCell = lonCell;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CellKey)) return false;
+            CellKey other = (CellKey) o;
+            return (level == other.level) && (latCell == other.latCell) && (lonCell == other.lonCell);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) ((level * 31 + latCell) * 31 + lonCell);
+        }
+    }
+
+    /** access ordered: least recently used cell first */
+    private final LinkedHashMap<CellKey, List<T>> mCells = new LinkedHashMap<CellKey, List<T>>(64, 0.75f, true);
+
+    private final int mMaxCellCount;
+
+    /** @param maxCellCount cells in excess of this are removed. Visible cells are never removed. */
+    public GeoCellCache(int maxCellCount) {
+        mMaxCellCount = maxCellCount;
+    }
+
+    public static long getCell(double degree, double cellSize) {
+        return (long) Math.floor(degree / cellSize);
+    }
+
+    /** @return cells inside visible that are not loaded yet, combined to rows. */
+    public synchronized List<CellRange> getMissingCells(int level, double cellSize, IGeoRectangle visible) {
+        List<CellRange> result = new ArrayList<CellRange>();
+        long lonCellMin = getCell(visible.getLogituedMin(), cellSize);
+        long lonCellMax = getCell(visible.getLogituedMax(), cellSize);
+        long latCellMax = getCell(visible.getLatitudeMax(), cellSize);
+        for (long latCell = getCell(visible.getLatitudeMin(), cellSize); latCell <= latCellMax; latCell++) {
+            long start = Long.MIN_VALUE;
+            for (long lonCell = lonCellMin; lonCell <= lonCellMax; lonCell++) {
+                boolean missing = !mCells.containsKey(new CellKey(level, latCell, lonCell));
+                if (missing && (start == Long.MIN_VALUE)) {
+                    start = lonCell;
+                } else if (!missing && (start != Long.MIN_VALUE)) {
+                    result.add(new CellRange(level, latCell, start, lonCell - 1));
+                    start = Long.MIN_VALUE;
+                }
+            }
+            if (start != Long.MIN_VALUE) result.add(new CellRange(level, latCell, start, lonCellMax));
+        }
+        return result;
+    }
+
+    /** all cells of range become loaded (and empty). To be called before adding the items of range. */
+    public synchronized GeoCellCache<T> setLoaded(CellRange range) {
+        for (long lonCell = range.lonCellMin; lonCell <= range.lonCellMax; lonCell++) {
+            mCells.put(new CellKey(range.level, range.latCell, lonCell), new ArrayList<T>());
+        }
+        return this;
+    }
+
+    /** adds an item at lat/lon. Ignored if lat/lon is outside of range. */
+    public synchronized boolean put(CellRange range, double cellSize, double lat, double lon, T item) {
+        long latCell = getCell(lat, cellSize);
+        long lonCell = getCell(lon, cellSize);
+        if ((latCell != range.latCell) || (lonCell < range.lonCellMin) || (lonCell > range.lonCellMax)) {
+            return false;
+        }
+        List<T> items = mCells.get(new CellKey(range.level, latCell, lonCell));
+        if (items == null) return false;
+        items.add(item);
+        return true;
+    }
+
+    /** @return items of all loaded cells inside visible. Removes least recently used invisible cells. */
+    public synchronized List<T> getItems(int level, double cellSize, IGeoRectangle visible) {
+        List<T> result = new ArrayList<T>();
+        long lonCellMin = getCell(visible.getLogituedMin(), cellSize);
+        long lonCellMax = getCell(visible.getLogituedMax(), cellSize);
+        long latCellMax = getCell(visible.getLatitudeMax(), cellSize);
+        int visibleCount = 0;
+        for (long latCell = getCell(visible.getLatitudeMin(), cellSize); latCell <= latCellMax; latCell++) {
+            for (long lonCell = lonCellMin; lonCell <= lonCellMax; lonCell++) {
+                List<T> items = mCells.get(new CellKey(level, latCell, lonCell));
+                if (items != null) {
+                    result.addAll(items);
+                    visibleCount++;
+                }
+            }
+        }
+
+        // the visible cells are the most recently used ones at the end
+        int removeCount = mCells.size() - Math.max(mMaxCellCount, visibleCount);
+        Iterator<Map.Entry<CellKey, List<T>>> iter = mCells.entrySet().iterator();
+        while ((removeCount > 0) && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+            removeCount--;
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return mCells.size();
+    }
+
+    public synchronized void clear() {
+        mCells.clear();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " cells]";
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In memory index of the positions of geotagged photos, so that the position or the
+ * bounding box of selected photos does not need a media db query.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class GeoIndex {
+    private static class Item {
+        final double lat;
+        final double lon;
+
+        Item(double lat, double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    /** id => position */
+    private final Map<Long, Item> mItems = new HashMap<Long, Item>();
+
+    /** add or update the position of photo id. */
+    public synchronized GeoIndex put(long id, double lat, double lon) {
+        if (!Double.isNaN(lat) && !Double.isNaN(lon)) {
+            mItems.put(id, new Item(lat, lon));
+        } else {
+            mItems.remove(id);
+        }
+        return this;
+    }
+
+    /** photo id has no more geo position */
+    public synchronized GeoIndex remove(long id) {
+        mItems.remove(id);
+        return this;
+    }
+
+    public synchronized void clear() {
+        mItems.clear();
+    }
+
+    /** number of geotagged photos */
+    public synchronized int size() {
+        return mItems.size();
+    }
+
+    /** @return {latitude, longitude} of photo id or null if unknown */
+    public synchronized double[] getPosition(long id) {
+        Item item = mItems.get(id);
+        return (item == null) ? null : new double[]{item.lat, item.lon};
+    }
+
+    /** @return smallest rectangle containing all photos or null if there are none */
+    public synchronized GeoRectangle getBounds() {
+        return getBounds(mItems.keySet());
+    }
+
+    /** @return smallest rectangle containing all photos with ids or null if none of them is geotagged */
+    public synchronized GeoRectangle getBounds(Iterable<Long> ids) {
+        GeoRectangle result = null;
+        for (Long id : ids) {
+            Item item = mItems.get(id);
+            if (item != null) {
+                if (result == null) result = new GeoRectangle();
+                result.inflate(item.lat, item.lon);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " photos]";
+    }
+}
@@ -43,8 +43,12 @@ public interface IDirectory {
 
     IDirectory getParent();
 
+    /** the returned list must not be modified directly. Use {@link #removeChild(IDirectory)} instead. */
     List<IDirectory> getChildren();
 
+    /** removes child from {@link #getChildren()} and updates the child index */
+    void removeChild(IDirectory child);
+
     IDirectory find(String path);
 
     void destroy();
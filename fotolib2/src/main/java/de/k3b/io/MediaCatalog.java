@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import de.k3b.FotoLibGlobal;
+
+/**
+ * Column oriented in memory copy of the filterable properties of all private and public photos
+ * so that the photos matching an {@link IGalleryFilter} can be counted without a database query.
+ *
+ * Every property is a primitive array indexed by row number.
+ * Folders are dictionary encoded. Tags are kept as one {@link BitSet} of rows per tag.
+ * Removed rows are dropped when they are more than half of all rows.
+ *
+ * The count is the same as for the sql generated by FotoSql/TagSql.filter2QueryEx
+ * except that {@link IGalleryFilter#getInAnyField()} is not supported.
+ * Like sqlite's LIKE only the case of ascii letters is ignored.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class MediaCatalog {
+    /** value of dateTaken if the photo has no date */
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    public static final byte VISIBILITY_PUBLIC = 1;
+    public static final byte VISIBILITY_PRIVATE = 2;
+
+    /** removed rows have this visibility */
+    private static final byte VISIBILITY_NONE = 0;
+
+    private static final int MIN_CAPACITY = 256;
+
+    /** number of used rows including removed rows */
+    private int mRowCount = 0;
+    private int mRemovedCount = 0;
+
+    private long[] mIds = new long[MIN_CAPACITY];
+    private long[] mDates = new long[MIN_CAPACITY];
+    private double[] mLatitudes = new double[MIN_CAPACITY];
+    private double[] mLongitudes = new double[MIN_CAPACITY];
+    private byte[] mRatings = new byte[MIN_CAPACITY];
+    private byte[] mVisibilities = new byte[MIN_CAPACITY];
+    private int[] mFolders = new int[MIN_CAPACITY];
+    private String[] mNames = new String[MIN_CAPACITY];
+    /** tag numbers of each row. null if the photo has no tags */
+    private int[][] mTags = new int[MIN_CAPACITY][];
+
+    private final HashMap<Long, Integer> mRowById = new HashMap<Long, Integer>();
+
+    /** folder dictionary: folder number => folder path including trailing "/" */
+    private final List<String> mFolderNames = new ArrayList<String>();
+    private final HashMap<String, Integer> mFolderNumbers = new HashMap<String, Integer>();
+
+    /** tag dictionary: normalized tag => tag number that is the index of mRowsByTag */
+    private final HashMap<String, Integer> mTagNumbers = new HashMap<String, Integer>();
+    private final List<BitSet> mRowsByTag = new ArrayList<BitSet>();
+
+    /** adds or replaces the properties of photo id.
+     * @param dateTaken {@link #NO_DATE} if unknown.
+     * @param latitude Double.NaN if unknown.
+     * @param visibility {@link #VISIBILITY_PUBLIC} or {@link #VISIBILITY_PRIVATE}
+     * @param tags null if the photo has no tags */
+    public synchronized void put(long id, String path, long dateTaken, double latitude, double longitude,
+                                 int rating, byte visibility, List<String> tags) {
+        Integer existing = mRowById.get(id);
+        int row;
+        if (existing != null) {
+            row = existing;
+            setTags(row, null);
+        } else {
+            row = mRowCount++;
+            ensureCapacity(mRowCount);
+            mRowById.put(id, row);
+        }
+
+        int pathSeperator = (path == null) ? -1 : path.lastIndexOf('/');
+        mIds[row] = id;
+        mDates[row] = dateTaken;
+        mLatitudes[row] = latitude;
+        mLongitudes[row] = longitude;
+        mRatings[row] = (byte) rating;
+        mVisibilities[row] = visibility;
+        mFolders[row] = getFolderNumber((path == null) ? "" : path.substring(0, pathSeperator + 1));
+        mNames[row] = (path == null) ? "" : path.substring(pathSeperator + 1);
+        setTags(row, tags);
+    }
+
+    /** @return true if id was in the catalog */
+    public synchronized boolean remove(long id) {
+        Integer row = mRowById.remove(id);
+        if (row == null) return false;
+        mVisibilities[row] = VISIBILITY_NONE;
+        setTags(row, null);
+        mRemovedCount++;
+        if ((mRemovedCount > MIN_CAPACITY) && (mRemovedCount * 2 > mRowCount)) compact();
+        return true;
+    }
+
+    /** moves all remaining rows to the front */
+    private void compact() {
+        int next = 0;
+        for (int row = 0; row < mRowCount; row++) {
+            if (mVisibilities[row] != VISIBILITY_NONE) {
+                if (next != row) {
+                    mIds[next] = mIds[row];
+                    mDates[next] = mDates[row];
+                    mLatitudes[next] = mLatitudes[row];
+                    mLongitudes[next] = mLongitudes[row];
+                    mRatings[next] = mRatings[row];
+                    mVisibilities[next] = mVisibilities[row];
+                    mFolders[next] = mFolders[row];
+                    mNames[next] = mNames[row];
+                    mTags[next] = mTags[row];
+                    mRowById.put(mIds[next], next);
+                }
+                next++;
+            }
+        }
+        Arrays.fill(mVisibilities, next, mRowCount, VISIBILITY_NONE);
+        Arrays.fill(mNames, next, mRowCount, null);
+        Arrays.fill(mTags, next, mRowCount, null);
+        mRowCount = next;
+        mRemovedCount = 0;
+
+        for (BitSet rows : mRowsByTag) {
+            rows.clear();
+        }
+        for (int row = 0; row < mRowCount; row++) {
+            if (mTags[row] != null) {
+                for (int tag : mTags[row]) {
+                    mRowsByTag.get(tag).set(row);
+                }
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return mRowById.size();
+    }
+
+    /** @return false if filter contains conditions that cannot be evaluated by the catalog */
+    public static boolean isSupported(IGalleryFilter filter) {
+        return (filter != null) && StringUtils.isNullOrEmpty(filter.getInAnyField());
+    }
+
+    /** @return number of matching photos */
+    public synchronized int count(IGalleryFilter filter) {
+        return count(getMatches(filter));
+    }
+
+    private int count(boolean[] matches) {
+        int result = 0;
+        for (int row = 0; row < mRowCount; row++) {
+            if (matches[row]) result++;
+        }
+        return result;
+    }
+
+    /** each condition is one loop over one column so the jit can keep the loops tight */
+    private boolean[] getMatches(IGalleryFilter filter) {
+        if (!isSupported(filter)) throw new IllegalArgumentException("MediaCatalog does not support " + filter);
+
+        final int rowCount = mRowCount;
+        boolean[] matches = new boolean[rowCount];
+        matchVisibility(matches, filter.getVisibility());
+
+        if (filter.isNonGeoOnly()) {
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] &= Double.isNaN(mLatitudes[row]) && Double.isNaN(mLongitudes[row]);
+            }
+        } else {
+            matchMin(matches, mLatitudes, filter.getLatitudeMin());
+            matchMax(matches, mLatitudes, filter.getLatitudeMax());
+            matchMin(matches, mLongitudes, filter.getLogituedMin());
+            matchMax(matches, mLongitudes, filter.getLogituedMax());
+        }
+
+        final long dateMin = filter.getDateMin();
+        if (dateMin != 0) {
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] &= (mDates[row] != NO_DATE) && (mDates[row] >= dateMin);
+            }
+        }
+        final long dateMax = filter.getDateMax();
+        if (dateMax != 0) {
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] &= (mDates[row] != NO_DATE) && (mDates[row] < dateMax);
+            }
+        }
+
+        final int ratingMin = filter.getRatingMin();
+        if (ratingMin > 0) {
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] &= (mRatings[row] >= ratingMin);
+            }
+        }
+
+        matchPath(matches, filter.getPath());
+        matchTags(matches, filter.getTagsAllIncluded(), filter.getTagsAllExcluded(), filter.isWithNoTags());
+        return matches;
+    }
+
+    private void matchVisibility(boolean[] matches, VISIBILITY visibility) {
+        if ((visibility == null) || (visibility == VISIBILITY.DEFAULT)) {
+            visibility = (FotoLibGlobal.visibilityShowPrivateByDefault)
+                    ? VISIBILITY.PRIVATE_PUBLIC
+                    : VISIBILITY.PUBLIC;
+        }
+
+        final int rowCount = mRowCount;
+        if (visibility == VISIBILITY.PRIVATE_PUBLIC) {
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] = (mVisibilities[row] != VISIBILITY_NONE);
+            }
+        } else {
+            final byte value = (visibility == VISIBILITY.PRIVATE) ? VISIBILITY_PRIVATE : VISIBILITY_PUBLIC;
+            for (int row = 0; row < rowCount; row++) {
+                matches[row] = (mVisibilities[row] == value);
+            }
+        }
+    }
+
+    /** same as sql "value >= min". NaN values never match */
+    private void matchMin(boolean[] matches, double[] values, double min) {
+        if (!Double.isNaN(min)) {
+            for (int row = 0; row < mRowCount; row++) {
+                matches[row] &= (values[row] >= min);
+            }
+        }
+    }
+
+    /** same as sql "value < max". NaN values never match */
+    private void matchMax(boolean[] matches, double[] values, double max) {
+        if (!Double.isNaN(max)) {
+            for (int row = 0; row < mRowCount; row++) {
+                matches[row] &= (values[row] < max);
+            }
+        }
+    }
+
+    /** same as sql "path like pattern". Pattern is evaluated once per folder if possible */
+    private void matchPath(boolean[] matches, String pattern) {
+        if (StringUtils.isNullOrEmpty(pattern)) return;
+
+        // 1: all files of folder match; 0: no file matches; -1: must be checked per file
+        final int folderCount = mFolderNames.size();
+        byte[] folderMatches = new byte[folderCount];
+        int wildcardPos = indexOfWildcard(pattern);
+        boolean isPrefixPattern = (wildcardPos == pattern.length() - 1) && (pattern.charAt(wildcardPos) == '%');
+        for (int folder = 0; folder < folderCount; folder++) {
+            String folderName = mFolderNames.get(folder);
+            if ((wildcardPos < 0) || (folderName.length() < wildcardPos)) {
+                folderMatches[folder] = -1;
+            } else if (!isLike(folderName.substring(0, wildcardPos), pattern.substring(0, wildcardPos))) {
+                folderMatches[folder] = 0;
+            } else {
+                folderMatches[folder] = (byte) (isPrefixPattern ? 1 : -1);
+            }
+        }
+
+        for (int row = 0; row < mRowCount; row++) {
+            if (matches[row]) {
+                byte folderMatch = folderMatches[mFolders[row]];
+                matches[row] = (folderMatch == 1) || ((folderMatch == -1)
+                        && isLike(mFolderNames.get(mFolders[row]) + mNames[row], pattern));
+            }
+        }
+    }
+
+    private static int indexOfWildcard(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if ((c == '%') || (c == '_')) return i;
+        }
+        return -1;
+    }
+
+    /** sql like: "%" any number of chars, "_" one char, ignoring case of ascii letters */
+    protected static boolean isLike(String value, String pattern) {
+        return isLike(value, 0, pattern, 0);
+    }
+
+    private static boolean isLike(String value, int valuePos, String pattern, int patternPos) {
+        while (patternPos < pattern.length()) {
+            char p = pattern.charAt(patternPos);
+            if (p == '%') {
+                // collapse "%%" and try every possible remainder
+                while ((patternPos < pattern.length()) && (pattern.charAt(patternPos) == '%')) patternPos++;
+                if (patternPos == pattern.length()) return true;
+                for (int start = valuePos; start < value.length(); start++) {
+                    if (isLike(value, start, pattern, patternPos)) return true;
+                }
+                return false;
+            }
+            if (valuePos >= value.length()) return false;
+            char v = value.charAt(valuePos);
+            if ((p != '_') && (StringUtils.toLowerAscii(p) != StringUtils.toLowerAscii(v))) return false;
+            valuePos++;
+            patternPos++;
+        }
+        return valuePos == value.length();
+    }
+
+    /** same logic as TagSql.filter2QueryEx */
+    private void matchTags(boolean[] matches, List<String> includes, List<String> excludes, boolean withNoTags) {
+        includes = ListUtils.emptyAsNull(includes);
+        excludes = ListUtils.emptyAsNull(excludes);
+        final int rowCount = mRowCount;
+
+        if ((includes == null) && (excludes == null)) {
+            if (withNoTags) {
+                for (int row = 0; row < rowCount; row++) {
+                    matches[row] &= (mTags[row] == null);
+                }
+            }
+            return;
+        }
+
+        if (includes != null) {
+            BitSet allIncluded = null;
+            for (String tag : includes) {
+                BitSet rows = getRowsWithTag(tag);
+                if (rows == null) {
+                    allIncluded = new BitSet();
+                    break;
+                }
+                if (allIncluded == null) {
+                    allIncluded = (BitSet) rows.clone();
+                } else {
+                    allIncluded.and(rows);
+                }
+            }
+            if (allIncluded != null) {
+                for (int row = 0; row < rowCount; row++) {
+                    matches[row] &= allIncluded.get(row) || (withNoTags && (mTags[row] == null));
+                }
+            }
+        }
+
+        if (excludes != null) {
+            for (String tag : excludes) {
+                if (!StringUtils.isNullOrEmpty(tag)) {
+                    BitSet rows = getRowsWithTag(tag);
+                    for (int row = 0; row < rowCount; row++) {
+                        boolean hasNoTags = (mTags[row] == null);
+                        matches[row] &= (withNoTags && hasNoTags)
+                                || (!hasNoTags && ((rows == null) || !rows.get(row)));
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return null if no photo has the tag */
+    private BitSet getRowsWithTag(String tag) {
+        Integer number = mTagNumbers.get(normalizeTag(tag));
+        return (number == null) ? null : mRowsByTag.get(number);
+    }
+
+    private void setTags(int row, List<String> tags) {
+        int[] oldTags = mTags[row];
+        if (oldTags != null) {
+            for (int tag : oldTags) {
+                mRowsByTag.get(tag).clear(row);
+            }
+        }
+
+        int[] newTags = null;
+        if (tags != null) {
+            newTags = new int[tags.size()];
+            int next = 0;
+            for (String tag : tags) {
+                if (!StringUtils.isNullOrEmpty(tag)) {
+                    int number = getTagNumber(tag);
+                    mRowsByTag.get(number).set(row);
+                    newTags[next++] = number;
+                }
+            }
+            if (next < newTags.length) newTags = Arrays.copyOf(newTags, next);
+        }
+        mTags[row] = newTags;
+    }
+
+    private int getTagNumber(String tag) {
+        String key = normalizeTag(tag);
+        Integer result = mTagNumbers.get(key);
+        if (result == null) {
+            result = mRowsByTag.size();
+            mTagNumbers.put(key, result);
+            mRowsByTag.add(new BitSet());
+        }
+        return result;
+    }
+
+    /** same as TagConverter.asDbString and case insensitive sql like */
+    private static String normalizeTag(String tag) {
+        return StringUtils.toLowerAscii(tag.replace(",", "").replace(" ", ""));
+    }
+
+    private int getFolderNumber(String folder) {
+        Integer result = mFolderNumbers.get(folder);
+        if (result == null) {
+            result = mFolderNames.size();
+            mFolderNumbers.put(folder, result);
+            mFolderNames.add(folder);
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int rowCount) {
+        if (rowCount > mIds.length) {
+            int capacity = Math.max(rowCount, mIds.length * 2);
+            mIds = Arrays.copyOf(mIds, capacity);
+            mDates = Arrays.copyOf(mDates, capacity);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mRatings = Arrays.copyOf(mRatings, capacity);
+            mVisibilities = Arrays.copyOf(mVisibilities, capacity);
+            mFolders = Arrays.copyOf(mFolders, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mTags = Arrays.copyOf(mTags, capacity);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + size() + " photos, " + mFolderNames.size()
+                + " folders, " + mTagNumbers.size() + " tags]";
+    }
+}
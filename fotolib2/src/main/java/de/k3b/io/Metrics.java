@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight registry of counters, histograms and timers to measure throughput and latency
+ * of the fotolib2 operations. Always on: updating costs only a few synchronized long additions.
+ *
+ * Usage:
+ *
+ *     long start = Metrics.start();
+ *     ...
+ *     Metrics.getInstance().timer(Metrics.FILE_COPY).stop(start, bytesCopied);
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class Metrics {
+    // timers of fotolib2 and app. The units of the throughput are given in brackets.
+    public static final String EXIF_LOAD = "exif.load";
+    public static final String EXIF_SAVE = "exif.save";
+    public static final String XMP_LOAD = "xmp.load";
+    public static final String XMP_SAVE = "xmp.save";
+    /** [bytes] */
+    public static final String FILE_COPY = "file.copy";
+    /** [updated rows] */
+    public static final String DB_UPDATE = "db.update";
+    /** [files] */
+    public static final String SCAN = "scan";
+
+    private static final Metrics sInstance = new Metrics();
+
+    private final Map<String, Counter> counters = new TreeMap<String, Counter>();
+    private final Map<String, Histogram> histograms = new TreeMap<String, Histogram>();
+
+    public static Metrics getInstance() {
+        return sInstance;
+    }
+
+    /** @return start time for {@link Timer#stop(long)} */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /** @return the counter with this name. Created if it does not exist yet. */
+    public synchronized Counter counter(String name) {
+        Counter result = counters.get(name);
+        if (result == null) {
+            result = new Counter();
+            counters.put(name, result);
+        }
+        return result;
+    }
+
+    /** @return the histogram with this name. Created if it does not exist yet. */
+    public synchronized Histogram histogram(String name) {
+        Histogram result = histograms.get(name);
+        if (result == null) {
+            result = new Histogram();
+            histograms.put(name, result);
+        }
+        return result;
+    }
+
+    /** @return the timer with this name. Created if it does not exist yet. */
+    public synchronized Timer timer(String name) {
+        Histogram result = histograms.get(name);
+        if (!(result instanceof Timer)) {
+            result = new Timer();
+            histograms.put(name, result);
+        }
+        return (Timer) result;
+    }
+
+    public synchronized void reset() {
+        counters.clear();
+        histograms.clear();
+    }
+
+    /** @return current values of all metrics, one per line, sorted by name */
+    public synchronized String getSnapshot(String lineDelimiter) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            result.append(counter.getKey()).append(": ").append(counter.getValue()).append(lineDelimiter);
+        }
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            result.append(histogram.getKey()).append(": ").append(histogram.getValue()).append(lineDelimiter);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot("\n");
+    }
+
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(get());
+        }
+    }
+
+    /** Distribution of values in power-of-two buckets. Percentiles are the upper bound of their bucket. */
+    public static class Histogram {
+        /** bucket i contains the values with i significant bits */
+        private final long[] buckets = new long[65];
+        private long count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = 0;
+
+        /** negative values are counted as 0 */
+        public synchronized void update(long value) {
+            if (value < 0) value = 0;
+            buckets[64 - Long.numberOfLeadingZeros(value)]++;
+            count++;
+            sum += value;
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getSum() {
+            return sum;
+        }
+
+        public synchronized long getMin() {
+            return (count == 0) ? 0 : min;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        public synchronized double getMean() {
+            return (count == 0) ? 0 : ((double) sum) / count;
+        }
+
+        /** @return value that is not exceeded by percent (0..100) of all values */
+        public synchronized long getPercentile(int percent) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (count * percent + 99) / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    long upperBound = (i >= 63) ? Long.MAX_VALUE : ((1L << i) - 1);
+                    return Math.min(max, upperBound);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT, "n=%d mean=%.1f p50<=%d p95<=%d max=%d",
+                    count, getMean(), getPercentile(50), getPercentile(95), max);
+        }
+    }
+
+    /** Histogram of durations in microseconds plus the throughput of processed units (files, bytes, ...) */
+    public static class Timer extends Histogram {
+        private final AtomicLong units = new AtomicLong();
+
+        /** adds the duration since start that was returned by {@link Metrics#start()} */
+        public void stop(long start) {
+            update((System.nanoTime() - start) / 1000);
+        }
+
+        /** adds the duration since start and the number of processed units */
+        public void stop(long start, long processedUnits) {
+            stop(start);
+            units.addAndGet(processedUnits);
+        }
+
+        public long getUnits() {
+            return units.get();
+        }
+
+        /** @return processed units per second of measured time. If several threads are measured this is the average of one thread. */
+        public double getUnitsPerSecond() {
+            long micros = getSum();
+            return (micros <= 0) ? 0 : getUnits() * 1000000.0 / micros;
+        }
+
+        @Override
+        public String toString() {
+            String result = String.format(Locale.ROOT, "n=%d mean=%.1fms p50<=%.1fms p95<=%.1fms max=%.1fms",
+                    getCount(), getMean() / 1000, getPercentile(50) / 1000.0, getPercentile(95) / 1000.0, getMax() / 1000.0);
+            if (getUnits() > 0) {
+                result += String.format(Locale.ROOT, " %.1f/sec", getUnitsPerSecond());
+            }
+            return result;
+        }
+    }
+}
@@ -24,7 +24,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.k3b.FotoLibGlobal;
 
@@ -39,6 +41,11 @@ public class OSDirectory implements IDirectory {
     private File mCurrent = null;
     private List<IDirectory> mChilden = null;
 
+    /** child.relPath => child. null if not created yet.
+     * mChilden must be modified via addChild or removeChild so that the index stays valid. */
+    private Map<String, IDirectory> mChildIndex = null;
+    private int mChildIndexSize = 0;
+
     private OSDirectory mParent = null;
 
     private int mDirFlags = DIR_FLAG_NONE;
@@ -95,6 +102,7 @@ public class OSDirectory implements IDirectory {
     @Override
     public void rename(String oldFolderName, String newFolderName) {
         this.mCurrent = new File(mCurrent.getParentFile(), newFolderName);
+        if (mParent != null) mParent.mChildIndex = null;
     }
 
     @Override
@@ -168,11 +176,61 @@ public class OSDirectory implements IDirectory {
 
         String name = file.getName();
         List<IDirectory> children = parentDir.getChildren();
-        OSDirectory result = (OSDirectory) findChildByRelPath(children, name);
+        OSDirectory result = (OSDirectory) ((parentDir instanceof OSDirectory)
+                ? ((OSDirectory) parentDir).findChild(name)
+                : findChildByRelPath(children, name));
 
         if (result == null) {
             result = root.createOsDirectory(file, (OSDirectory) parentDir, null);
-            children.add(result);
+            if (parentDir instanceof OSDirectory) {
+                ((OSDirectory) parentDir).addChild(result);
+            } else {
+                children.add(result);
+            }
+        }
+        return result;
+    }
+
+    private void addChild(IDirectory child) {
+        List<IDirectory> children = getChildren();
+        children.add(child);
+        if ((mChildIndex != null) && (mChildIndexSize + 1 == children.size())) {
+            if (!mChildIndex.containsKey(child.getRelPath())) mChildIndex.put(child.getRelPath(), child);
+            mChildIndexSize++;
+        }
+    }
+
+    @Override
+    public void removeChild(IDirectory child) {
+        if ((mChilden != null) && mChilden.remove(child)) {
+            mChildIndex = null;
+        }
+    }
+
+    /**
+     * Same as {@link #findChildByRelPath(List, String)} but uses a hash index if there are more than
+     * {@link Directory#CHILD_INDEX_THRESHOLD} children.
+     */
+    public IDirectory findChild(String name) {
+        List<IDirectory> children = getChildren();
+        if ((children == null) || (name == null)) return null;
+        if (children.size() <= Directory.CHILD_INDEX_THRESHOLD) return findChildByRelPath(children, name);
+
+        if ((mChildIndex == null) || (mChildIndexSize != children.size())) {
+            // (re-)create because children were loaded or renamed
+            mChildIndex = new HashMap<String, IDirectory>(children.size() * 2);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                // reverse so that the first child wins like in findChildByRelPath
+                IDirectory child = children.get(i);
+                mChildIndex.put(child.getRelPath(), child);
+            }
+            mChildIndexSize = children.size();
+        }
+        IDirectory result = mChildIndex.get(name);
+        if ((result != null) && !name.equals(result.getRelPath())) {
+            // child was renamed
+            mChildIndex = null;
+            result = findChildByRelPath(children, name);
         }
         return result;
     }
@@ -200,6 +258,7 @@ public class OSDirectory implements IDirectory {
     public void destroy() {
         destroy(mChilden);
         mChilden = null;
+        mChildIndex = null;
         mCurrent = null;
         mParent = null;
     }
@@ -266,16 +325,15 @@ public class OSDirectory implements IDirectory {
 
     private OSDirectory addChildFolder(String newCildFolderName, List<IDirectory> grandChilden) {
         OSDirectory result = null;
-        List<IDirectory> children = this.getChildren();
         File newRelativeChild = new File(newCildFolderName);
         if (!newRelativeChild.isAbsolute()) {
-            result = (OSDirectory) findChildByRelPath(children, newCildFolderName);
+            result = (OSDirectory) findChild(newCildFolderName);
 
             if (result == null) {
                 File newChildFile = FileUtils.tryGetCanonicalFile(new File(mCurrent, newCildFolderName), null);
                 result = createOsDirectory(newChildFile, this, grandChilden);
                 if (result != null) {
-                    children.add(result);
+                    addChild(result);
                 }
             }
         }
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.k3b.FotoLibGlobal;
+
+/**
+ * Persistent thumbnail store that appends all thumbnails to a few big segment files
+ * instead of creating one file per thumbnail.
+ *
+ * The index is a memory mapped open addressing hash table keyed by the hash of the image path.
+ * The segments contain the path in front of every thumbnail so that a hash collision is detected on read.
+ * An entry is only valid if lastModified and fileSize of the image did not change.
+ * Replaced thumbnails become garbage that is removed by {@link #compact(double)}.
+ * Entries of deleted images are removed by {@link #removeDeletedImages()}.
+ * If the store becomes bigger than maxBytes the oldest segment is removed.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class PackedThumbnailStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FotoLibGlobal.LOG_TAG);
+
+    private static final String INDEX_NAME = "thumbs.idx";
+    private static final String SEGMENT_PREFIX = "thumbs-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x6B336274; // "k3bt"
+    private static final int VERSION = 2;
+
+    // index header: magic, version, capacity, used slots (including removed)
+    private static final int HEADER_SIZE = 16;
+    private static final int POS_CAPACITY = 8;
+    private static final int POS_USED = 12;
+
+    // slot: pathHash, lastModified, fileSize, offset, segment, length
+    private static final int SLOT_SIZE = 40;
+    private static final int SLOT_LAST_MODIFIED = 8;
+    private static final int SLOT_FILE_SIZE = 16;
+    private static final int SLOT_OFFSET = 24;
+    private static final int SLOT_SEGMENT = 32;
+    private static final int SLOT_LENGTH = 36;
+
+    private static final long HASH_EMPTY = 0;
+    private static final long HASH_REMOVED = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // segment record: path length, path, thumbnail
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private final long mSegmentSize;
+
+    private MappedByteBuffer mIndex;
+    private int mCapacity;
+    private int mUsed;
+    private int mCount;
+
+    /** segment number => total bytes in segment file */
+    private final TreeMap<Integer, Long> mSegmentSizes = new TreeMap<Integer, Long>();
+    /** segment number => bytes of thumbnails that are still referenced by the index */
+    private final Map<Integer, Long> mSegmentLiveBytes = new HashMap<Integer, Long>();
+    /** segment number => open file */
+    private final Map<Integer, RandomAccessFile> mOpenSegments = new HashMap<Integer, RandomAccessFile>();
+
+    /** after {@link #close()} the store behaves as if empty so that readers that still have a reference do not fail */
+    private boolean mClosed = false;
+
+    public PackedThumbnailStore(File dir, long maxBytes) throws IOException {
+        this(dir, maxBytes, DEFAULT_SEGMENT_SIZE);
+    }
+
+    protected PackedThumbnailStore(File dir, long maxBytes, long segmentSize) throws IOException {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mSegmentSize = segmentSize;
+        dir.mkdirs();
+        open();
+    }
+
+    /** @return the thumbnail of the image or null if not in store or the image has changed since */
+    public synchronized byte[] get(String path, long lastModified, long fileSize) throws IOException {
+        if (mClosed) return null;
+        int slot = findSlot(getHash(path));
+        if ((slot < 0) || (getSlotLong(slot, SLOT_LAST_MODIFIED) != lastModified)
+                || (getSlotLong(slot, SLOT_FILE_SIZE) != fileSize)) {
+            return null;
+        }
+        byte[] record = read(getSlotInt(slot, SLOT_SEGMENT), getSlotLong(slot, SLOT_OFFSET), getSlotInt(slot, SLOT_LENGTH));
+        byte[] pathBytes = path.getBytes(UTF8);
+        int thumbnailStart = RECORD_HEADER_SIZE + pathBytes.length;
+        if ((record.length < thumbnailStart) || (ByteBuffer.wrap(record).getInt(0) != pathBytes.length)
+                || !Arrays.equals(pathBytes, Arrays.copyOfRange(record, RECORD_HEADER_SIZE, thumbnailStart))) {
+            // other path with the same hash
+            return null;
+        }
+        return Arrays.copyOfRange(record, thumbnailStart, record.length);
+    }
+
+    /** adds or replaces the thumbnail of the image */
+    public synchronized void put(String path, long lastModified, long fileSize, byte[] thumbnail) throws IOException {
+        byte[] pathBytes = path.getBytes(UTF8);
+        byte[] record = ByteBuffer.allocate(RECORD_HEADER_SIZE + pathBytes.length + thumbnail.length)
+                .putInt(pathBytes.length).put(pathBytes).put(thumbnail).array();
+        if (mClosed || (record.length > mSegmentSize)) return;
+
+        long hash = getHash(path);
+        int segment = getAppendSegment(record.length);
+        long offset = append(segment, record);
+
+        int slot = findSlot(hash);
+        if (slot >= 0) {
+            addLiveBytes(getSlotInt(slot, SLOT_SEGMENT), -getSlotInt(slot, SLOT_LENGTH));
+        } else {
+            slot = findFreeSlot(hash);
+            if (getSlotLong(slot, 0) == HASH_EMPTY) setUsed(mUsed + 1);
+            mCount++;
+        }
+        setSlot(slot, hash, lastModified, fileSize, offset, segment, record.length);
+        addLiveBytes(segment, record.length);
+
+        if (mUsed * 10 > mCapacity * 7) {
+            // mostly removed slots: rehash without growing
+            resize((mCount * 2 > mCapacity) ? mCapacity * 2 : mCapacity);
+        }
+        removeOldSegmentsIfTooBig();
+    }
+
+    /** @return true if there was an entry for path */
+    public synchronized boolean remove(String path) {
+        if (mClosed) return false;
+        int slot = findSlot(getHash(path));
+        if (slot < 0) return false;
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * removes the entries of images that do not exist any more.
+     * Their thumbnails become garbage that is removed by {@link #compact(double)}.
+     * @return number of removed entries
+     */
+    public synchronized int removeDeletedImages() throws IOException {
+        if (mClosed) return 0;
+        int result = 0;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            long hash = getSlotLong(slot, 0);
+            if ((hash != HASH_EMPTY) && (hash != HASH_REMOVED) && !new File(readPath(slot)).exists()) {
+                removeSlot(slot);
+                result++;
+            }
+        }
+        if (result > 0) mIndex.force();
+        return result;
+    }
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    /** @return number of bytes in all segment files */
+    public synchronized long getTotalBytes() {
+        long result = 0;
+        for (Long size : mSegmentSizes.values()) {
+            result += size;
+        }
+        return result;
+    }
+
+    /**
+     * copies the remaining thumbnails of segments that contain more than maxGarbageRatio unused bytes
+     * to the current segment and removes the old segment file.
+     * @return number of removed segments
+     */
+    public synchronized int compact(double maxGarbageRatio) throws IOException {
+        if (mClosed) return 0;
+        int result = 0;
+        Integer current = mSegmentSizes.isEmpty() ? null : mSegmentSizes.lastKey();
+        for (Integer segment : mSegmentSizes.keySet().toArray(new Integer[mSegmentSizes.size()])) {
+            long size = mSegmentSizes.get(segment);
+            long live = getLiveBytes(segment);
+            if ((!segment.equals(current)) && (size > 0) && ((size - live) > (size * maxGarbageRatio))) {
+                moveSegment(segment);
+                result++;
+                current = mSegmentSizes.lastKey();
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() throws IOException {
+        closeSegments();
+        for (Integer segment : mSegmentSizes.keySet()) {
+            getSegmentFile(segment).delete();
+        }
+        mIndex = null;
+        new File(mDir, INDEX_NAME).delete();
+        open();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) return;
+        mClosed = true;
+        if (mIndex != null) mIndex.force();
+        closeSegments();
+    }
+
+    /************************** index *********************/
+
+    private void open() throws IOException {
+        mSegmentSizes.clear();
+        mSegmentLiveBytes.clear();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        int segment = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                        mSegmentSizes.put(segment, file.length());
+                    } catch (NumberFormatException ignore) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+
+        File indexFile = new File(mDir, INDEX_NAME);
+        if (indexFile.exists()) {
+            mIndex = map(indexFile, indexFile.length());
+            if ((mIndex.capacity() < HEADER_SIZE) || (mIndex.getInt(0) != MAGIC) || (mIndex.getInt(4) != VERSION)
+                    || (mIndex.capacity() != HEADER_SIZE + (long) mIndex.getInt(POS_CAPACITY) * SLOT_SIZE)) {
+                logger.warn("PackedThumbnailStore: invalid index " + indexFile + " is recreated");
+                mIndex = null;
+            }
+        }
+        if (mIndex == null) {
+            mIndex = createIndex(indexFile, INITIAL_CAPACITY);
+        }
+        mCapacity = mIndex.getInt(POS_CAPACITY);
+        mUsed = mIndex.getInt(POS_USED);
+
+        // count entries and remove entries that point to missing data (i.e. after a crash)
+        mCount = 0;
+        for (int slot = 0; slot < mCapacity; slot++) {
+            long hash = getSlotLong(slot, 0);
+            if ((hash != HASH_EMPTY) && (hash != HASH_REMOVED)) {
+                int segment = getSlotInt(slot, SLOT_SEGMENT);
+                int length = getSlotInt(slot, SLOT_LENGTH);
+                Long segmentSize = mSegmentSizes.get(segment);
+                if ((segmentSize == null) || (getSlotLong(slot, SLOT_OFFSET) + length > segmentSize)) {
+                    mIndex.putLong(getSlotPosition(slot), HASH_REMOVED);
+                } else {
+                    addLiveBytes(segment, length);
+                    mCount++;
+                }
+            }
+        }
+    }
+
+    private static MappedByteBuffer createIndex(File indexFile, int capacity) throws IOException {
+        indexFile.delete();
+        MappedByteBuffer result = map(indexFile, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        result.putInt(0, MAGIC);
+        result.putInt(4, VERSION);
+        result.putInt(POS_CAPACITY, capacity);
+        result.putInt(POS_USED, 0);
+        return result;
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void resize(int newCapacity) throws IOException {
+        File tempFile = new File(mDir, INDEX_NAME + ".tmp");
+        MappedByteBuffer oldIndex = mIndex;
+        int oldCapacity = mCapacity;
+
+        mIndex = createIndex(tempFile, newCapacity);
+        mCapacity = newCapacity;
+        mUsed = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int oldPos = HEADER_SIZE + slot * SLOT_SIZE;
+            long hash = oldIndex.getLong(oldPos);
+            if ((hash != HASH_EMPTY) && (hash != HASH_REMOVED)) {
+                int newSlot = findFreeSlot(hash);
+                setSlot(newSlot, hash, oldIndex.getLong(oldPos + SLOT_LAST_MODIFIED),
+                        oldIndex.getLong(oldPos + SLOT_FILE_SIZE), oldIndex.getLong(oldPos + SLOT_OFFSET),
+                        oldIndex.getInt(oldPos + SLOT_SEGMENT), oldIndex.getInt(oldPos + SLOT_LENGTH));
+                mUsed++;
+            }
+        }
+        setUsed(mUsed);
+        mIndex.force();
+
+        File indexFile = new File(mDir, INDEX_NAME);
+        indexFile.delete();
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException("PackedThumbnailStore: cannot rename " + tempFile + " to " + indexFile);
+        }
+    }
+
+    /** @return slot of hash or -1 if not found */
+    private int findSlot(long hash) {
+        int slot = getStartSlot(hash);
+        for (int i = 0; i < mCapacity; i++) {
+            long slotHash = getSlotLong(slot, 0);
+            if (slotHash == HASH_EMPTY) return -1;
+            if (slotHash == hash) return slot;
+            slot = (slot + 1) % mCapacity;
+        }
+        return -1;
+    }
+
+    /** @return first empty or removed slot for hash. hash must not be in index. */
+    private int findFreeSlot(long hash) {
+        int slot = getStartSlot(hash);
+        while (true) {
+            long slotHash = getSlotLong(slot, 0);
+            if ((slotHash == HASH_EMPTY) || (slotHash == HASH_REMOVED)) return slot;
+            slot = (slot + 1) % mCapacity;
+        }
+    }
+
+    private int getStartSlot(long hash) {
+        return (int) ((hash ^ (hash >>> 32)) & 0x7fffffff) % mCapacity;
+    }
+
+    private void setSlot(int slot, long hash, long lastModified, long fileSize, long offset, int segment, int length) {
+        int pos = getSlotPosition(slot);
+        // hash is written last so that a partly written slot is never found
+        mIndex.putLong(pos + SLOT_LAST_MODIFIED, lastModified);
+        mIndex.putLong(pos + SLOT_FILE_SIZE, fileSize);
+        mIndex.putLong(pos + SLOT_OFFSET, offset);
+        mIndex.putInt(pos + SLOT_SEGMENT, segment);
+        mIndex.putInt(pos + SLOT_LENGTH, length);
+        mIndex.putLong(pos, hash);
+    }
+
+    private void removeSlot(int slot) {
+        addLiveBytes(getSlotInt(slot, SLOT_SEGMENT), -getSlotInt(slot, SLOT_LENGTH));
+        mIndex.putLong(getSlotPosition(slot), HASH_REMOVED);
+        mCount--;
+    }
+
+    private void setUsed(int used) {
+        mUsed = used;
+        mIndex.putInt(POS_USED, used);
+    }
+
+    private static int getSlotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private long getSlotLong(int slot, int field) {
+        return mIndex.getLong(getSlotPosition(slot) + field);
+    }
+
+    private int getSlotInt(int slot, int field) {
+        return mIndex.getInt(getSlotPosition(slot) + field);
+    }
+
+    /** 64 bit FNV-1a hash of path. Never returns one of the reserved HASH_XXX values */
+    protected static long getHash(String path) {
+        long result = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            result ^= path.charAt(i);
+            result *= 0x100000001b3L;
+        }
+        if ((result == HASH_EMPTY) || (result == HASH_REMOVED)) result = 1;
+        return result;
+    }
+
+    /************************** segments *********************/
+
+    private int getAppendSegment(int length) {
+        if (mSegmentSizes.isEmpty()) return 0;
+        int current = mSegmentSizes.lastKey();
+        return (mSegmentSizes.get(current) + length <= mSegmentSize) ? current : current + 1;
+    }
+
+    /** @return offset of the data in segment */
+    private long append(int segment, byte[] data) throws IOException {
+        Long offset = mSegmentSizes.get(segment);
+        if (offset == null) offset = 0L;
+        FileChannel channel = getSegment(segment).getChannel();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        mSegmentSizes.put(segment, offset + data.length);
+        return offset;
+    }
+
+    /** @return the image path in front of the thumbnail of slot */
+    private String readPath(int slot) throws IOException {
+        int segment = getSlotInt(slot, SLOT_SEGMENT);
+        long offset = getSlotLong(slot, SLOT_OFFSET);
+        int pathLength = ByteBuffer.wrap(read(segment, offset, RECORD_HEADER_SIZE)).getInt();
+        if ((pathLength < 0) || (RECORD_HEADER_SIZE + pathLength > getSlotInt(slot, SLOT_LENGTH))) {
+            throw new IOException("PackedThumbnailStore: corrupt record in segment " + segment + " at " + offset);
+        }
+        return new String(read(segment, offset + RECORD_HEADER_SIZE, pathLength), UTF8);
+    }
+
+    private byte[] read(int segment, long offset, int length) throws IOException {
+        FileChannel channel = getSegment(segment).getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("PackedThumbnailStore: unexpected end of segment " + segment);
+            }
+        }
+        return buffer.array();
+    }
+
+    private RandomAccessFile getSegment(int segment) throws IOException {
+        RandomAccessFile result = mOpenSegments.get(segment);
+        if (result == null) {
+            result = new RandomAccessFile(getSegmentFile(segment), "rw");
+            mOpenSegments.put(segment, result);
+        }
+        return result;
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(mDir, SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    /** removes the oldest segments until the store is not bigger than mMaxBytes */
+    private void removeOldSegmentsIfTooBig() {
+        while ((mSegmentSizes.size() > 1) && (getTotalBytes() > mMaxBytes)) {
+            int oldest = mSegmentSizes.firstKey();
+            for (int slot = 0; slot < mCapacity; slot++) {
+                long hash = getSlotLong(slot, 0);
+                if ((hash != HASH_EMPTY) && (hash != HASH_REMOVED) && (getSlotInt(slot, SLOT_SEGMENT) == oldest)) {
+                    removeSlot(slot);
+                }
+            }
+            deleteSegment(oldest);
+        }
+    }
+
+    /** copies all live thumbnails of segment to the current segment */
+    private void moveSegment(int segment) throws IOException {
+        for (int slot = 0; slot < mCapacity; slot++) {
+            long hash = getSlotLong(slot, 0);
+            if ((hash != HASH_EMPTY) && (hash != HASH_REMOVED) && (getSlotInt(slot, SLOT_SEGMENT) == segment)) {
+                int length = getSlotInt(slot, SLOT_LENGTH);
+                byte[] data = read(segment, getSlotLong(slot, SLOT_OFFSET), length);
+                int newSegment = getAppendSegment(length);
+                long offset = append(newSegment, data);
+                setSlot(slot, hash, getSlotLong(slot, SLOT_LAST_MODIFIED), getSlotLong(slot, SLOT_FILE_SIZE),
+                        offset, newSegment, length);
+                addLiveBytes(newSegment, length);
+            }
+        }
+        mIndex.force();
+        deleteSegment(segment);
+    }
+
+    private void deleteSegment(int segment) {
+        RandomAccessFile file = mOpenSegments.remove(segment);
+        FileUtils.close(file, segment);
+        getSegmentFile(segment).delete();
+        mSegmentSizes.remove(segment);
+        mSegmentLiveBytes.remove(segment);
+    }
+
+    private void closeSegments() {
+        for (Map.Entry<Integer, RandomAccessFile> entry : mOpenSegments.entrySet()) {
+            FileUtils.close(entry.getValue(), entry.getKey());
+        }
+        mOpenSegments.clear();
+    }
+
+    private long getLiveBytes(int segment) {
+        Long result = mSegmentLiveBytes.get(segment);
+        return (result == null) ? 0 : result;
+    }
+
+    private void addLiveBytes(int segment, long delta) {
+        mSegmentLiveBytes.put(segment, getLiveBytes(segment) + delta);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + mDir + ": " + size() + " thumbnails, "
+                + mSegmentSizes.size() + " segments, " + (getTotalBytes() / 1024) + " KB]";
+    }
+}
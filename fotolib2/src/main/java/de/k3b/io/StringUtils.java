@@ -100,6 +100,20 @@ public class StringUtils {
         return (0 == length(str));
     }
 
+    /** sqlite's LIKE ignores only the case of 'A'..'Z' */
+    public static String toLowerAscii(CharSequence value) {
+        final int len = value.length();
+        char[] result = new char[len];
+        for (int i = 0; i < len; i++) {
+            result[i] = toLowerAscii(value.charAt(i));
+        }
+        return new String(result);
+    }
+
+    public static char toLowerAscii(char c) {
+        return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+    }
+
     public static String merge(String lhs, String rhs) {
         int lhsLength = lhs.length();
         int rhsLength = rhs.length();
@@ -35,9 +35,11 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
@@ -51,6 +53,8 @@ import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import de.k3b.io.Metrics;
+
 /**
  * This is a class for reading and writing Exif tags in a JPEG file.
  * It is based on ExifInterface of android-6 version.
@@ -1420,6 +1424,7 @@ public class ExifInterface {
      * determine whether the image data format is JPEG or not.
      */
     private void loadAttributes(InputStream in) throws IOException {
+        long start = Metrics.start();
         try {
             // Initialize mAttributes.
             for (int i = 0; i < EXIF_TAGS.length; ++i) {
@@ -1432,6 +1437,7 @@ public class ExifInterface {
             logWarn( "Invalid image.", e);
             validJpgExifFormat = false;
         } finally {
+            Metrics.getInstance().timer(Metrics.EXIF_LOAD).stop(start);
             if (DEBUG_INTERNAL) {
                 logDebug(this.toString());
             }
@@ -1592,11 +1598,12 @@ public class ExifInterface {
         if (mThumbnailBytes != null) {
             return mThumbnailBytes;
         }
-        // Read the thumbnail.
-        FileInputStream in = null;
+        // Read only the thumbnail bytes via positioned read.
+        RandomAccessFile in = null;
         try {
-            in = new FileInputStream(inFile);
-            return getThumbnail(in);
+            in = new RandomAccessFile(inFile, "r");
+            mThumbnailBytes = readFully(in.getChannel(), mThumbnailOffset, mThumbnailLength);
+            return mThumbnailBytes;
         } catch (IOException e) {
             // Couldn't get a thumbnail image.
         } finally {
@@ -1605,6 +1612,16 @@ public class ExifInterface {
         return null;
     }
 
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Corrupted image");
+            }
+        }
+        return buffer.array();
+    }
+
     public byte[] getThumbnail(InputStream in) throws IOException {
         if (!mHasThumbnail) {
             return null;
@@ -1698,7 +1715,7 @@ public class ExifInterface {
         try {
             // The exif field is in local time. Parsing it as if it is UTC will yield time
             // since 1/1/1970 local time
-            Date datetime = sFormatter.parse(dateTimeString, pos);
+            Date datetime = parse(dateTimeString, pos);
             if (datetime == null) return -1;
             long msecs = datetime.getTime();
             String subSecs = getAttribute(TAG_SUBSEC_TIME);
@@ -1734,13 +1751,20 @@ public class ExifInterface {
         String dateTimeString = date + ' ' + time;
         ParsePosition pos = new ParsePosition(0);
         try {
-            Date datetime = sFormatter.parse(dateTimeString, pos);
+            Date datetime = parse(dateTimeString, pos);
             if (datetime == null) return -1;
             return datetime.getTime();
         } catch (IllegalArgumentException e) {
             return -1;
         }
     }
+
+    /** SimpleDateFormat is not threadsafe */
+    private static Date parse(String dateTimeString, ParsePosition pos) {
+        synchronized (sFormatter) {
+            return sFormatter.parse(dateTimeString, pos);
+        }
+    }
     private static float convertRationalLatLonToFloat(String rationalString, String ref) {
         try {
             String [] parts = rationalString.split(",");
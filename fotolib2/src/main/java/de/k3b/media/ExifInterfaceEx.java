@@ -36,6 +36,7 @@ import java.util.TimeZone;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.io.ListUtils;
+import de.k3b.io.Metrics;
 import de.k3b.io.VISIBILITY;
 
 /**
@@ -91,9 +92,11 @@ public class ExifInterfaceEx extends ExifInterface implements IMetaApi {
 
     @Override
     public void saveAttributes(File inFile, File outFile, boolean deleteInFileOnFinish) throws IOException {
+        long start = Metrics.start();
         fixDateTakenIfNeccessary(inFile);
         super.saveAttributes(inFile, outFile, deleteInFileOnFinish);
         setFilelastModified(outFile);
+        Metrics.getInstance().timer(Metrics.EXIF_SAVE).stop(start);
     }
 
     // Stores a new JPEG image with EXIF attributes into a given output stream.
@@ -415,15 +418,19 @@ public class ExifInterfaceEx extends ExifInterface implements IMetaApi {
 
         ParsePosition pos = new ParsePosition(0);
         try {
-            return sExifDateTimeFormatter.parse(dateTimeString, pos);
+            synchronized (sExifDateTimeFormatter) {
+                return sExifDateTimeFormatter.parse(dateTimeString, pos);
+            }
         } catch (IllegalArgumentException ex) {
             return null;
         }
     }
 
     protected static String toExifDateTimeString(Date value) {
-        final String exifDate = (value != null) ? sExifDateTimeFormatter.format(value) : null;
-        return exifDate;
+        if (value == null) return null;
+        synchronized (sExifDateTimeFormatter) {
+            return sExifDateTimeFormatter.format(value);
+        }
     }
 
     private void loadLatLon() {
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.media;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers rotation and width/height of recently used image files
+ * so that showing an image does not have to parse the jpg header again.
+ *
+ * Filled by the media scanner and from media db columns; the least recently used entries are removed.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class ImageInfoCache {
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    /** width or height is not known */
+    public static final int UNKNOWN = 0;
+
+    private static final ImageInfoCache sInstance = new ImageInfoCache(DEFAULT_MAX_ENTRIES);
+
+    /** immutable cache entry */
+    public static class Info {
+        /** right-rotate (in degrees) to display the image */
+        public final int rotation;
+        /** size of the image without rotation or UNKNOWN */
+        public final int width;
+        public final int height;
+
+        private Info(int rotation, int width, int height) {
+            this.rotation = rotation;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean hasSize() {
+            return (width > UNKNOWN) && (height > UNKNOWN);
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + rotation;
+        }
+    }
+
+    private final Map<String, Info> mEntries;
+
+    public ImageInfoCache(final int maxEntries) {
+        mEntries = new LinkedHashMap<String, Info>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Info> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static ImageInfoCache getInstance() {
+        return sInstance;
+    }
+
+    /** @return null if fullPath is not in cache */
+    public synchronized Info get(String fullPath) {
+        return (fullPath == null) ? null : mEntries.get(fullPath);
+    }
+
+    /** width and height may be UNKNOWN. An existing known size is kept if width/height are UNKNOWN. */
+    public synchronized Info put(String fullPath, int rotation, int width, int height) {
+        if (fullPath == null) return null;
+
+        if ((width <= UNKNOWN) || (height <= UNKNOWN)) {
+            Info old = mEntries.get(fullPath);
+            if ((old != null) && (old.rotation == rotation)) return old;
+            width = UNKNOWN;
+            height = UNKNOWN;
+        }
+        Info result = new Info(rotation, width, height);
+        mEntries.put(fullPath, result);
+        return result;
+    }
+
+    /** to be called if the file content has changed */
+    public synchronized void remove(String fullPath) {
+        if (fullPath != null) mEntries.remove(fullPath);
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+}
@@ -104,6 +104,7 @@ public class JpgMetaWorkflow {
                     debugExif(sb, "assign ", exif, inFilePath);
 
                     exif.save("MetaWriterExifXml save");
+                    ImageInfoCache.getInstance().remove(outFile.getAbsolutePath());
 
                     if (FotoLibGlobal.preserveJpgFileModificationDate) {
                         // preseve file modification date
@@ -187,7 +188,7 @@ public class JpgMetaWorkflow {
 
             if (newAbsoluteOutPath != null) {
                 String sourcePath = exif.getPath();
-                if ((sourcePath != null) && (sourcePath.compareTo(oldAbsoluteOutPath) == 0)) {
+                if ((transactionLogger != null) && (sourcePath != null) && (sourcePath.compareTo(oldAbsoluteOutPath) == 0)) {
                     // original intend was "change in same file" so add to log that filename has changed (rename/move)
                     transactionLogger.addChangesCopyMove(true, newAbsoluteOutPath, "handleVisibility");
                 }
@@ -225,23 +226,28 @@ public class JpgMetaWorkflow {
             270};  // 8 = Rotate 270 CW
 
     /**
-     * Get necessary rotation for image file from exif.
+     * Get necessary rotation for image file from {@link ImageInfoCache} or exif.
      *
      * @param fullPathToImageFile The filename.
      * @return right-rotate (in degrees) image according to exifdata.
      */
     public static int getRotationFromExifOrientation(String fullPathToImageFile) {
+        ImageInfoCache.Info cached = ImageInfoCache.getInstance().get(fullPathToImageFile);
+        if (cached != null) return cached.rotation;
+
+        int result = 0;
         try {
             ExifInterfaceEx exif = new ExifInterfaceEx(fullPathToImageFile, null, null, "getRotationFromExifOrientation");
             if (exif.isValidJpgExifFormat()) {
                 int orientation = exif.getAttributeInt(ExifInterfaceEx.TAG_ORIENTATION, 0);
                 if ((orientation >= 0) && (orientation < exifOrientationCode2RotationDegrees.length))
-                    return exifOrientationCode2RotationDegrees[orientation];
+                    result = exifOrientationCode2RotationDegrees[orientation];
             }
         }
         catch (Exception e) {
         }
-        return 0;
+        ImageInfoCache.getInstance().put(fullPathToImageFile, result, ImageInfoCache.UNKNOWN, ImageInfoCache.UNKNOWN);
+        return result;
     }
 
 
@@ -46,6 +46,7 @@ import java.util.List;
 
 import de.k3b.FotoLibGlobal;
 import de.k3b.io.FileUtils;
+import de.k3b.io.Metrics;
 import de.k3b.tagDB.TagConverter;
 
 /**
@@ -226,6 +227,7 @@ public class XmpSegment {
     }
 
     public XmpSegment load(File file, String dbg_context) throws FileNotFoundException {
+        long start = Metrics.start();
         FileInputStream stream = null;
         try {
             stream = new FileInputStream(file);
@@ -246,11 +248,13 @@ public class XmpSegment {
         } finally {
             FileUtils.close(stream, file);
             setFilelastModified(file);
+            Metrics.getInstance().timer(Metrics.XMP_LOAD).stop(start);
         }
         return this;
     }
 
     public XmpSegment save(File file, boolean humanReadable, String dbg_context) throws FileNotFoundException {
+        long start = Metrics.start();
         FileOutputStream stream = null;
         try {
             stream = new FileOutputStream(file);
@@ -258,6 +262,7 @@ public class XmpSegment {
         } finally {
             FileUtils.close(stream, file);
             setFilelastModified(file);
+            Metrics.getInstance().timer(Metrics.XMP_SAVE).stop(start);
         }
         return this;
 
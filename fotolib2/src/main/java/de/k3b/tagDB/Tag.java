@@ -105,6 +105,12 @@ public class Tag{
         // return name.equals(((Tag)o).name);
     }
 
+    /** consistent with {@link #equals(Object)} so that tags can be used as keys in hash based maps/sets */
+    @Override
+    public int hashCode() {
+        return (name == null) ? 0 : name.toLowerCase().hashCode();
+    }
+
     /** return item as path where parents are appended.
      * child <- parent <- grandparent */
     public String getReversePath() {
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+
+package de.k3b.tagDB;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.k3b.io.StringUtils;
+
+/**
+ * Counts how many photos reference each tag in a single pass over all db-tag-strings
+ * (i.e. ";tag1;;tag2;") instead of executing one "tags like '%;tag;%'" query per tag.
+ *
+ * Usage: call {@link #add(CharSequence)} once for every photo-row, then query {@link #getCount(String)}.
+ * Counts are the same as the sql: a tag is the text between two ';' and
+ * names are compared ignoring the case of ascii letters only like sqlite's LIKE does.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class TagHistogram {
+    /** lowercase tagname => number of photos containing the tag */
+    private final Map<String, int[]> mCounts = new HashMap<String, int[]>();
+
+    /** tags of the current row so that a tag that is contained twice in one photo is counted once. */
+    private final Set<String> mCurrentRow = new HashSet<String>();
+
+    private int mRowCount = 0;
+
+    /**
+     * Add the tags of one photo.
+     * @param dbTags tags as stored in the media db, i.e. ";tag1;;tag2;".
+     * @return this to allow chaining
+     */
+    public TagHistogram add(CharSequence dbTags) {
+        if (dbTags != null) {
+            mCurrentRow.clear();
+            final int len = dbTags.length();
+            int start = -1;
+            for (int pos = 0; pos < len; pos++) {
+                if (dbTags.charAt(pos) == ';') {
+                    // "like '%;tag;%'" only matches text that is enclosed in ';'
+                    if (start >= 0) addToken(dbTags, start, pos);
+                    start = pos + 1;
+                }
+            }
+            mRowCount++;
+        }
+        return this;
+    }
+
+    private void addToken(CharSequence dbTags, int start, int end) {
+        if ((end > start) && !((end - start == 1) && (dbTags.charAt(start) == '%'))) {
+            String key = StringUtils.toLowerAscii(dbTags.subSequence(start, end));
+            if (mCurrentRow.add(key)) {
+                int[] count = mCounts.get(key);
+                if (count == null) {
+                    mCounts.put(key, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+    }
+
+    /** @return number of photos that contain tagName (ignoring case of ascii letters). */
+    public int getCount(String tagName) {
+        int[] count = (tagName != null) ? mCounts.get(StringUtils.toLowerAscii(tagName)) : null;
+        return (count != null) ? count[0] : 0;
+    }
+
+    /** @return number of photos that contain the tag. */
+    public int getCount(Tag tag) {
+        return (tag != null) ? getCount(tag.getName()) : 0;
+    }
+
+    /** @return tag => number of photos that contain the tag for every tag in tags in the same order as tags */
+    public Map<Tag, Integer> getCounts(List<Tag> tags) {
+        Map<Tag, Integer> result = new LinkedHashMap<Tag, Integer>();
+        if (tags != null) {
+            for (Tag tag : tags) {
+                if (tag != null) result.put(tag, getCount(tag));
+            }
+        }
+        return result;
+    }
+
+    /** @return number of different tags found */
+    public int size() {
+        return mCounts.size();
+    }
+
+    /** @return number of photo-rows that were {@link #add(CharSequence)}-ed */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[rows=" + mRowCount + ", tags=" + mCounts.size() + "]";
+    }
+}
@@ -19,38 +19,63 @@
 package de.k3b.tagDB;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Calculate from each selected image the tags:
+ *
+ * All calculations use hash sets so they are O(n+m) instead of O(n*m).
+ * Order of the results is the same as the order of the input lists.
+ *
  * Created by k3b on 09.01.2017.
  */
 
 public class TagProcessor {
     private static final ArrayList<String> EMPTY_STRING_LIST = new ArrayList<>();
+
+    /** true: "Tag" and "tag" are the same in {@link #registerExistingTags(List)} */
+    private final boolean mIgnoreCase;
+
     /** all tags that occoured at least once in {@link #registerExistingTags(List)} call. */
     private List<String> mAffected = null;
+    /** keys of {@link #mAffected} */
+    private Set<String> mAffectedKeys = null;
 
     /** all tags that occured in all {@link #registerExistingTags(List)} calls */
     private List<String> mAllSet = null;
 
+    public TagProcessor() {
+        this(false);
+    }
+
+    /** @param ignoreCase true: "Tag" and "tag" are the same in {@link #registerExistingTags(List)} */
+    public TagProcessor(boolean ignoreCase) {
+        mIgnoreCase = ignoreCase;
+    }
+
     /** Remember tags for later processing.
      * Called for every selected image. */
     public void registerExistingTags(List<String> tags) {
         if ((tags != null) && (tags.size() > 0)) {
             if (mAllSet == null) {
                 mAffected = new ArrayList<String>(tags);
+                mAffectedKeys = toKeys(tags, mIgnoreCase);
                 mAllSet = new ArrayList<String>(tags);
             } else {
                 for (String tag : tags) {
-                    if (!mAffected.contains(tag)) {
+                    if (mAffectedKeys.add(toKey(tag, mIgnoreCase))) {
                         mAffected.add(tag);
                     }
                 }
-                for (int i = mAllSet.size() - 1; i >= 0; i--) {
-                    String tag = mAllSet.get(i);
-                    if (!tags.contains(tag)) {
-                        mAllSet.remove(i);
+                if (mAllSet.size() > 0) {
+                    Set<String> tagKeys = toKeys(tags, mIgnoreCase);
+                    for (int i = mAllSet.size() - 1; i >= 0; i--) {
+                        String tag = mAllSet.get(i);
+                        if (!tagKeys.contains(toKey(tag, mIgnoreCase))) {
+                            mAllSet.remove(i);
+                        }
                     }
                 }
             }
@@ -62,63 +87,87 @@ public class TagProcessor {
         return mAffected;
     }
 
-    /** all tags that occoured at least once in {@link #registerExistingTags(List)} call. */
-    private void setAffected(List<String> affected) {
-        this.mAffected = affected;
-    }
-
     /** all tags that occured in all {@link #registerExistingTags(List)} calls */
     public List<String> getAllSet() {
         return mAllSet;
     }
 
-    /** all tags that occured in all {@link #registerExistingTags(List)} calls */
-    private void setAllSet(List<String> allSet) {
-        this.mAllSet = allSet;
-    }
-
     /** calculate the new tags out of added and removed tags. returns null if there is no change neccessary */
     public static List<String> getUpdated(List<String> originalCurrentTags, List<String> addedTags, List<String> removedTags) {
+        return getUpdated(originalCurrentTags, addedTags, removedTags, false);
+    }
+
+    /**
+     * calculate the new tags out of added and removed tags. returns null if there is no change neccessary.
+     * @param ignoreCase true: "Tag" and "tag" are the same.
+     */
+    public static List<String> getUpdated(List<String> originalCurrentTags, List<String> addedTags, List<String> removedTags, boolean ignoreCase) {
         ArrayList<String> currentTags = (originalCurrentTags == null) ? new ArrayList<String>() : new ArrayList<String>(originalCurrentTags);
+        Set<String> currentKeys = toKeys(currentTags, ignoreCase);
         int modifyCount = 0;
         if (addedTags != null) {
             for (String tag : addedTags) {
-                if (!currentTags.contains(tag)) {
+                if (currentKeys.add(toKey(tag, ignoreCase))) {
                     currentTags.add(tag);
                     modifyCount++;
                 }
             }
 
         }
-        if (removedTags != null) {
-            for (int i= removedTags.size()-1; i >= 0; i--) {
-                String tag = removedTags.get(i);
-                if (currentTags.contains(tag)) {
-                    currentTags.remove(tag);
+        if ((removedTags != null) && (removedTags.size() > 0)) {
+            Set<String> removedKeys = new HashSet<String>();
+            for (String tag : removedTags) {
+                String key = toKey(tag, ignoreCase);
+                if (currentKeys.contains(key) && removedKeys.add(key)) {
                     modifyCount++;
                 }
             }
 
+            if (removedKeys.size() > 0) {
+                // single pass removal keeps the order of the remaining tags
+                int dest = 0;
+                for (int i = 0; i < currentTags.size(); i++) {
+                    String tag = currentTags.get(i);
+                    if (!removedKeys.contains(toKey(tag, ignoreCase))) {
+                        currentTags.set(dest++, tag);
+                    }
+                }
+                for (int i = currentTags.size() - 1; i >= dest; i--) {
+                    currentTags.remove(i);
+                }
+            }
         }
         return (modifyCount > 0) ? currentTags : null;
     }
 
     /** caclulates the difference between original and changed into addedTags and removedTags and returns the number of changes. */
     public static int getDiff(List<String> _original, List<String> _changed, List<String> addedTags, List<String> removedTags) {
+        return getDiff(_original, _changed, addedTags, removedTags, false);
+    }
+
+    /**
+     * caclulates the difference between original and changed into addedTags and removedTags and returns the number of changes.
+     * @param ignoreCase true: "Tag" and "tag" are the same.
+     */
+    public static int getDiff(List<String> _original, List<String> _changed, List<String> addedTags, List<String> removedTags, boolean ignoreCase) {
         List<String> original = (_original != null) ? _original : EMPTY_STRING_LIST;
         List<String> changed = (_changed != null) ? _changed : EMPTY_STRING_LIST;
         int modifyCount = 0;
         if (addedTags != null) {
+            Set<String> originalKeys = toKeys(original, ignoreCase);
+            Set<String> addedKeys = toKeys(addedTags, ignoreCase);
             for (String tag : changed) {
-                if ((tag != null) && !original.contains(tag) && !addedTags.contains(tag)) {
+                if ((tag != null) && !originalKeys.contains(toKey(tag, ignoreCase)) && addedKeys.add(toKey(tag, ignoreCase))) {
                     addedTags.add(tag);
                     modifyCount++;
                 }
             }
         }
         if (removedTags != null) {
+            Set<String> changedKeys = toKeys(changed, ignoreCase);
+            Set<String> removedKeys = toKeys(removedTags, ignoreCase);
             for (String tag : original) {
-                if ((tag != null) && !changed.contains(tag) && !removedTags.contains(tag)) {
+                if ((tag != null) && !changedKeys.contains(toKey(tag, ignoreCase)) && removedKeys.add(toKey(tag, ignoreCase))) {
                     removedTags.add(tag);
                     modifyCount++;
                 }
@@ -126,4 +175,16 @@ public class TagProcessor {
         }
         return modifyCount;
     }
+
+    private static Set<String> toKeys(List<String> tags, boolean ignoreCase) {
+        Set<String> result = new HashSet<String>(Math.max(16, tags.size() * 2));
+        for (String tag : tags) {
+            result.add(toKey(tag, ignoreCase));
+        }
+        return result;
+    }
+
+    private static String toKey(String tag, boolean ignoreCase) {
+        return ((tag != null) && ignoreCase) ? tag.toLowerCase() : tag;
+    }
 }
@@ -31,7 +31,10 @@ import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.k3b.FotoLibGlobal;
 
@@ -94,15 +97,87 @@ public class TagRepository {
         }
     }
 
+    /**
+     * make shure that all newItems including their parents are contained in this repository.
+     * @return number of tags that where inserted
+     */
     public int merge(List<Tag> newItems) {
-        int changes = 0;
         if ((newItems != null) && (newItems.size() > 0)) {
-            List<Tag> existingItems = this.load();
+            return merge(this.load(), newItems);
+        }
+        return 0;
+    }
+
+    /**
+     * Bulk version of {@link #includePaths(List, Tag, Tag, String)}: make shure that all newItems
+     * including their parents are contained in all. Inserts copies if neccessary.
+     *
+     * Both tag trees are walked only once using a (parent,name) => child index, so merging is
+     * linear in the number of tags instead of re-searching all for every path element of every item.
+     *
+     * @return number of tags that where inserted
+     */
+    public static int merge(List<Tag> all, List<Tag> newItems) {
+        int oldSize = all.size();
+        if ((newItems != null) && (newItems.size() > 0)) {
+            // existing parent => (child name => first child with that name)
+            Map<Tag, Map<String, Tag>> existingChildren = new IdentityHashMap<Tag, Map<String, Tag>>();
+            Map<String, Tag> existingRoots = new HashMap<String, Tag>();
+            for (Tag existing : all) {
+                if ((existing != null) && (existing.getName() != null)) {
+                    addChildToIndex(existingChildren, existingRoots, existing.getParent(), existing);
+                }
+            }
+
+            // newItem => corresponding tag in all
+            Map<Tag, Tag> newToExisting = new IdentityHashMap<Tag, Tag>();
             for (Tag newItem : newItems) {
-                if (newItem != null) changes += includePaths(null, newItem.getPath());
+                if (newItem != null) {
+                    mergeItem(all, existingChildren, existingRoots, newToExisting, newItem);
+                }
             }
         }
-        return changes;
+        return all.size() - oldSize;
+    }
+
+    /** @return tag in all that corresponds to newItem. null if newItem has no name */
+    private static Tag mergeItem(List<Tag> all, Map<Tag, Map<String, Tag>> existingChildren,
+                                 Map<String, Tag> existingRoots, Map<Tag, Tag> newToExisting, Tag newItem) {
+        Tag result = newToExisting.get(newItem);
+        if ((result == null) && !newToExisting.containsKey(newItem)) {
+            String name = newItem.getName();
+            name = (name != null) ? name.trim() : null;
+            if ((name == null) || (name.length() == 0)) {
+                // like includePath(): empty path elements are skipped, children go to the grand parent
+                result = (newItem.getParent() == null) ? null
+                        : mergeItem(all, existingChildren, existingRoots, newToExisting, newItem.getParent());
+            } else {
+                Tag existingParent = (newItem.getParent() == null) ? null
+                        : mergeItem(all, existingChildren, existingRoots, newToExisting, newItem.getParent());
+                Map<String, Tag> siblings = (existingParent == null) ? existingRoots : existingChildren.get(existingParent);
+                result = (siblings == null) ? null : siblings.get(name);
+                if (result == null) {
+                    result = add(all, existingParent, name);
+                    addChildToIndex(existingChildren, existingRoots, existingParent, result);
+                }
+            }
+            newToExisting.put(newItem, result);
+        }
+        return result;
+    }
+
+    private static void addChildToIndex(Map<Tag, Map<String, Tag>> existingChildren, Map<String, Tag> existingRoots,
+                                        Tag parent, Tag child) {
+        Map<String, Tag> siblings = existingRoots;
+        if (parent != null) {
+            siblings = existingChildren.get(parent);
+            if (siblings == null) {
+                siblings = new HashMap<String, Tag>();
+                existingChildren.put(parent, siblings);
+            }
+        }
+        // same as Tag.findFirstChildByName(): first wins
+        if (!siblings.containsKey(child.getName())) siblings.put(child.getName(), child);
     }
 
     /**
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class KeysetQueryTests {
+    @Test
+    public void shouldCreateFirstPage() {
+        KeysetQuery sut = new KeysetQuery(createQuery("d desc"), "_id");
+        Assert.assertEquals(2, sut.getKeyCount());
+        Assert.assertEquals("select _id, d as _key0, _id as _key1 from t where (w=1) order by d desc, _id desc",
+                normalize(sut.createPageQuery(null, false).toSqlString()));
+    }
+
+    @Test
+    public void shouldCreateNextPage() {
+        KeysetQuery sut = new KeysetQuery(createQuery("d asc, length(p) desc"), "_id");
+        Assert.assertEquals("where (w=1) and (((d > 5) or (d = 5 and (length(p) < 3 or length(p) is null)) or (d = 5 and length(p) = 3 and (_id < 7 or _id is null)))) "
+                        + "order by d asc, length(p) desc, _id desc",
+                normalizeWhere(sut.createPageQuery(new Object[]{5L, 3L, 7L}, false).toSqlString()));
+    }
+
+    @Test
+    public void shouldCreatePreviousPageInReverseOrder() {
+        KeysetQuery sut = new KeysetQuery(createQuery("p"), "_id");
+        Assert.assertEquals("where (w=1) and ((((p < 'it''s' or p is null)) or (p = 'it''s' and (_id < 7 or _id is null)))) "
+                        + "order by p desc, _id desc",
+                normalizeWhere(sut.createPageQuery(new Object[]{"it's", 7L}, true).toSqlString()));
+    }
+
+    @Test
+    public void shouldHandleNullKey() {
+        KeysetQuery sut = new KeysetQuery(createQuery("d asc"), "_id");
+        Assert.assertEquals("where (w=1) and (((d is not null) or (d is null and _id > 7))) order by d asc, _id asc",
+                normalizeWhere(sut.createPageQuery(new Object[]{null, 7L}, false).toSqlString()));
+    }
+
+    @Test
+    public void shouldNotSupportGroupBy() {
+        Assert.assertTrue(new KeysetQuery(createQuery("d"), "_id").isSupported());
+        Assert.assertFalse(new KeysetQuery(createQuery("d").addGroupBy("d"), "_id").isSupported());
+    }
+
+    private static QueryParameter createQuery(String orderBy) {
+        return new QueryParameter().addColumn("_id").addFrom("t").addWhere("w=1").addOrderBy(orderBy);
+    }
+
+    private static String normalizeWhere(String sql) {
+        String result = normalize(sql);
+        return result.substring(result.indexOf("where"));
+    }
+
+    private static String normalize(String sql) {
+        return sql.replaceAll("\\s+", " ").trim().toLowerCase();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.database;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class QueryResultCacheTests {
+    @Test
+    public void shouldFindEqualQuery() {
+        QueryResultCache sut = new QueryResultCache(100);
+        Assert.assertTrue(sut.put(createQuery("a"), sut.getGeneration(), createResult(2)));
+
+        Assert.assertNotNull(sut.get(createQuery("a")));
+        Assert.assertNull("other parameter", sut.get(createQuery("b")));
+    }
+
+    @Test
+    public void shouldIgnoreComment() {
+        QueryResultCache sut = new QueryResultCache(100);
+        String oldComment = QueryParameter.sFileComment;
+        try {
+            QueryParameter.sFileComment = "some comment";
+            sut.put(createQuery("a"), sut.getGeneration(), createResult(2));
+            QueryParameter.sFileComment = null;
+            Assert.assertNotNull(sut.get(createQuery("a")));
+        } finally {
+            QueryParameter.sFileComment = oldComment;
+        }
+    }
+
+    @Test
+    public void shouldNotIgnoreParameterThatLooksLikeComment() {
+        QueryResultCache sut = new QueryResultCache(100);
+        sut.put(createQuery("#holiday"), sut.getGeneration(), createResult(2));
+
+        Assert.assertNotNull(sut.get(createQuery("#holiday")));
+        Assert.assertNull(sut.get(createQuery("#summer")));
+        Assert.assertNull(sut.get(createQuery("--holiday")));
+    }
+
+    @Test
+    public void shouldInvalidateOnDbModification() {
+        QueryResultCache sut = new QueryResultCache(100);
+        long generation = sut.getGeneration();
+        sut.put(createQuery("a"), generation, createResult(2));
+
+        sut.invalidate();
+        Assert.assertNull(sut.get(createQuery("a")));
+
+        // result of a query that was started before the modification
+        Assert.assertFalse(sut.put(createQuery("a"), generation, createResult(2)));
+        Assert.assertNull(sut.get(createQuery("a")));
+    }
+
+    @Test
+    public void shouldRemoveLeastRecentlyUsed() {
+        QueryResultCache sut = new QueryResultCache(100);
+        Assert.assertFalse("too big", sut.put(createQuery("big"), sut.getGeneration(), createResult(26)));
+
+        sut.put(createQuery("a"), sut.getGeneration(), createResult(25));
+        sut.put(createQuery("b"), sut.getGeneration(), createResult(25));
+        sut.put(createQuery("c"), sut.getGeneration(), createResult(25));
+        sut.get(createQuery("a"));
+        sut.put(createQuery("d"), sut.getGeneration(), createResult(25));
+        sut.put(createQuery("e"), sut.getGeneration(), createResult(25));
+
+        Assert.assertEquals(4, sut.size());
+        Assert.assertNotNull(sut.get(createQuery("a")));
+        Assert.assertNull(sut.get(createQuery("b")));
+    }
+
+    private static QueryParameter createQuery(String parameter) {
+        return new QueryParameter().addColumn("c").addFrom("f").addWhere("w=?", parameter).addGroupBy("c");
+    }
+
+    private static QueryResultCache.Result createResult(int rowCount) {
+        Object[][] rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{(long) i};
+        }
+        return new QueryResultCache.Result(new String[]{"c"}, rows);
+    }
+}
@@ -83,4 +83,44 @@ public class SqlTemplateEngineTests {
         Assert.assertEquals(input, expected, actual);
     }
 
+    @Test
+    public void shoudAppendToExistingSql() {
+
+        String input = "#${SQL_COL_PK}";
+        String expected = "select '#'||ifnull(SQL_COL_PK,'')";
+        String actual = SqlTemplateEngine.toSql(new StringBuilder("select "), input).toString();
+
+        Assert.assertEquals(input, expected, actual);
+    }
+
+    @Test
+    public void shoudExpandSeveralExpressionsAndConsts() {
+
+        String input = "${datetaken} ${latitude},${longitude} (${rating})";
+        String expected = "ifnull(datetaken,'')||' '||ifnull(latitude,'')||','||ifnull(longitude,'')||' ('||ifnull(rating,'')||')'";
+
+        Assert.assertEquals(input, expected, SqlTemplateEngine.toSql(input));
+    }
+
+    @Test
+    public void shoudExpandUnterminatedExpressionAsConst() {
+
+        String input = "it's ${a";
+        String expected = "'it\"s '||'${a'";
+
+        Assert.assertEquals(input, expected, SqlTemplateEngine.toSql(input));
+    }
+
+    @Test
+    public void shoudReturnSameResultForCachedTemplate() {
+
+        String input = "#${SQL_COL_PK}";
+        String expected = "'#'||ifnull(SQL_COL_PK,'')";
+
+        Assert.assertEquals("first call", expected, SqlTemplateEngine.toSql(input));
+        Assert.assertEquals("cached", expected, SqlTemplateEngine.toSql(input));
+        Assert.assertEquals("cached append", "select " + expected,
+                SqlTemplateEngine.toSql(new StringBuilder("select "), input).toString());
+    }
+
 }
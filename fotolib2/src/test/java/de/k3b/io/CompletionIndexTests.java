@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class CompletionIndexTests {
+    @Test
+    public void shouldRankByFrequency() throws Exception {
+        CompletionIndex sut = new CompletionIndex(3)
+                .add("holiday").add("Home").add("home").add("house");
+
+        Assert.assertEquals("[Home, house, holiday]", sut.complete("ho", 10).toString());
+        Assert.assertEquals("[Home]", sut.complete("HOM", 10).toString());
+        Assert.assertEquals("[]", sut.complete("x", 10).toString());
+        Assert.assertEquals("max", 1, sut.complete("h", 1).size());
+    }
+
+    @Test
+    public void shouldPreferRecentUse() throws Exception {
+        CompletionIndex sut = new CompletionIndex(3).add("old");
+        for (int i = 0; i < CompletionIndex.HALF_LIFE * 2; i++) {
+            sut.add("other" + i);
+        }
+        sut.add("older");
+
+        Assert.assertEquals("[older, old]", sut.complete("ol", 10).toString());
+    }
+
+    @Test
+    public void shouldKeepOrderAfterRescale() throws Exception {
+        CompletionIndex sut = new CompletionIndex(2).add("a1").add("a1").add("a2");
+        for (int i = 0; i < CompletionIndex.HALF_LIFE * 400; i++) {
+            sut.add("b");
+        }
+        Assert.assertEquals("[a1, a2]", sut.complete("a", 10).toString());
+        Assert.assertEquals("[b, a1]", sut.complete("", 10).toString());
+    }
+
+    @Test
+    public void shouldSaveLoad() throws Exception {
+        CompletionIndex original = new CompletionIndex(3)
+                .add("holiday").add("home").add("home").add("house");
+        StringWriter writer = new StringWriter();
+        original.save(writer);
+
+        CompletionIndex sut = new CompletionIndex(3).load(new StringReader(writer.toString()));
+
+        Assert.assertEquals(4 - 1, sut.size());
+        Assert.assertEquals(original.complete("h", 10), sut.complete("h", 10));
+    }
+
+    @Test
+    public void shouldForgetLowestScoresIfFull() throws Exception {
+        CompletionIndex sut = new CompletionIndex(3, 4).add("keep").add("keep");
+        for (int i = 0; i < 10; i++) {
+            sut.add("other" + i);
+        }
+
+        Assert.assertTrue("size " + sut.size(), sut.size() <= 4 + 4 / 4);
+        Assert.assertEquals("[keep]", sut.complete("k", 10).toString());
+        Assert.assertEquals("most recent", "[other9]", sut.complete("other9", 10).toString());
+        Assert.assertEquals("oldest forgotten", "[]", sut.complete("other0", 10).toString());
+    }
+}
@@ -124,6 +124,45 @@ public class DirectoryTests {
         Assert.assertEquals(expected, root.find("/a/b/c/d/"));
     }
 
+    @Test
+    public void shoudFindWithChildIndex() {
+        Directory root = new Directory("", null, 0);
+        IDirectory expected = null;
+        for (int i = 0; i <= Directory.CHILD_INDEX_THRESHOLD * 2; i++) {
+            Directory child = new Directory("a" + i, root, 0);
+            expected = new Directory("b/c", child, 0);
+        }
+
+        Assert.assertEquals(expected, root.find("/a" + (Directory.CHILD_INDEX_THRESHOLD * 2) + "/b/c"));
+        Assert.assertEquals(null, root.find("/a" + (Directory.CHILD_INDEX_THRESHOLD * 2) + "/b/x"));
+        Assert.assertEquals("ignore case", expected.getParent(), root.findChildIgnoreCase("A" + (Directory.CHILD_INDEX_THRESHOLD * 2)));
+    }
+
+    @Test
+    public void shoudNotFindRemovedChildWithChildIndex() {
+        Directory root = new Directory("", null, 0);
+        for (int i = 0; i <= Directory.CHILD_INDEX_THRESHOLD * 2; i++) {
+            new Directory("a" + i, root, 0);
+        }
+        IDirectory removed = root.findChildIgnoreCase("a3");
+        root.removeChild(removed);
+        IDirectory added = new Directory("a3", root, 0);
+
+        Assert.assertEquals(added, root.findChildIgnoreCase("a3"));
+    }
+
+    @Test
+    public void shoudBuildManySiblingsWithChildIndex() {
+        DirectoryBuilder builder = new DirectoryBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("/root/c" + (i % 100) + "/", 1, 0);
+        }
+        builder.add("/root/C5/", 1, 0);
+        Directory root = (Directory) builder.getRoot().getChildren().get(0);
+        Assert.assertEquals("number of children", 100, root.getChildren().size());
+        Assert.assertEquals("items in c5", 11, ((Directory) root.findChildIgnoreCase("c5")).getNonDirItemCount());
+    }
+
     protected void assertTree(String expected, IDirectory root) {
         Assert.assertEquals(expected, Directory.toTreeString(new StringBuilder(),(Directory) root, "|", Directory.OPT_ALL - Directory.OPT_AS_HTML).toString());
     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental updates must result in the same tree as a complete rebuild.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class DirectoryUpdaterTests {
+    @Test
+    public void shouldAddNewDir() {
+        IDirectory root = build("/a/b/c/", 1, "/a/b/d/", 2);
+        new DirectoryUpdater(root).addItems("/a/b/e/f/", 3, 0);
+
+        assertTree(build("/a/b/c/", 1, "/a/b/d/", 2, "/a/b/e/f/", 3), root);
+    }
+
+    @Test
+    public void shouldSplitCompressedDir() {
+        IDirectory root = build("/a/b/c/", 1);
+        DirectoryUpdater sut = new DirectoryUpdater(root);
+
+        sut.addItems("/a/x/", 2, 0);
+        assertTree(build("/a/b/c/", 1, "/a/x/", 2), root);
+
+        sut.addItems("/a/", 4, 0);
+        assertTree(build("/a/", 4, "/a/b/c/", 1, "/a/x/", 2), root);
+    }
+
+    @Test
+    public void shouldRemoveEmptyDirAndCompress() {
+        IDirectory root = build("/a/b/c/", 1, "/a/x/", 2);
+        DirectoryUpdater sut = new DirectoryUpdater(root);
+
+        Assert.assertNull("unknown", sut.removeItems("/a/unknown/", 1));
+        sut.removeItems("/a/x/", 2);
+
+        assertTree(build("/a/b/c/", 1), root);
+    }
+
+    @Test
+    public void shouldMoveFiles() {
+        IDirectory root = build("/a/b/", 2, "/a/c/", 1);
+        final List<String> changed = new ArrayList<String>();
+        DirectoryUpdater sut = new DirectoryUpdater(root).setListener(new DirectoryUpdater.IDirectoryChangeListener() {
+            @Override
+            public void onDirectoryChanged(IDirectory directory) {
+                changed.add(directory.getAbsolute());
+            }
+        });
+
+        int count = sut.onFilesChanged(FileCommands.OP_MOVE,
+                new String[]{"/a/b/1.jpg", "/a/c/2.jpg"},
+                new String[]{"/a/d/1.jpg", "/a/d/2.jpg"});
+
+        Assert.assertEquals(4, count);
+        assertTree(build("/a/b/", 1, "/a/d/", 2), root);
+        Assert.assertEquals(3, changed.size());
+    }
+
+    private static IDirectory build(Object... pathCountPairs) {
+        DirectoryBuilder builder = new DirectoryBuilder();
+        for (int i = 0; i < pathCountPairs.length; i += 2) {
+            builder.add((String) pathCountPairs[i], (Integer) pathCountPairs[i + 1], 0);
+        }
+        return builder.getRoot();
+    }
+
+    private static void assertTree(IDirectory expected, IDirectory actual) {
+        Assert.assertEquals(toString(expected), toString(actual));
+    }
+
+    private static String toString(IDirectory root) {
+        StringBuilder result = Directory.toTreeString(new StringBuilder(), (Directory) root, "|", Directory.OPT_ALL - Directory.OPT_AS_HTML);
+        Directory.appendCount(result, root, Directory.OPT_ALL - Directory.OPT_AS_HTML);
+        return result.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class GeoCellCacheTests {
+    private static final double CELL_SIZE = 1.0;
+
+    @Test
+    public void shouldLoadOnlyNewCellsAfterScroll() throws Exception {
+        GeoCellCache<String> sut = new GeoCellCache<String>(100);
+        load(sut, rect(10.5, 11.5, 20.5, 21.5));
+        Assert.assertEquals(4, sut.size());
+
+        // scroll one cell to the east: only the new column is missing
+        List<GeoCellCache.CellRange> missing = sut.getMissingCells(0, CELL_SIZE, rect(10.5, 11.5, 21.5, 22.5));
+        Assert.assertEquals("[z0:10,22..22, z0:11,22..22]", missing.toString());
+    }
+
+    @Test
+    public void shouldCombineMissingCellsToRows() throws Exception {
+        GeoCellCache<String> sut = new GeoCellCache<String>(100);
+        List<GeoCellCache.CellRange> missing = sut.getMissingCells(3, CELL_SIZE, rect(-0.5, 0.5, -1.5, 1.5));
+        Assert.assertEquals("[z3:-1,-2..1, z3:0,-2..1]", missing.toString());
+        Assert.assertEquals("-1.0,-2.0;0.0,2.0", missing.get(0).getArea(CELL_SIZE).toString());
+    }
+
+    @Test
+    public void shouldReturnItemsOfVisibleCells() throws Exception {
+        GeoCellCache<String> sut = new GeoCellCache<String>(100);
+        for (GeoCellCache.CellRange range : sut.getMissingCells(0, CELL_SIZE, rect(10.5, 11.5, 20.5, 21.5))) {
+            sut.setLoaded(range);
+            sut.put(range, CELL_SIZE, 10.2, 20.2, "a");
+            sut.put(range, CELL_SIZE, 11.7, 21.7, "b");
+            sut.put(range, CELL_SIZE, 12.5, 21.7, "outside");
+        }
+
+        Assert.assertEquals("[a, b]", sut.getItems(0, CELL_SIZE, rect(10.5, 11.5, 20.5, 21.5)).toString());
+        Assert.assertEquals("[a]", sut.getItems(0, CELL_SIZE, rect(10.5, 10.9, 20.5, 20.9)).toString());
+        Assert.assertEquals("other level", 0, sut.getItems(1, CELL_SIZE, rect(10.5, 11.5, 20.5, 21.5)).size());
+    }
+
+    @Test
+    public void shouldRemoveLeastRecentlyUsedCells() throws Exception {
+        GeoCellCache<String> sut = new GeoCellCache<String>(2);
+        load(sut, rect(0.5, 0.5, 0.5, 0.5));
+        load(sut, rect(0.5, 0.5, 1.5, 1.5));
+        load(sut, rect(0.5, 0.5, 2.5, 2.5));
+        sut.getItems(0, CELL_SIZE, rect(0.5, 0.5, 2.5, 2.5));
+
+        Assert.assertEquals(2, sut.size());
+        Assert.assertEquals("oldest removed", 1, sut.getMissingCells(0, CELL_SIZE, rect(0.5, 0.5, 0.5, 2.5)).size());
+
+        // visible cells are kept even if there are more than max
+        load(sut, rect(5.5, 5.5, 0.5, 3.5));
+        sut.getItems(0, CELL_SIZE, rect(5.5, 5.5, 0.5, 3.5));
+        Assert.assertEquals(4, sut.size());
+    }
+
+    private static void load(GeoCellCache<String> sut, IGeoRectangle visible) {
+        for (GeoCellCache.CellRange range : sut.getMissingCells(0, CELL_SIZE, visible)) {
+            sut.setLoaded(range);
+        }
+    }
+
+    private static GeoRectangle rect(double latMin, double latMax, double lonMin, double lonMax) {
+        return new GeoRectangle().setLatitude(latMin, latMax).setLogitude(lonMin, lonMax);
+    }
+}
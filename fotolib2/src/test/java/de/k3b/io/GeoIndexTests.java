@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class GeoIndexTests {
+    @Test
+    public void shouldUpdateAfterGpsEdit() throws Exception {
+        GeoIndex sut = new GeoIndex().put(7, 50.0, 10.0);
+
+        sut.put(7, 0.5, 0.5).put(8, 0.1, 0.1).remove(8).put(9, 1.0, 1.0).put(9, Double.NaN, Double.NaN);
+
+        Assert.assertEquals(1, sut.size());
+        Assert.assertEquals("[0.5, 0.5]", Arrays.toString(sut.getPosition(7)));
+        Assert.assertNull(sut.getPosition(8));
+        Assert.assertNull(sut.getPosition(9));
+    }
+
+    @Test
+    public void shouldCalculateBounds() throws Exception {
+        GeoIndex sut = new GeoIndex().put(1, 50.0, 10.0).put(2, 51.0, 9.0).put(3, 52.0, 12.0);
+
+        Assert.assertEquals("50.0,9.0;52.0,12.0", sut.getBounds().toString());
+        Assert.assertEquals("50.0,9.0;51.0,10.0", sut.getBounds(Arrays.asList(1L, 2L, 99L)).toString());
+        Assert.assertNull(sut.getBounds(Arrays.asList(99L)));
+    }
+}
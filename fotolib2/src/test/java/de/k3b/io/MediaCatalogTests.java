@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import de.k3b.tagDB.TagConverter;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class MediaCatalogTests {
+    private MediaCatalog sut;
+
+    @Before
+    public void setup() {
+        sut = new MediaCatalog();
+        sut.put(1, "/a/p1.jpg", 1000, 50.0, 9.0, 3, MediaCatalog.VISIBILITY_PUBLIC, TagConverter.fromString(";Cat;Dog;"));
+        sut.put(2, "/a/b/p2.jpg", 2000, Double.NaN, Double.NaN, 0, MediaCatalog.VISIBILITY_PUBLIC, null);
+        sut.put(3, "/c/p3.jpg", MediaCatalog.NO_DATE, 10.0, 20.0, 5, MediaCatalog.VISIBILITY_PRIVATE, TagConverter.fromString(";Cat;"));
+        sut.put(4, "/c/p4.jpg", 3000, 51.0, 9.5, 1, MediaCatalog.VISIBILITY_PUBLIC, TagConverter.fromString(";Dog;"));
+    }
+
+    @Test
+    public void shouldFilterVisibility() {
+        Assert.assertEquals(3, count(new GalleryFilterParameter().setVisibility(VISIBILITY.PUBLIC)));
+        Assert.assertEquals(1, count(new GalleryFilterParameter().setVisibility(VISIBILITY.PRIVATE)));
+        Assert.assertEquals(4, count(new GalleryFilterParameter().setVisibility(VISIBILITY.PRIVATE_PUBLIC)));
+    }
+
+    @Test
+    public void shouldFilterDateRatingAndGeo() {
+        GalleryFilterParameter filter = createFilter().setDate(1500, 3000);
+        Assert.assertEquals("dateMax is exclusive", 1, count(filter));
+
+        Assert.assertEquals(1, count(createFilter().setRatingMin(4)));
+
+        filter = createFilter();
+        filter.setLatitude(50.0, 52.0).setLogitude(9.0, 10.0);
+        Assert.assertEquals(2, count(filter));
+
+        filter = createFilter();
+        filter.setNonGeoOnly(true);
+        Assert.assertEquals(1, count(filter));
+    }
+
+    @Test
+    public void shouldFilterPathLike() {
+        Assert.assertEquals(2, count(createFilter().setPath("/A/%")));
+        Assert.assertEquals(2, count(createFilter().setPath("%/p_.jpg").setDateMin(0).setPath("/c/p_.jpg")));
+        Assert.assertEquals(1, count(createFilter().setPath("%/b/%")));
+        Assert.assertTrue(MediaCatalog.isLike("/a/b/p2.jpg", "%p%2%"));
+        Assert.assertFalse(MediaCatalog.isLike("/a/b/p2.jpg", "%p3%"));
+    }
+
+    @Test
+    public void shouldFilterTags() {
+        Assert.assertEquals(1, count(createFilter().setTagsAllIncluded(Arrays.asList("dog", "cat"))));
+        Assert.assertEquals(2, count(createFilter().setTagsAllIncluded(Arrays.asList("cat", "dog")).setWithNoTags(true)));
+        Assert.assertEquals("null tags do not match 'not like'", 1, count(createFilter().setTagsAllExcluded(Arrays.asList("Dog"))));
+        Assert.assertEquals(2, count(createFilter().setTagsAllExcluded(Arrays.asList("Dog")).setWithNoTags(true)));
+        Assert.assertEquals(1, count(createFilter().setWithNoTags(true)));
+        Assert.assertEquals(0, count(createFilter().setTagsAllIncluded(Arrays.asList("unknown"))));
+    }
+
+    @Test
+    public void shouldUpdateAndRemove() {
+        sut.put(2, "/a/b/p2.jpg", 2000, Double.NaN, Double.NaN, 0, MediaCatalog.VISIBILITY_PUBLIC, TagConverter.fromString(";Dog;"));
+        Assert.assertTrue(sut.remove(1));
+        Assert.assertFalse(sut.remove(1));
+
+        Assert.assertEquals(3, sut.size());
+        Assert.assertEquals(2, count(createFilter().setTagsAllIncluded(Arrays.asList("dog"))));
+        Assert.assertFalse(MediaCatalog.isSupported(createFilter().setInAnyField("x")));
+    }
+
+    @Test
+    public void shouldIgnoreCaseOfAsciiOnlyLikeSqlite() {
+        sut.put(5, "/Ä/p5.jpg", 4000, Double.NaN, Double.NaN, 0, MediaCatalog.VISIBILITY_PUBLIC, TagConverter.fromString(";Äpfel;"));
+
+        Assert.assertEquals(0, count(createFilter().setPath("/ä/%")));
+        Assert.assertEquals(1, count(createFilter().setPath("/Ä/P%")));
+        Assert.assertEquals(0, count(createFilter().setTagsAllIncluded(Arrays.asList("äpfel"))));
+        Assert.assertEquals(1, count(createFilter().setTagsAllIncluded(Arrays.asList("ÄPFEL"))));
+    }
+
+    @Test
+    public void shouldKeepCountsAfterRemovedRowsAreDropped() {
+        for (int id = 100; id < 1100; id++) {
+            sut.put(id, "/d/" + id + ".jpg", 5000, Double.NaN, Double.NaN, 0, MediaCatalog.VISIBILITY_PUBLIC,
+                    TagConverter.fromString((id < 1000) ? ";Gone;" : ";Kept;"));
+        }
+        for (int id = 100; id < 1000; id++) {
+            sut.remove(id);
+        }
+
+        Assert.assertEquals(104, sut.size());
+        Assert.assertEquals(0, count(createFilter().setTagsAllIncluded(Arrays.asList("gone"))));
+        Assert.assertEquals(100, count(createFilter().setTagsAllIncluded(Arrays.asList("kept"))));
+        Assert.assertEquals(2, count(createFilter().setTagsAllIncluded(Arrays.asList("dog"))));
+
+        sut.put(1, "/a/p1.jpg", 1000, 50.0, 9.0, 3, MediaCatalog.VISIBILITY_PUBLIC, null);
+        Assert.assertEquals(1, count(createFilter().setTagsAllIncluded(Arrays.asList("dog"))));
+    }
+
+    private static GalleryFilterParameter createFilter() {
+        return new GalleryFilterParameter().setVisibility(VISIBILITY.PRIVATE_PUBLIC);
+    }
+
+    private int count(IGalleryFilter filter) {
+        return sut.count(filter);
+    }
+}
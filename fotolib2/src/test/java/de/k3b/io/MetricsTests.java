@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class MetricsTests {
+    @Test
+    public void shouldCalculatePercentilesFromBuckets() {
+        Metrics.Histogram sut = new Metrics().histogram("test");
+        for (int i = 1; i <= 100; i++) {
+            sut.update(i);
+        }
+
+        Assert.assertEquals(100, sut.getCount());
+        Assert.assertEquals(50.5, sut.getMean(), 0.01);
+        Assert.assertEquals("50 is in bucket 32..63", 63, sut.getPercentile(50));
+        Assert.assertEquals("not more than max", 100, sut.getPercentile(95));
+        Assert.assertEquals(1, sut.getMin());
+    }
+
+    @Test
+    public void shouldReuseMetricWithSameName() {
+        Metrics sut = new Metrics();
+        sut.counter("files").inc();
+        sut.counter("files").add(2);
+        sut.timer(Metrics.SCAN).stop(Metrics.start(), 5);
+
+        Assert.assertEquals(3, sut.counter("files").get());
+        Assert.assertEquals(5, sut.timer(Metrics.SCAN).getUnits());
+
+        String snapshot = sut.getSnapshot("\n");
+        Assert.assertTrue(snapshot, snapshot.startsWith("files: 3\nscan: n=1 "));
+
+        sut.reset();
+        Assert.assertEquals("", sut.getSnapshot("\n"));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.io;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import de.k3b.TestUtil;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class PackedThumbnailStoreTests {
+    private static final File OUTDIR = new File(TestUtil.OUTDIR_ROOT, "PackedThumbnailStoreTests").getAbsoluteFile();
+
+    /** bytes in front of every thumbnail of "/x.jpg": path length and path */
+    private static final int RECORD_OVERHEAD = 4 + "/x.jpg".length();
+
+    @Before
+    public void setup() {
+        FileUtils.delete(OUTDIR, null);
+    }
+
+    @Test
+    public void shouldFindOnlyUnchangedImage() throws Exception {
+        PackedThumbnailStore sut = new PackedThumbnailStore(OUTDIR, 1000000);
+        sut.put("/a.jpg", 10, 100, createData(5, 1));
+
+        Assert.assertEquals(5, sut.get("/a.jpg", 10, 100).length);
+        Assert.assertNull("modified", sut.get("/a.jpg", 11, 100));
+        Assert.assertNull("other size", sut.get("/a.jpg", 10, 101));
+        Assert.assertNull("other file", sut.get("/b.jpg", 10, 100));
+        sut.close();
+    }
+
+    @Test
+    public void shouldReopenAndGrowIndex() throws Exception {
+        PackedThumbnailStore sut = new PackedThumbnailStore(OUTDIR, 100000000);
+        for (int i = 0; i < 5000; i++) {
+            sut.put("/" + i + ".jpg", i, i, createData(10, i));
+        }
+        sut.close();
+
+        sut = new PackedThumbnailStore(OUTDIR, 100000000);
+        Assert.assertEquals(5000, sut.size());
+        Assert.assertEquals(4321 % 100, sut.get("/4321.jpg", 4321, 4321)[9]);
+        sut.close();
+    }
+
+    @Test
+    public void shouldRemoveOldestSegmentIfTooBig() throws Exception {
+        PackedThumbnailStore sut = new PackedThumbnailStore(OUTDIR, 250, 100);
+        for (int i = 0; i < 6; i++) {
+            sut.put("/" + i + ".jpg", 1, 1, createData(50, i));
+        }
+
+        Assert.assertTrue(sut.getTotalBytes() <= 250);
+        Assert.assertNull(sut.get("/0.jpg", 1, 1));
+        Assert.assertNotNull(sut.get("/5.jpg", 1, 1));
+        sut.close();
+    }
+
+    @Test
+    public void shouldCompactReplacedThumbnails() throws Exception {
+        PackedThumbnailStore sut = new PackedThumbnailStore(OUTDIR, 100000, 100);
+        sut.put("/a.jpg", 1, 1, createData(50 - RECORD_OVERHEAD, 1));
+        sut.put("/b.jpg", 1, 1, createData(50 - RECORD_OVERHEAD, 2));
+        // replace a: segment 0 is half garbage
+        sut.put("/a.jpg", 2, 1, createData(50 - RECORD_OVERHEAD, 3));
+        sut.put("/c.jpg", 1, 1, createData(10, 4));
+        Assert.assertEquals(170, sut.getTotalBytes());
+
+        Assert.assertEquals(1, sut.compact(0.3));
+        Assert.assertEquals(120, sut.getTotalBytes());
+        Assert.assertEquals(2, sut.get("/b.jpg", 1, 1)[0]);
+        Assert.assertEquals(3, sut.get("/a.jpg", 2, 1)[0]);
+        sut.close();
+    }
+
+    @Test
+    public void shouldRemoveDeletedImages() throws Exception {
+        File existing = new File(OUTDIR, "existing.jpg");
+        PackedThumbnailStore sut = new PackedThumbnailStore(new File(OUTDIR, "store"), 1000000);
+        existing.createNewFile();
+        sut.put(existing.getPath(), 1, 1, createData(5, 1));
+        sut.put(new File(OUTDIR, "deleted.jpg").getPath(), 1, 1, createData(5, 2));
+
+        Assert.assertEquals(1, sut.removeDeletedImages());
+        Assert.assertEquals(1, sut.size());
+        Assert.assertNotNull(sut.get(existing.getPath(), 1, 1));
+        sut.close();
+    }
+
+    @Test
+    public void shouldBehaveAsEmptyAfterClose() throws Exception {
+        PackedThumbnailStore sut = new PackedThumbnailStore(OUTDIR, 1000000);
+        sut.put("/a.jpg", 1, 1, createData(5, 1));
+        sut.close();
+
+        Assert.assertNull(sut.get("/a.jpg", 1, 1));
+        sut.put("/b.jpg", 1, 1, createData(5, 2));
+        sut.close();
+
+        sut = new PackedThumbnailStore(OUTDIR, 1000000);
+        Assert.assertEquals(1, sut.size());
+        sut.close();
+    }
+
+    private static byte[] createData(int length, int value) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) (value % 100);
+        }
+        return result;
+    }
+}
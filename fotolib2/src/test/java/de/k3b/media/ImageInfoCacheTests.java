@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.media;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class ImageInfoCacheTests {
+    @Test
+    public void shouldKeepKnownSizeIfOnlyRotationIsKnown() {
+        ImageInfoCache sut = new ImageInfoCache(10);
+        sut.put("/a.jpg", 90, 400, 300);
+        sut.put("/a.jpg", 90, ImageInfoCache.UNKNOWN, ImageInfoCache.UNKNOWN);
+        Assert.assertEquals("400x300@90", sut.get("/a.jpg").toString());
+
+        sut.put("/a.jpg", 180, ImageInfoCache.UNKNOWN, ImageInfoCache.UNKNOWN);
+        Assert.assertFalse("other rotation: size may have changed", sut.get("/a.jpg").hasSize());
+    }
+
+    @Test
+    public void shouldRemoveLeastRecentlyUsed() {
+        ImageInfoCache sut = new ImageInfoCache(2);
+        sut.put("/a.jpg", 0, 1, 1);
+        sut.put("/b.jpg", 0, 1, 1);
+        sut.get("/a.jpg");
+        sut.put("/c.jpg", 0, 1, 1);
+
+        Assert.assertEquals(2, sut.size());
+        Assert.assertNotNull(sut.get("/a.jpg"));
+        Assert.assertNull(sut.get("/b.jpg"));
+
+        sut.remove("/a.jpg");
+        Assert.assertNull(sut.get("/a.jpg"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.tagDB;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class TagHistogramTests {
+    @Test
+    public void shouldCountTagsPerPhoto() throws Exception {
+        TagHistogram sut = new TagHistogram()
+                .add(";a;;b;")
+                .add(";A;;c;")
+                .add(";c;;c;") // duplicate within same photo is counted once
+                .add(null);
+
+        Assert.assertEquals("rows", 3, sut.getRowCount());
+        Assert.assertEquals("a", 2, sut.getCount("a"));
+        Assert.assertEquals("b", 1, sut.getCount("B"));
+        Assert.assertEquals("c", 2, sut.getCount("c"));
+        Assert.assertEquals("unknown", 0, sut.getCount("unknown"));
+        Assert.assertEquals("size", 3, sut.size());
+    }
+
+    @Test
+    public void shouldCountLikeSqlLikeTagsExpression() throws Exception {
+        // same result as "tags like '%;tag;%'"
+        TagHistogram sut = new TagHistogram().add("%; a ;%;b,c;d");
+
+        Assert.assertEquals("a", 0, sut.getCount("a"));
+        Assert.assertEquals("' a '", 1, sut.getCount(" a "));
+        Assert.assertEquals("b,c", 1, sut.getCount("b,c"));
+        Assert.assertEquals("b", 0, sut.getCount("b"));
+        Assert.assertEquals("d is not terminated by ;", 0, sut.getCount("d"));
+        Assert.assertEquals("%", 0, sut.getCount("%"));
+        Assert.assertEquals("size", 2, sut.size());
+    }
+
+    @Test
+    public void shouldIgnoreCaseOfAsciiOnly() throws Exception {
+        TagHistogram sut = new TagHistogram().add(";Tag;;\u00C4pfel;");
+
+        Assert.assertEquals("Tag", 1, sut.getCount("tAG"));
+        Assert.assertEquals("non ascii case is significant", 0, sut.getCount("\u00E4pfel"));
+        Assert.assertEquals("non ascii same case", 1, sut.getCount("\u00C4pfel"));
+    }
+
+    @Test
+    public void shouldGetCountsAsMap() throws Exception {
+        Tag a = new Tag().setName("a");
+        Tag b = new Tag().setName("b");
+        TagHistogram sut = new TagHistogram().add(";a;").add(";a;");
+
+        Map<Tag, Integer> counts = sut.getCounts(Arrays.asList(a, b));
+        Assert.assertEquals("a", Integer.valueOf(2), counts.get(new Tag().setName("A")));
+        Assert.assertEquals("b", Integer.valueOf(0), counts.get(b));
+    }
+}
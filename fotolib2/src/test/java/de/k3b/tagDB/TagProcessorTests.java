@@ -82,6 +82,63 @@ public class TagProcessorTests {
         Assert.assertEquals("# changes", 2, changes);
     }
 
+    @Test
+    public void shouldGetUpdatedIgnoreCase() throws Exception {
+        List<String> updated = TagProcessor.getUpdated(Arrays.asList("All", "single1"), Arrays.asList("all", "new"), Arrays.asList("SINGLE1"), true);
+        Assert.assertEquals(ListUtils.toString(Arrays.asList("All", "new")), ListUtils.toString(updated));
+    }
+
+    @Test
+    public void shouldCalculateDiffIgnoreCase() throws Exception {
+        List<String> addedTags = new ArrayList<String>();
+        List<String> removedTags = new ArrayList<String>();
+
+        int changes = TagProcessor.getDiff(Arrays.asList("a", "B"), Arrays.asList("A","b","c"), addedTags, removedTags, true);
+
+        Assert.assertEquals("removed", 0, removedTags.size());
+        Assert.assertEquals("added", ListUtils.toString(Arrays.asList("c")), ListUtils.toString(addedTags));
+        Assert.assertEquals("# changes", 1, changes);
+    }
+
+    @Test
+    public void shouldCalculateAffectedIgnoreCase() throws Exception {
+        TagProcessor sut = new TagProcessor(true);
+        sut.registerExistingTags(Arrays.asList("all", "single1"));
+        sut.registerExistingTags(Arrays.asList("single2","ALL"));
+
+        Assert.assertEquals("getAffected "+ ListUtils.toString(sut.getAffected()), 3, sut.getAffected().size());
+        Assert.assertEquals("getAllSet "+ ListUtils.toString(sut.getAllSet()), "all", ListUtils.toString(sut.getAllSet()));
+    }
+
+    @Test
+    public void shouldGetUpdatedRemovingAllDuplicates() throws Exception {
+        List<String> updated = TagProcessor.getUpdated(Arrays.asList("a", "b", "a", "c", "a"), null, Arrays.asList("a", "a"));
+        Assert.assertEquals("every occurence of removed tag, order kept", ListUtils.toString(Arrays.asList("b", "c")), ListUtils.toString(updated));
+    }
+
+    @Test
+    public void shouldGetUpdatedAddingDuplicatesOnce() throws Exception {
+        List<String> updated = TagProcessor.getUpdated(Arrays.asList("a"), Arrays.asList("x", "a", "x"), null);
+        Assert.assertEquals(ListUtils.toString(Arrays.asList("a", "x")), ListUtils.toString(updated));
+    }
+
+    @Test
+    public void shouldGetUpdatedAddedAndRemovedInSameCall() throws Exception {
+        List<String> updated = TagProcessor.getUpdated(Arrays.asList("a", "b"), Arrays.asList("c", "b"), Arrays.asList("b", "c"));
+        Assert.assertEquals("remove wins", ListUtils.toString(Arrays.asList("a")), ListUtils.toString(updated));
+    }
+
+    @Test
+    public void shouldCalculateAffectedAndAllSetInOrder() throws Exception {
+        TagProcessor sut = new TagProcessor();
+        sut.registerExistingTags(Arrays.asList("c", "a", "b"));
+        sut.registerExistingTags(Arrays.asList("b", "d", "c"));
+        sut.registerExistingTags(Arrays.asList("e", "c", "b", "c"));
+
+        Assert.assertEquals("getAffected", ListUtils.toString(Arrays.asList("c", "a", "b", "d", "e")), ListUtils.toString(sut.getAffected()));
+        Assert.assertEquals("getAllSet", ListUtils.toString(Arrays.asList("c", "b")), ListUtils.toString(sut.getAllSet()));
+    }
+
     @Test
     public void shouldFormatTagsForBat() throws Exception {
         Assert.assertEquals("empty", null, TagConverter.asBatString());
@@ -127,6 +127,49 @@ public class TagRepositoryTests {
         Assert.assertEquals(6, items.size());
     }
 
+    @Test
+    public void shouldMergeIntoHierarchy() throws Exception {
+        List<Tag> existing = createUnsavedRepo("shouldMergeIntoHierarchyA", "a/b1/c,a/b2").load();
+        List<Tag> additional = createUnsavedRepo("shouldMergeIntoHierarchyB", "a/b2/d,x/y").load();
+
+        int changes = TagRepository.merge(existing, additional);
+
+        Assert.assertEquals("added d,x,y", 3, changes);
+        Tag d = Tag.findByPath(existing, null, "/a/b2/d");
+        Assert.assertNotNull("/a/b2/d", d);
+        Assert.assertSame("parent of d", Tag.findByPath(existing, null, "/a/b2"), d.getParent());
+        Assert.assertNotNull("/x/y", Tag.findByPath(existing, null, "/x/y"));
+
+        Assert.assertEquals("merge again", 0, TagRepository.merge(existing, additional));
+    }
+
+    @Test
+    public void shouldMergeManyTags() throws Exception {
+        List<Tag> existing = createTree(20000, "");
+        List<Tag> additional = createTree(20000, "new");
+
+        long start = System.currentTimeMillis();
+        int changes = TagRepository.merge(existing, additional);
+        LOGGER.info("shouldMergeManyTags: merged 20000 into 20000 tags in " + (System.currentTimeMillis() - start) + " msecs");
+
+        // all parents (100) exist in both trees. leaves with suffix "new" are new
+        Assert.assertEquals(20000 - 100, changes);
+    }
+
+    /** 100 parents with (count/100 - 1) children each */
+    private static List<Tag> createTree(int count, String leafSuffix) {
+        List<Tag> result = new ArrayList<Tag>();
+        Tag parent = null;
+        for (int i = 0; i < count; i++) {
+            if ((i % (count / 100)) == 0) {
+                parent = TagRepository.add(result, null, "parent" + i);
+            } else {
+                TagRepository.add(result, parent, "child" + i + leafSuffix);
+            }
+        }
+        return result;
+    }
+
     @Test
     public void shouldAddExpression() throws Exception {
         // Name1
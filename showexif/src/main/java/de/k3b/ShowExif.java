@@ -18,17 +18,28 @@
  */
 package de.k3b;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 
+import de.k3b.io.PhotoWorkFlowDto;
 import de.k3b.media.ExifInterfaceEx;
 import de.k3b.media.IMetaApi;
 import de.k3b.media.ImageMetaReader;
+import de.k3b.media.MediaDiffCopy;
 import de.k3b.media.MediaUtil;
 import de.k3b.media.MediaXmpSegment;
 
-/** simple commandline tool to show  */
+/** simple commandline tool to show and batch process image meta data */
 public class ShowExif {
-    private static final String usage = "usage java -jar ShowExif.jar [-d(ebug)] [file.jpg [file.jpg] ..]";
+    private static final String usage = "usage java -jar ShowExif.jar [-d(ebug)] [file.jpg [file.jpg] ..]\n" +
+            "  or  java -jar ShowExif.jar scan [-t threads] out.csv dirOrFile ..   export meta data as csv\n" +
+            "  or  java -jar ShowExif.jar apply [-t threads] dirWithApm dirOrFile ..   apply exif defaults of .apm file\n" +
+            "  or  java -jar ShowExif.jar verify [-t threads] dirOrFile ..   report xmp sidecars that differ from jpg";
     private static final String dbg_context = "ShowExif";
 
     public static void main(String[] args) {
@@ -37,6 +48,10 @@ public class ShowExif {
             System.out.println(usage);
             System.exit(-1);
         }
+        String command = args[0].toLowerCase();
+        if (command.equals("scan") || command.equals("apply") || command.equals("verify")) {
+            System.exit(batch(command, args));
+        }
         for (String fileName : args) {
             if (fileName.toLowerCase().startsWith("-d")) {
                 debug = true;
@@ -47,6 +62,55 @@ public class ShowExif {
         System.exit(0);
     }
 
+    /** @return exit code: 0 if all files could be processed */
+    private static int batch(String command, String[] args) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        List<String> params = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-t") && (i + 1 < args.length)) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (args[i].toLowerCase().startsWith("-d")) {
+                FotoLibGlobal.debugEnabled = true;
+            } else {
+                params.add(args[i]);
+            }
+        }
+
+        int minParams = command.equals("verify") ? 1 : 2;
+        if (params.size() < minParams) {
+            System.out.println(usage);
+            return -1;
+        }
+
+        try {
+            ShowExifBatch batch;
+            if (command.equals("scan")) {
+                PrintWriter csv = new PrintWriter(new OutputStreamWriter(new FileOutputStream(params.remove(0)), "UTF-8"));
+                batch = new ShowExifBatch.Scan(threadCount, System.out, csv);
+            } else if (command.equals("apply")) {
+                IMetaApi defaults = new PhotoWorkFlowDto().load(new File(params.remove(0))).getMediaDefaults();
+                if (defaults == null) {
+                    System.err.println("apply: no exif defaults in .apm file");
+                    return -1;
+                }
+                batch = new ShowExifBatch.Apply(threadCount, System.out, new MediaDiffCopy(defaults, true));
+            } else {
+                batch = new ShowExifBatch.Verify(threadCount, System.out);
+            }
+
+            List<File> dirsOrFiles = new ArrayList<File>();
+            for (String param : params) {
+                dirsOrFiles.add(new File(param).getAbsoluteFile());
+            }
+            return (batch.run(dirsOrFiles) == 0) ? 0 : 1;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
     private static void show(String fileName, boolean debug) {
         System.out.println("------");
         System.out.println(fileName);
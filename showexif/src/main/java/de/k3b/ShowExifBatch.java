@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.k3b.io.Metrics;
+import de.k3b.media.ExifInterfaceEx;
+import de.k3b.media.IMetaApi;
+import de.k3b.media.ImageMetaReader;
+import de.k3b.media.JpgMetaWorkflow;
+import de.k3b.media.MediaCsvSaver;
+import de.k3b.media.MediaDiffCopy;
+import de.k3b.media.MediaUtil;
+import de.k3b.media.MediaXmpSegment;
+
+/**
+ * Processes all jpg files of a directory tree with several threads
+ * and reports the throughput and the {@link Metrics}. Used by the batch commands of {@link ShowExif}.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public abstract class ShowExifBatch {
+    protected static final String dbg_context = "ShowExifBatch";
+
+    private final String name;
+    private final int threadCount;
+    protected final PrintStream out;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger affected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    protected ShowExifBatch(String name, int threadCount, PrintStream out) {
+        this.name = name;
+        this.threadCount = Math.max(1, threadCount);
+        this.out = out;
+    }
+
+    /** @return true if file was affected (exported, changed, inconsistent) */
+    protected abstract boolean process(File file) throws IOException;
+
+    /** called after all files are processed */
+    protected void onFinished() throws IOException {
+    }
+
+    /** @return number of files that could not be processed */
+    public int run(List<File> dirsOrFiles) throws IOException, InterruptedException {
+        List<File> files = new ArrayList<File>();
+        for (File dirOrFile : dirsOrFiles) {
+            collectJpgFiles(dirOrFile, files);
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (final File file : files) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(file);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        onFinished();
+
+        long msecs = Math.max(1, System.currentTimeMillis() - start);
+        out.println(String.format(Locale.ROOT, "%s: %d files (%d affected, %d failed) in %.1f sec = %.1f files/sec with %d threads",
+                name, processed.get(), affected.get(), failed.get(),
+                msecs / 1000.0, processed.get() * 1000.0 / msecs, threadCount));
+        out.print(Metrics.getInstance().getSnapshot("\n"));
+        return failed.get();
+    }
+
+    private void execute(File file) {
+        long start = Metrics.start();
+        try {
+            if (process(file)) affected.incrementAndGet();
+        } catch (IOException ex) {
+            failed.incrementAndGet();
+            System.err.println(file + ": " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            failed.incrementAndGet();
+            System.err.println(file + ": " + ex);
+        } finally {
+            processed.incrementAndGet();
+            Metrics.getInstance().timer(name).stop(start, 1);
+        }
+    }
+
+    private static void collectJpgFiles(File dirOrFile, List<File> result) {
+        if (dirOrFile.isFile()) {
+            result.add(dirOrFile);
+            return;
+        }
+        File[] children = dirOrFile.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().startsWith(".")) collectJpgFiles(child, result);
+            } else if (MediaUtil.isImage(child.getName(), MediaUtil.IMG_TYPE_JPG)) {
+                result.add(child);
+            }
+        }
+    }
+
+    /** reads jpg/xmp meta data of every file and exports it as csv */
+    public static class Scan extends ShowExifBatch {
+        private final PrintWriter csv;
+        private final MediaCsvSaver saver;
+
+        public Scan(int threadCount, PrintStream out, PrintWriter csv) {
+            super(Metrics.SCAN, threadCount, out);
+            this.csv = csv;
+            this.saver = new MediaCsvSaver(csv);
+        }
+
+        @Override
+        protected boolean process(File file) throws IOException {
+            String fileName = file.getAbsolutePath();
+            MediaXmpSegment xmp = MediaXmpSegment.loadXmpSidecarContentOrNull(fileName, dbg_context);
+            IMetaApi item = new ImageMetaReader().load(fileName, null, xmp, dbg_context);
+
+            // MediaCsvSaver is not threadsafe
+            synchronized (saver) {
+                saver.save(item);
+            }
+            return true;
+        }
+
+        @Override
+        protected void onFinished() throws IOException {
+            csv.close();
+        }
+    }
+
+    /** writes changes into jpg and xmp of every file */
+    public static class Apply extends ShowExifBatch {
+        private final MediaDiffCopy changes;
+
+        public Apply(int threadCount, PrintStream out, MediaDiffCopy changes) {
+            super("apply", threadCount, out);
+            this.changes = changes;
+        }
+
+        @Override
+        protected boolean process(File file) throws IOException {
+            return null != new JpgMetaWorkflow(null).applyChanges(file, null, 0, false, changes);
+        }
+
+        @Override
+        protected void onFinished() throws IOException {
+            changes.close();
+        }
+    }
+
+    /** reports files where the xmp sidecar has different values than the jpg exif */
+    public static class Verify extends ShowExifBatch {
+        public Verify(int threadCount, PrintStream out) {
+            super("verify", threadCount, out);
+        }
+
+        @Override
+        protected boolean process(File file) throws IOException {
+            String fileName = file.getAbsolutePath();
+            MediaXmpSegment xmp = MediaXmpSegment.loadXmpSidecarContentOrNull(fileName, dbg_context);
+            if (xmp == null) return false;
+
+            ExifInterfaceEx exif = new ExifInterfaceEx(fileName, null, null, dbg_context);
+            List<MediaUtil.FieldID> differences = MediaUtil.getChanges(exif, xmp);
+            if (differences != null) {
+                differences.remove(MediaUtil.FieldID.path);
+                differences.remove(MediaUtil.FieldID.clasz);
+            }
+            if ((differences == null) || differences.isEmpty()) return false;
+
+            synchronized (out) {
+                out.println(fileName + ": xmp differs in " + differences);
+            }
+            return true;
+        }
+    }
+}
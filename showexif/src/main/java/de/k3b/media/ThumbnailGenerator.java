@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import de.k3b.FotoLibGlobal;
+import de.k3b.io.FileUtils;
+import de.k3b.io.PackedThumbnailStore;
+
+/**
+ * Creates jpg thumbnails without android (i.e. for the commandline tool) via javax.imageio.
+ * Part of showexif and not of fotolib2 because java.awt and javax.imageio do not exist on android.
+ *
+ * Uses the thumbnail embedded in exif if available. Else the image is read
+ * with source subsampling 1/2/4/8 so that only a fraction of the pixels has to be kept in memory.
+ *
+ * Created by k3b on 19.10.2018.
+ */
+public class ThumbnailGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(FotoLibGlobal.LOG_TAG);
+    private static final int MAX_SUBSAMPLING = 8;
+
+    private final int mMaxSize;
+    private final float mJpgQuality;
+
+    /**
+     * @param maxSize max width/height of generated thumbnails.
+     * @param jpgQuality 0..1
+     */
+    public ThumbnailGenerator(int maxSize, float jpgQuality) {
+        mMaxSize = maxSize;
+        mJpgQuality = jpgQuality;
+    }
+
+    /** @return jpg thumbnail or null if file is not a supported image */
+    public byte[] createThumbnail(File file) throws IOException {
+        byte[] result = getExifThumbnail(file);
+        if (result == null) {
+            result = createScaledThumbnail(file);
+        }
+        return result;
+    }
+
+    /** @return the jpg thumbnail embedded in exif or null if there is none */
+    public static byte[] getExifThumbnail(File file) {
+        RandomAccessFile in = null;
+        try {
+            long[] range = new ExifInterface(file.getAbsolutePath()).getThumbnailRange();
+            if ((range == null) || (range[1] <= 0)) return null;
+
+            byte[] result = new byte[(int) range[1]];
+            in = new RandomAccessFile(file, "r");
+            in.seek(range[0]);
+            in.readFully(result);
+            return result;
+        } catch (IOException ex) {
+            // no exif or corrupt: use image itself
+            if (FotoLibGlobal.debugEnabledJpgMetaIo) {
+                logger.debug("no exif thumbnail for " + file + ": " + ex.getMessage());
+            }
+        } finally {
+            FileUtils.close(in, file);
+        }
+        return null;
+    }
+
+    /** @return downscaled image as jpg or null if there is no imageio reader for file */
+    public byte[] createScaledThumbnail(File file) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+        if (in == null) return null;
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) return null;
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), mMaxSize);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                return toJpg(scale(image, mMaxSize), mJpgQuality);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return biggest subsampling 1, 2, 4 or 8 where the image is still not smaller than maxSize */
+    protected static int getSubsampling(int width, int height, int maxSize) {
+        int size = Math.max(width, height);
+        int result = 1;
+        while ((result < MAX_SUBSAMPLING) && ((size / (result * 2)) >= maxSize)) {
+            result *= 2;
+        }
+        return result;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int maxSize) {
+        int size = Math.max(image.getWidth(), image.getHeight());
+        if (size <= maxSize) return image;
+
+        int width = Math.max(1, image.getWidth() * maxSize / size);
+        int height = Math.max(1, image.getHeight() * maxSize / size);
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = result.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return result;
+    }
+
+    private static byte[] toJpg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(result);
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Adds missing thumbnails of all jpg files below dir to store using threadCount threads.
+     * The store is keyed by absolute path so it only matches where the files have the same paths.
+     *
+     * @return number of added thumbnails
+     */
+    public int prepare(final PackedThumbnailStore store, File dir, int threadCount) throws InterruptedException {
+        List<File> files = new ArrayList<File>();
+        collectJpgFiles(dir, files);
+
+        final AtomicInteger result = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        for (final File file : files) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (add(store, file)) result.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return result.get();
+    }
+
+    /** @return true if thumbnail of file was added to store */
+    private boolean add(PackedThumbnailStore store, File file) {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long size = file.length();
+        try {
+            if (store.get(path, lastModified, size) != null) return false;
+
+            byte[] thumbnail = createThumbnail(file);
+            if (thumbnail != null) {
+                store.put(path, lastModified, size, thumbnail);
+                return true;
+            }
+        } catch (IOException ex) {
+            logger.warn("cannot create thumbnail for " + path + ": " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            // i.e. unsupported jpg color space in imageio
+            logger.warn("cannot create thumbnail for " + path, ex);
+        }
+        return false;
+    }
+
+    private static void collectJpgFiles(File dir, List<File> result) {
+        File[] children = (dir == null) ? null : dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.getName().startsWith(".")) collectJpgFiles(child, result);
+            } else if (MediaUtil.isImage(child.getName(), MediaUtil.IMG_TYPE_JPG)) {
+                result.add(child);
+            }
+        }
+    }
+}
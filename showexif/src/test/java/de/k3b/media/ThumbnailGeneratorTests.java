@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 by k3b.
+ *
+ * This file is part of AndroFotoFinder / #APhotoManager.
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package de.k3b.media;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import de.k3b.io.FileUtils;
+import de.k3b.io.PackedThumbnailStore;
+
+/**
+ * Created by k3b on 19.10.2018.
+ */
+public class ThumbnailGeneratorTests {
+    private static final File OUTDIR = new File("./build/test-results/ThumbnailGeneratorTests").getAbsoluteFile();
+    private static final File INDIR = new File(OUTDIR, "images");
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        FileUtils.delete(OUTDIR, null);
+        INDIR.mkdirs();
+        createJpg(new File(INDIR, "NoExif.jpg"), 200, 100);
+        createJpg(new File(INDIR, "sub/Other.jpg"), 100, 300);
+    }
+
+    /** jpg without exif thumbnail */
+    private static void createJpg(File file, int width, int height) throws IOException {
+        file.getParentFile().mkdirs();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", file);
+    }
+
+    @Test
+    public void shouldCalculateSubsampling() {
+        Assert.assertEquals(1, ThumbnailGenerator.getSubsampling(300, 200, 256));
+        Assert.assertEquals(2, ThumbnailGenerator.getSubsampling(300, 600, 256));
+        Assert.assertEquals(8, ThumbnailGenerator.getSubsampling(8000, 6000, 256));
+    }
+
+    @Test
+    public void shouldCreateScaledThumbnail() throws Exception {
+        byte[] thumbnail = new ThumbnailGenerator(32, 0.8f).createThumbnail(new File(INDIR, "NoExif.jpg"));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+        Assert.assertEquals(32, Math.max(image.getWidth(), image.getHeight()));
+    }
+
+    @Test
+    public void shouldPrepareMissingThumbnails() throws Exception {
+        PackedThumbnailStore store = new PackedThumbnailStore(new File(OUTDIR, "store"), 1000000);
+        ThumbnailGenerator sut = new ThumbnailGenerator(32, 0.8f);
+
+        Assert.assertEquals(2, sut.prepare(store, INDIR, 2));
+        Assert.assertEquals("already in store", 0, sut.prepare(store, INDIR, 2));
+        store.close();
+    }
+}